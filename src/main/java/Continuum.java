@@ -2,24 +2,48 @@ import com.graphaware.module.timetree.SingleTimeTree;
 import com.graphaware.module.timetree.TimeTree;
 import com.graphaware.module.timetree.TimeTreeBackedEvents;
 import com.graphaware.module.timetree.TimedEvents;
-import com.graphaware.module.timetree.domain.Event;
+import com.graphaware.module.timetree.domain.Resolution;
 import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.neo4j.gis.spatial.*;
 import org.neo4j.gis.spatial.encoders.SimplePointEncoder;
-import org.neo4j.gis.spatial.pipes.GeoPipeline;
 import org.neo4j.graphdb.*;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import org.neo4j.graphdb.spatial.Coordinate;
 import org.neo4j.graphdb.spatial.Point;
-import org.neo4j.graphdb.traversal.Evaluators;
-import org.neo4j.graphdb.traversal.TraversalDescription;
-import org.neo4j.graphdb.traversal.Traverser;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.txstate.TxStateHolder;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.transaction.log.TransactionIdStore;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Can i use Gradoop-like batch processing for the intersection of time and space?
@@ -29,15 +53,75 @@ public class Continuum {
 
     private GraphDatabaseService db;
     private SpatialDatabaseService spatial;
+    // null for the default Continuum, see ContinuumPartitions
+    private final String partition;
+    // what label scans look for, Continuum or the label of the partition
+    private final Label label;
     private TimeTree timeTree;
     private static final DateTimeZone UTC = DateTimeZone.forTimeZone(TimeZone.getTimeZone("UTC"));
     private TimedEvents timedEvents;
+    private final String layerName;
+    // checked on every use, see createOrRetrieveContinuumLayer
+    private volatile EditableLayer continuumLayer;
+    private ContinuumIndexEngine indexEngine;
+    // spatial estimates for the paging, see getContinuumNodesPage, and the queries of callers with uncommitted writes, see engineStream
+    private final ContinuumQueryPlanner queryPlanner;
+    // built from the TimeTree the first time it is needed, see intervalIndex()
+    private volatile IntervalIndex intervalIndex;
+    // the in-memory indexes are kept in sync after every commit, see ContinuumIndexUpdater
+    // the lock is held while a commit is applied and while an index is built
+    private final Object indexLock = new Object();
+    // registered with the first in-memory index, see registerIndexUpdater
+    private ContinuumIndexUpdater indexUpdater;
+    private ContinuumColumnStore columnStore;
+    private ContinuumColumnStoreUpdater columnStoreUpdater;
+    private volatile ContinuumQueryCache queryCache;
+    private ContinuumQueryCacheInvalidator queryCacheInvalidator;
+    private volatile ContinuumParallelExecutor parallelExecutor;
+    // loaded from the graph when Continuum starts, see loadAggregations
+    private final Map<String, ContinuumAggregator> aggregators = new ConcurrentHashMap<>();
+    // registered while there are aggregations
+    private ContinuumAggregationUpdater aggregationUpdater;
+    // built the first time clusters are asked for, see clusterPyramid()
+    private volatile ContinuumClusterPyramid clusterPyramid;
+    // NOOP until metrics are enabled, see enableMetrics
+    private volatile ContinuumMetrics metrics = ContinuumMetrics.NOOP;
+    // null until the first subscription, see enableSubscriptions
+    private volatile ContinuumSubscriptions subscriptions;
+    private ContinuumSubscriptionMatcher subscriptionMatcher;
+    // only shut down on disable when Continuum created it
+    private ExecutorService subscriptionExecutor;
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    // cells of about 10km
+    public static final int DEFAULT_CLUSTER_LEVELS = 12;
+    private static final int TIME_HISTOGRAM_BINS = 1024;
 
     public Continuum(GraphDatabaseService service) {
+        this(service, ContinuumIndexEngine.Backend.DUAL_INDEX);
+    }
+
+    public Continuum(GraphDatabaseService service, ContinuumIndexEngine.Backend backend) {
+        this(service, backend, null);
+    }
+
+    // a named partition has its own layer, TimeTree and label, next to the default Continuum and the other partitions
+    // its nodes carry Continuum_<partition> only, so the default Continuum and its label scans never see them
+    public Continuum(GraphDatabaseService service, ContinuumIndexEngine.Backend backend, String partition) {
+        if(partition != null && partition.isEmpty()) throw new Error("a partition needs a name!");
         db = service;
+        this.partition = partition;
+        label = partition == null ? Label.label("Continuum") : Label.label("Continuum_" + partition);
+        layerName = partition == null ? "Continuum" : "Continuum_" + partition;
         spatial = new SpatialDatabaseService(db);
-        timeTree = new SingleTimeTree(db);
+        queryPlanner = new ContinuumQueryPlanner(db, this::getMetrics);
+        timeTree = partition == null ? new SingleTimeTree(db) : new ContinuumPartitionTimeTree(db, partition);
         timedEvents = new TimeTreeBackedEvents(timeTree);
+        switch (backend) {
+            case SPACE_TIME: { indexEngine = new SpaceTimeIndexEngine(db, this::createOrRetrieveContinuumLayer, this::intervalIndex); break;}
+            default:         { indexEngine = new DualIndexEngine(db, this::createOrRetrieveContinuumLayer, this::intervalIndex, this::getMetrics); break;}
+        }
+        loadAggregations();
     }
 
     // CREATE
@@ -47,150 +131,1018 @@ public class Continuum {
     public Node addContinuumCapabilitiesToNode(Node node, double lat, double lon, DateTime startTime, DateTime endTime) {
         if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
 
+        ContinuumMetrics metrics = this.metrics;
+        boolean ownTransaction = metrics.isEnabled() && !hasTransaction();
+        long commitStart;
         try (Transaction txContinuum = db.beginTx()) {
-            node.addLabel(Label.label("Continuum"));
-            node.setProperty("lat", lat);
-            node.setProperty("lon", lon);
+            attachToContinuum(node, lat, lon, startTime, endTime, createOrRetrieveContinuumLayer(), new HashMap<>());
+            txContinuum.success();
+            commitStart = metrics.startTimer();
+        }
+        if(ownTransaction) recordCommit(metrics, commitStart, 1);
+        return node;
+    }
 
-            // add object to timetree
-            if(!startTime.equals(endTime)) {
-                timedEvents.attachEvent(node, TimeRelationshipTypes.START_DATE, getTimeInstantFromDateTime(startTime));
-                timedEvents.attachEvent(node, TimeRelationshipTypes.END_DATE, getTimeInstantFromDateTime(endTime));
+    public long addContinuumCapabilitiesToNodes(Iterable<ContinuumRecord> records) {
+        return addContinuumCapabilitiesToNodes(records, DEFAULT_BATCH_SIZE);
+    }
+
+    // bulk ingest - commits once every batchSize records instead of once per node
+    // each batch is sorted along a Hilbert curve before going into the R-tree, so neighbouring points end up in the same leaves,
+    // and the TimeTree instants are resolved once per batch
+    // the records are all validated before the first batch, so a bad one fails the call before anything is committed;
+    // a failure while writing (a deleted node, a lock timeout) still leaves the earlier batches committed
+    public long addContinuumCapabilitiesToNodes(Iterable<ContinuumRecord> records, int batchSize) {
+        if(batchSize < 1) throw new Error("batchSize must be at least 1!");
+        for(ContinuumRecord record : records) {
+            if(record.getStartTime().isAfter(record.getEndTime())) throw new Error("startTime can't be after endTime!");
+        }
+
+        long added = 0;
+        List<ContinuumRecord> batch = new ArrayList<>(batchSize);
+        for(ContinuumRecord record : records) {
+            batch.add(record);
+            if(batch.size() == batchSize) {
+                added += addBatch(batch);
+                batch.clear();
             }
-            else timedEvents.attachEvent(node, TimeRelationshipTypes.EVENT_DATE, getTimeInstantFromDateTime(startTime));
-            // add object to spatial
-            createOrRetrieveContinuumLayer().add(node);
+        }
+        if(!batch.isEmpty()) added += addBatch(batch);
+        return added;
+    }
 
-            txContinuum.success();
+    private int addBatch(List<ContinuumRecord> batch) {
+        ContinuumMetrics metrics = this.metrics;
+        boolean ownTransaction = metrics.isEnabled() && !hasTransaction();
+        long sortStart = metrics.startTimer();
+        batch.sort(Comparator.comparingLong(t -> SpaceFillingCurve.hilbertIndex(t.getLon(), t.getLat())));
+        metrics.stopTimer("ingest.sort", sortStart);
+
+        long commitStart;
+        try (Transaction txBatch = db.beginTx()) {
+            EditableLayer layer = createOrRetrieveContinuumLayer();
+            Map<Long, Node> instants = new HashMap<>();
+            for(ContinuumRecord record : batch) {
+                attachToContinuum(record.getNode(), record.getLat(), record.getLon(), record.getStartTime(), record.getEndTime(), layer, instants);
+            }
+            txBatch.success();
+            commitStart = metrics.startTimer();
         }
-        return node;
+        if(ownTransaction) recordCommit(metrics, commitStart, batch.size());
+        return batch.size();
+    }
+
+    // only for transactions Continuum opened itself, closing a nested one commits nothing
+    private static void recordCommit(ContinuumMetrics metrics, long commitStart, int size) {
+        metrics.stopTimer("ingest.commit", commitStart);
+        metrics.recordValue("ingest.transaction.size", size);
+    }
+
+    // instants caches the TimeTree node of every day already seen, keyed by the start of that day
+    // with metrics on, every step is timed as an ingest phase
+    private void attachToContinuum(Node node, double lat, double lon, DateTime startTime, DateTime endTime, EditableLayer layer, Map<Long, Node> instants) {
+        ContinuumMetrics metrics = this.metrics;
+        long phaseStart = metrics.startTimer();
+        node.addLabel(label);
+        node.setProperty("lat", lat);
+        node.setProperty("lon", lon);
+        node.setProperty(TimeTreeSpans.START_TIME, startTime.getMillis());
+        node.setProperty(TimeTreeSpans.END_TIME, endTime.getMillis());
+        phaseStart = metrics.stopTimer("ingest.properties", phaseStart);
+
+        // add object to timetree
+        Node startInstant = getOrCreateInstant(startTime, instants);
+        if(!startTime.equals(endTime)) {
+            node.createRelationshipTo(startInstant, TimeRelationshipTypes.START_DATE);
+            node.createRelationshipTo(getOrCreateInstant(endTime, instants), TimeRelationshipTypes.END_DATE);
+        }
+        else node.createRelationshipTo(startInstant, TimeRelationshipTypes.EVENT_DATE);
+        phaseStart = metrics.stopTimer("ingest.timetree", phaseStart);
+        // add object to spatial
+        layer.add(node);
+        metrics.stopTimer("ingest.rtree", phaseStart);
+        metrics.mark("ingest.nodes", 1);
+    }
+
+    // called by the ContinuumIndexUpdater once a write is committed, only the structures already built are touched
+    // adding a node again replaces it
+    private void index(long id, double lat, double lon, long start, long end) {
+        IntervalIndex intervals = intervalIndex;
+        if(intervals != null) intervals.add(id, start, end);
+        ContinuumClusterPyramid pyramid = clusterPyramid;
+        if(pyramid != null) pyramid.add(id, lat, lon, start, end);
+        indexEngine.remove(id);
+        indexEngine.add(id, lat, lon, start, end);
+    }
+
+    private void unindex(long id) {
+        IntervalIndex intervals = intervalIndex;
+        if(intervals != null) intervals.remove(id);
+        ContinuumClusterPyramid pyramid = clusterPyramid;
+        if(pyramid != null) pyramid.remove(id);
+        indexEngine.remove(id);
+    }
+
+    private Node getOrCreateInstant(DateTime dateTime, Map<Long, Node> instants) {
+        long day = dateTime.withZone(UTC).withTimeAtStartOfDay().getMillis();
+        return instants.computeIfAbsent(day, t -> timeTree.getOrCreateInstant(getTimeInstantFromDateTime(dateTime)));
     }
 
     // READ
+    // the in-memory indexes are updated after commit, a caller with uncommitted writes of its own is answered from its transaction
+    // instead, see readableIntervalIndex, so it reads its own writes
     // envelope = new Envelope(15.0, 16.0, 56.0, 57.0)
     // should throw error if startTime < endTime
     // should throw error if Geometry is not valid
+    // returns the nodes in the geometry whose life time overlaps [startTime, endTime]
+    // served from the query cache when it is enabled and the caller has no transaction of its own,
+    // an open transaction might hold writes that are not committed yet, the same goes for the parallel executor
+    // with metrics on, the whole call is timed as query (query.cached for cache hits), the legs by the planner or the executor
     public List<Node> getContinuumNodes(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime) {
-        List<Node> result = null;
-        Layer layer = createOrRetrieveContinuumLayer();
-        List<Node> spatialNodeList;
-        try (Transaction txSpatial = db.beginTx()) {
-            List<SpatialDatabaseRecord> spatialResults = GeoPipeline
-                    .startWithinSearch(layer, geometryToSearchIn)
-                    .toSpatialDatabaseRecordList();
-            txSpatial.success();
-            spatialNodeList = spatialResults.stream()
-                    .map(t -> t.getGeomNode())
-                    .collect(Collectors.toList());
+        ContinuumMetrics metrics = this.metrics;
+        long queryStart = metrics.startTimer();
+        boolean inTransaction = hasTransaction();
+        ContinuumQueryCache cache = inTransaction ? null : queryCache;
+        ContinuumQueryCache.Key key = null;
+        long generation = 0;
+        if(cache != null) {
+            key = ContinuumQueryCache.key(geometryToSearchIn, startTime.getMillis(), endTime.getMillis());
+            List<Node> cached = cache.get(key);
+            if(cached != null) {
+                metrics.stopTimer("query.cached", queryStart);
+                return cached;
+            }
+            generation = cache.generation();
         }
 
-        TimeInstant today = getTimeInstantFromDateTime(startTime);
-        TimeInstant tomorrow = getTimeInstantFromDateTime(endTime);
+        List<Node> result;
+        ContinuumParallelExecutor executor = inTransaction ? null : parallelExecutor;
+        if(executor != null) {
+            if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+            result = executor.getContinuumNodes(createOrRetrieveContinuumLayer(), intervalIndex(), geometryToSearchIn, startTime.getMillis(), endTime.getMillis());
+        }
+        else {
+            try (Transaction tx = db.beginTx()) {
+                result = streamContinuumNodes(geometryToSearchIn, startTime, endTime).collect(Collectors.toList());
+                tx.success();
+            }
+        }
+        if(cache != null) cache.put(key, result, generation);
+        metrics.stopTimer("query", queryStart);
+        if(metrics.isEnabled()) metrics.recordValue("query.results", result.size());
+        return result;
+    }
 
-        try(Transaction txTemporal = db.beginTx()) {
-            List<Event> temporalResults = timedEvents.getEvents(today, tomorrow);
-            List<Node> temporalNodeList = temporalResults.stream()
-                    .map(t -> t.getNode())
-                    .collect(Collectors.toList());
+    // streaming variants - lazily evaluated, must be consumed inside a transaction managed by the caller
+    // limit and offset are pushed down to whichever index drives the query
+    public Stream<Node> streamContinuumNodes(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return engineStream(geometryToSearchIn, startTime.getMillis(), endTime.getMillis());
+    }
+
+    public Stream<Node> streamContinuumNodes(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime, long offset, long limit) {
+        return streamContinuumNodes(geometryToSearchIn, startTime, endTime).skip(offset).limit(limit);
+    }
+
+    // chronological pages, ordered by start day then node id; pass null to get the first page
+    // driven from the side the planner estimates smaller: a small geometry takes the page out of the engine's matches,
+    // a large one resumes the interval index scan right after the cursor instead of skipping the previous pages
+    // one match more than the page is looked for, so a cursor is only handed out when there is a next page
+    public ContinuumPage getContinuumNodesPage(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime, ContinuumCursor after, int pageSize) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        if(pageSize < 1) throw new Error("pageSize must be at least 1!");
+
+        IntervalIndex intervals = readableIntervalIndex();
+        long start = startTime.getMillis();
+        long end = endTime.getMillis();
+        try (Transaction tx = db.beginTx()) {
+            Layer layer = createOrRetrieveContinuumLayer();
+            long temporalEstimate = intervals.countOverlapping(start, end);
+            // {start day, id} of the matches, in page order
+            List<long[]> positions = temporalEstimate > 0 && queryPlanner.estimateSpatialCardinality(layer, geometryToSearchIn.getEnvelopeInternal()) < temporalEstimate
+                    ? pageFromEngine(geometryToSearchIn, intervals, start, end, after, pageSize + 1)
+                    : pageFromIntervals(layer, geometryToSearchIn, intervals, start, end, after, pageSize + 1);
 
-            spatialNodeList.retainAll(temporalNodeList);
-            result = spatialNodeList;
-            txTemporal.success();
+            ContinuumCursor next = null;
+            if(positions.size() > pageSize) {
+                positions = positions.subList(0, pageSize);
+                long[] last = positions.get(pageSize - 1);
+                next = new ContinuumCursor(last[0], last[1]);
+            }
+            List<Node> nodes = positions.stream().map(t -> db.getNodeById(t[1])).collect(Collectors.toList());
+            tx.success();
+            return new ContinuumPage(nodes, next);
+        }
+    }
+
+    private List<long[]> pageFromIntervals(Layer layer, Geometry geometryToSearchIn, IntervalIndex intervals, long start, long end, ContinuumCursor after, int limit) {
+        Iterator<Long> ids = after == null
+                ? intervals.iterateOverlapping(start, end)
+                : intervals.iterateOverlapping(start, end, after.getStartTime(), after.getNodeId());
+        List<long[]> positions = new ArrayList<>(limit);
+        while(positions.size() < limit && ids.hasNext()) {
+            long id = ids.next();
+            long[] span = intervals.get(id);
+            if(span != null && ContinuumQueryPlanner.isInGeometry(layer, db.getNodeById(id), geometryToSearchIn)) positions.add(new long[]{span[0], id});
+        }
+        return positions;
+    }
+
+    // later pages only ask for what is alive from the cursor's day on, every node after the cursor starts that day or later
+    // only the limit smallest positions are kept while the matches stream by
+    private List<long[]> pageFromEngine(Geometry geometryToSearchIn, IntervalIndex intervals, long start, long end, ContinuumCursor after, int limit) {
+        long from = after == null ? start : Math.max(start, after.getStartTime());
+        if(from > end) return Collections.emptyList();
+        Comparator<long[]> byPosition = Comparator.<long[]>comparingLong(t -> t[0]).thenComparingLong(t -> t[1]);
+        long[] cursor = after == null ? null : new long[]{after.getStartTime(), after.getNodeId()};
+        PriorityQueue<long[]> smallest = new PriorityQueue<>(limit + 1, byPosition.reversed());
+        try (Stream<Node> matches = engineStream(geometryToSearchIn, from, end)) {
+            matches.forEach(t -> {
+                long[] span = intervals.get(t.getId());
+                if(span == null) return;
+                long[] position = {span[0], t.getId()};
+                if(cursor != null && byPosition.compare(position, cursor) <= 0) return;
+                smallest.add(position);
+                if(smallest.size() > limit) smallest.poll();
+            });
+        }
+        List<long[]> positions = new ArrayList<>(smallest);
+        positions.sort(byPosition);
+        return positions;
+    }
+
+    // the k nodes closest to (lat, lon) by great circle distance, alive at some point of [startTime, endTime]; closest first
+    public List<ContinuumNeighbour> nearest(double lat, double lon, int k, DateTime startTime, DateTime endTime) {
+        return nearest(lat, lon, k, startTime, endTime, ContinuumNearestNeighbours.Distance.GREAT_CIRCLE);
+    }
+
+    public List<ContinuumNeighbour> nearest(double lat, double lon, int k, DateTime startTime, DateTime endTime, ContinuumNearestNeighbours.Distance distance) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        IntervalIndex intervals = readableIntervalIndex();
+        try (Transaction tx = db.beginTx()) {
+            List<ContinuumNeighbour> neighbours = ContinuumNearestNeighbours.nearest(createOrRetrieveContinuumLayer(), intervals, lat, lon, k, startTime.getMillis(), endTime.getMillis(), distance);
+            tx.success();
+            return neighbours;
+        }
+    }
+
+    // time only queries, answered by the interval index
+    // nodes alive at some point of [startTime, endTime]
+    public List<Node> getContinuumNodesOverlapping(DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return toNodes(readableIntervalIndex().getOverlapping(startTime.getMillis(), endTime.getMillis()));
+    }
+
+    // nodes whose whole life time lies inside [startTime, endTime]
+    public List<Node> getContinuumNodesContainedIn(DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return toNodes(readableIntervalIndex().getContainedIn(startTime.getMillis(), endTime.getMillis()));
+    }
+
+    // nodes alive during the whole of [startTime, endTime]
+    public List<Node> getContinuumNodesCovering(DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return toNodes(readableIntervalIndex().getCovering(startTime.getMillis(), endTime.getMillis()));
+    }
+
+    private List<Node> toNodes(List<Long> ids) {
+        try (Transaction tx = db.beginTx()) {
+            List<Node> nodes = ids.stream()
+                    .map(t -> db.getNodeById(t))
+                    .collect(Collectors.toList());
+            tx.success();
+            return nodes;
         }
-        return result;
     }
 
     // make sure each node that has a CONTINUUM label actually has all the relevant information: time and space points
     public List<Node> getAllContinuumNodes() {
+        ContinuumParallelExecutor executor = parallelExecutor;
+        if(executor != null && !hasTransaction()) return executor.scanLabel(label, t -> isValidContinuumNode(t) ? t : null);
         try(Transaction tx = db.beginTx()) {
-            List<Node> continuumNodes = db.findNodes(Label.label("Continuum"))
-                    .stream()
-                    .filter(t -> ContinuumValidator.continuumNodeHasTimeReference(t) && ContinuumValidator.continuumNodeHasLocation(t))
-                    .collect(Collectors.toList());
+            List<Node> continuumNodes = streamAllContinuumNodes().collect(Collectors.toList());
             tx.success();
             return continuumNodes;
         }
     }
 
-    public List<TimeInstant> getAllTimePoints() {
+    // must be consumed inside a transaction managed by the caller, closing the stream releases the label scan
+    public Stream<Node> streamAllContinuumNodes() {
+        return db.findNodes(label)
+                .stream()
+                .filter(t -> isValidContinuumNode(t));
+    }
+
+    private static boolean isValidContinuumNode(Node node) {
+        return ContinuumValidator.continuumNodeHasTimeReference(node) && ContinuumValidator.continuumNodeHasLocation(node);
+    }
+
+    // start and end of every Continuum node as given when it was attached, single instant events have start == end
+    public ContinuumTimePoints getAllTimePoints() {
         try(Transaction tx = db.beginTx()) {
-            List<TimeInstant> timePoints =  db.findNodes(Label.label("Continuum"))
-                    .stream()
-                    .map(t -> getTimeInstantFromContinuumNode(t))
-                    .collect(Collectors.toList());
+            ContinuumTimePoints timePoints = new ContinuumTimePoints();
+            forEachTimePoint(timePoints::add);
             tx.success();
             return timePoints;
         }
     }
 
-    // will i allow for both interval and fixed time events?
-    // supports only DD-MM-YYYY format; research TimeTree, support all available dates
-    private TimeInstant getTimeInstantFromContinuumNode(Node continuumNode) {
-        int numberOfFriends = 0;
-        DateTime dateTime = new DateTime();
-        Traverser timeTraverser = getTimeTraverser( continuumNode );
-        for ( Path timePath : timeTraverser )
-        {
-            Node endNode = timePath.endNode();
-            Label label = endNode.getLabels().iterator().next();
-            switch (label.name()) {
-                case "Day":           { dateTime.withDayOfMonth((Integer)endNode.getProperty("value"));break;}
-                case "Month":         { dateTime.withMonthOfYear((Integer)endNode.getProperty("value"));break;}
-                case "Year":          { dateTime.withYear((Integer)endNode.getProperty("value"));break;}
-                case "TimeTreeRoot:": { break;}
+    // streaming variant, nothing is collected; must be called inside a transaction managed by the caller
+    public void forEachTimePoint(IntervalIndex.IntervalVisitor visitor) {
+        db.findNodes(label).forEachRemaining(t -> {
+            long[] times = TimeTreeSpans.timesOf(t);
+            if(times != null) visitor.visit(t.getId(), times[0], times[1]);
+        });
+    }
+
+    // served from the column store when it is enabled
+    public List<Coordinate> getAllSpacePoints() {
+        ContinuumColumnStore store = columnStore;
+        if(store != null) {
+            List<Coordinate> points = new ArrayList<>(store.size());
+            store.forEach((id, lat, lon, start, end) -> points.add(new Coordinate(lat, lon)));
+            return points;
+        }
+        ContinuumParallelExecutor executor = parallelExecutor;
+        if(executor != null && !hasTransaction()) return executor.scanLabel(label, t -> isValidContinuumNode(t) ? toCoordinate(t) : null);
+        try(Transaction tx = db.beginTx()) {
+            List<Coordinate> continuumNodes = streamAllSpacePoints().collect(Collectors.toList());
+            tx.success();
+            return continuumNodes;
+        }
+    }
+
+    // must be consumed inside a transaction managed by the caller
+    public Stream<Coordinate> streamAllSpacePoints() {
+        return streamAllContinuumNodes()
+                .map(t -> toCoordinate(t));
+    }
+
+    private static Coordinate toCoordinate(Node node) {
+        return new Coordinate((Double)node.getProperty("lat"), (Double)node.getProperty("lon"));
+    }
+
+    // ANALYTICS
+    // keeps an off-heap columnar copy of the Continuum nodes, updated on every commit
+    // the snapshot is loaded if it was written at the last committed transaction, otherwise the store is rebuilt from the graph
+    public synchronized ContinuumColumnStore enableColumnStore(File snapshot) throws IOException {
+        if(columnStore != null) return columnStore;
+
+        ContinuumColumnStore store = snapshot != null && snapshot.exists() && ContinuumColumnStore.readSnapshotTag(snapshot) == lastCommittedTransactionId()
+                ? ContinuumColumnStore.loadSnapshot(snapshot)
+                : new ContinuumColumnStore();
+        ContinuumColumnStoreUpdater updater = new ContinuumColumnStoreUpdater(db, store, label);
+        // register before the scan, so nothing committed in between is missed
+        db.registerTransactionEventHandler(updater);
+        if(store.size() == 0) {
+            try(Transaction tx = db.beginTx()) {
+                db.findNodes(label).forEachRemaining(updater::refresh);
+                tx.success();
             }
+        }
+        columnStore = store;
+        columnStoreUpdater = updater;
+        return store;
+    }
+
+    // stops the updates and writes the snapshot the next enableColumnStore will start from
+    public synchronized void disableColumnStore(File snapshot) throws IOException {
+        if(columnStore == null) return;
+        db.unregisterTransactionEventHandler(columnStoreUpdater);
+        if(snapshot != null) columnStore.writeSnapshot(snapshot, lastCommittedTransactionId());
+        columnStore = null;
+        columnStoreUpdater = null;
+    }
+
+    // null while the column store is disabled
+    public ContinuumColumnStore getColumnStore() {
+        return columnStore;
+    }
+
+    // CACHE
+    // caches getContinuumNodes results, entries are evicted when a commit touches their envelope and window
+    public synchronized ContinuumQueryCache enableQueryCache(int maxEntries, long maxCachedNodes) {
+        if(queryCache != null) return queryCache;
+        ContinuumQueryCache cache = new ContinuumQueryCache(maxEntries, maxCachedNodes);
+        queryCacheInvalidator = new ContinuumQueryCacheInvalidator(cache, label);
+        db.registerTransactionEventHandler(queryCacheInvalidator);
+        queryCache = cache;
+        return cache;
+    }
+
+    public synchronized void disableQueryCache() {
+        if(queryCache == null) return;
+        db.unregisterTransactionEventHandler(queryCacheInvalidator);
+        queryCache = null;
+        queryCacheInvalidator = null;
+    }
+
+    // null while the query cache is disabled, exposes the hit/miss statistics
+    public ContinuumQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    // PARALLEL
+    // spreads getContinuumNodes, getAllContinuumNodes, getAllSpacePoints and the interval index rebuild over a fork-join pool
+    // results are the same as the sequential path, only committed data is read
+    public synchronized ContinuumParallelExecutor enableParallelQueries(int parallelism) {
+        if(parallelExecutor != null) parallelExecutor.close();
+        parallelExecutor = new ContinuumParallelExecutor(db, parallelism, this::getMetrics);
+        return parallelExecutor;
+    }
+
+    public synchronized void disableParallelQueries() {
+        if(parallelExecutor == null) return;
+        parallelExecutor.close();
+        parallelExecutor = null;
+    }
+
+    public ContinuumParallelExecutor getParallelExecutor() {
+        return parallelExecutor;
+    }
+
+    // METRICS
+    // latency histograms per query and ingest phase, candidate and result cardinalities, ingest rates and transaction sizes
+    // registered as an MXBean under continuum:type=Metrics,name=<name>
+    public synchronized ContinuumMetricsRegistry enableMetrics(String name) {
+        ContinuumMetricsRegistry registry = new ContinuumMetricsRegistry().register(name);
+        setMetrics(registry);
+        return registry;
+    }
+
+    // any registry can be plugged in, ContinuumMetrics.NOOP turns metrics off; a replaced ContinuumMetricsRegistry is unregistered from JMX
+    public synchronized void setMetrics(ContinuumMetrics metrics) {
+        if(metrics == null) throw new Error("metrics can't be null, use ContinuumMetrics.NOOP!");
+        if(this.metrics instanceof ContinuumMetricsRegistry) ((ContinuumMetricsRegistry) this.metrics).unregister();
+        this.metrics = metrics;
+    }
+
+    public synchronized void disableMetrics() {
+        setMetrics(ContinuumMetrics.NOOP);
+    }
+
+    public ContinuumMetrics getMetrics() {
+        return metrics;
+    }
+
+    // null for the default Continuum
+    public String getPartition() {
+        return partition;
+    }
+
+    // SUBSCRIPTIONS
+    // standing queries: the listener hears about every committed Continuum node within the geometry whose span overlaps the window,
+    // instead of polling getContinuumNodes for new matches
+    public ContinuumSubscription subscribe(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime, ContinuumSubscription.Listener listener) {
+        ContinuumSubscriptions subscriptions = this.subscriptions;
+        if(subscriptions == null) subscriptions = enableSubscriptions(null);
+        return subscriptions.subscribe(geometryToSearchIn, startTime.getMillis(), endTime.getMillis(), listener);
+    }
 
+    public boolean unsubscribe(ContinuumSubscription subscription) {
+        ContinuumSubscriptions subscriptions = this.subscriptions;
+        return subscriptions != null && subscriptions.unsubscribe(subscription);
+    }
+
+    // matches are delivered on the executor, null for a single daemon thread which keeps them in commit order
+    public synchronized ContinuumSubscriptions enableSubscriptions(Executor executor) {
+        if(subscriptions != null) return subscriptions;
+        if(executor == null) {
+            subscriptionExecutor = Executors.newSingleThreadExecutor(t -> {
+                Thread thread = new Thread(t, "continuum-subscriptions");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor = subscriptionExecutor;
         }
-        return getTimeInstantFromDateTime(dateTime);
+        ContinuumSubscriptions created = new ContinuumSubscriptions();
+        subscriptionMatcher = new ContinuumSubscriptionMatcher(created, executor, label, this::getMetrics);
+        db.registerTransactionEventHandler(subscriptionMatcher);
+        subscriptions = created;
+        return created;
     }
 
-    private Traverser getTimeTraverser( final Node continuumNode )
-    {
-        TraversalDescription td = db.traversalDescription()
-                // depthFirst is more efficient - http://www.ekino.com/optimization-strategies-traversals-neo4j/
-                .depthFirst()
-                .relationships( RelationshipType.withName("child"), Direction.INCOMING )
-                .evaluator( Evaluators.excludeStartPosition() );
-        return td.traverse( continuumNode );
+    // drops every subscription, matches already handed to the executor are still delivered
+    public synchronized void disableSubscriptions() {
+        if(subscriptions == null) return;
+        db.unregisterTransactionEventHandler(subscriptionMatcher);
+        if(subscriptionExecutor != null) subscriptionExecutor.shutdown();
+        subscriptions = null;
+        subscriptionMatcher = null;
+        subscriptionExecutor = null;
     }
 
-    public List<Coordinate> getAllSpacePoints() {
-        try(Transaction tx = db.beginTx()) {
-            List<Coordinate> continuumNodes = db.findNodes(Label.label("Continuum"))
-                    .stream()
-                    .filter(t -> ContinuumValidator.continuumNodeHasTimeReference(t) && ContinuumValidator.continuumNodeHasLocation(t))
-                    .map(t -> new Coordinate((Double)t.getProperty("lat"), (Double)t.getProperty("lon")))
-                    .collect(Collectors.toList());
+    // null until subscriptions are enabled
+    public ContinuumSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    // CLOSE
+    // unregisters every transaction event handler this Continuum registered and stops its executors, the graph is left as it is
+    // the in-memory indexes are dropped as nothing keeps them in sync anymore, don't use the Continuum afterwards
+    public synchronized void close() {
+        synchronized (indexLock) {
+            if(indexUpdater != null) db.unregisterTransactionEventHandler(indexUpdater);
+            indexUpdater = null;
+            intervalIndex = null;
+            clusterPyramid = null;
+        }
+        if(columnStoreUpdater != null) db.unregisterTransactionEventHandler(columnStoreUpdater);
+        columnStore = null;
+        columnStoreUpdater = null;
+        disableQueryCache();
+        disableSubscriptions();
+        disableParallelQueries();
+        disableMetrics();
+        synchronized (aggregators) {
+            if(aggregationUpdater != null) db.unregisterTransactionEventHandler(aggregationUpdater);
+            aggregationUpdater = null;
+        }
+    }
+
+    private boolean hasTransaction() {
+        return ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).hasTransaction();
+    }
+
+    // an open transaction that has written anything, Continuum or not
+    private boolean hasUncommittedWrites() {
+        KernelTransaction tx = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).getKernelTransactionBoundToThisThread(false);
+        return tx != null && (!(tx instanceof TxStateHolder) || ((TxStateHolder) tx).hasTxStateWithChanges());
+    }
+
+    private long lastCommittedTransactionId() {
+        return ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(TransactionIdStore.class).getLastCommittedTransactionId();
+    }
+
+    // MIGRATION
+    // graphs written before Continuum kept startTime/endTime on the nodes only have the TimeTree links,
+    // copies the days of those links onto the nodes; safe to run more than once, returns the number of nodes updated
+    public long backfillTimeProperties(int batchSize) {
+        if(batchSize < 1) throw new Error("batchSize must be at least 1!");
+        List<Long> missing = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            db.findNodes(label).forEachRemaining(t -> {
+                if(!t.hasProperty(TimeTreeSpans.START_TIME) || !t.hasProperty(TimeTreeSpans.END_TIME)) missing.add(t.getId());
+            });
+            tx.success();
+        }
+
+        long updated = 0;
+        for(int from=0;from<missing.size();from+=batchSize) {
+            try (Transaction txBatch = db.beginTx()) {
+                for(long id : missing.subList(from, Math.min(missing.size(), from + batchSize))) {
+                    Node node = db.getNodeById(id);
+                    long[] times = TimeTreeSpans.timesFromTimeTree(node);
+                    if(times == null) continue;
+                    node.setProperty(TimeTreeSpans.START_TIME, times[0]);
+                    node.setProperty(TimeTreeSpans.END_TIME, times[1]);
+                    updated++;
+                }
+                txBatch.success();
+            }
+        }
+        return updated;
+    }
+
+    // UPDATE
+    // moves the node in space, only its R-tree entry is updated; the time relationships stay untouched
+    public void moveContinuumNode(long id, double lat, double lon) {
+        try (Transaction tx = db.beginTx()) {
+            Node node = continuumNode(id);
+            EditableLayer layer = createOrRetrieveContinuumLayer();
+            node.setProperty("lat", lat);
+            node.setProperty("lon", lon);
+            layer.update(id, layer.getGeometryFactory().createPoint(new com.vividsolutions.jts.geom.Coordinate(lon, lat)));
+            tx.success();
+        }
+    }
+
+    // moves the node in time, only the time relationships whose day changes are replaced; the R-tree stays untouched
+    public void rescheduleContinuumNode(long id, DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        try (Transaction tx = db.beginTx()) {
+            Node node = continuumNode(id);
+            Map<Long, Node> instants = new HashMap<>();
+            // keyed by relationship type name
+            Map<String, Node> wanted = new HashMap<>();
+            if(!startTime.equals(endTime)) {
+                wanted.put(TimeRelationshipTypes.START_DATE.name(), getOrCreateInstant(startTime, instants));
+                wanted.put(TimeRelationshipTypes.END_DATE.name(), getOrCreateInstant(endTime, instants));
+            }
+            else wanted.put(TimeRelationshipTypes.EVENT_DATE.name(), getOrCreateInstant(startTime, instants));
+
+            Set<Node> released = new HashSet<>();
+            for(Relationship timeRel : node.getRelationships(Direction.OUTGOING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.END_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+                String type = timeRel.getType().name();
+                if(timeRel.getEndNode().equals(wanted.get(type))) {
+                    wanted.remove(type);
+                    continue;
+                }
+                released.add(timeRel.getEndNode());
+                timeRel.delete();
+            }
+            wanted.forEach((type, instant) -> node.createRelationshipTo(instant, RelationshipType.withName(type)));
+            node.setProperty(TimeTreeSpans.START_TIME, startTime.getMillis());
+            node.setProperty(TimeTreeSpans.END_TIME, endTime.getMillis());
+            pruneInstants(released);
             tx.success();
-            return continuumNodes;
         }
     }
 
-    // UPDATE - should be handled by cypher
+    // DELETE
+    // takes the node out of the Continuum, the node and its own properties stay
+    // its R-tree entry is removed (the R-tree condenses the emptied leaves) and so are the TimeTree days, months and years no one else uses
+    // returns false if the node wasn't in the Continuum or doesn't exist
+    public boolean removeContinuumNode(long id) {
+        return removeContinuumNodes(Collections.singletonList(id)) == 1;
+    }
 
-    // DELETE - if no point exists in space, should remove the RTREE
-    //          if no point exists in time, should remove the time from the tree
-    public void removeContinuumNode(long id) {
+    public long removeContinuumNodes(Iterable<Long> ids) {
+        return removeContinuumNodes(ids, DEFAULT_BATCH_SIZE);
+    }
 
+    // commits once every batchSize nodes, the TimeTree is pruned once per batch
+    public long removeContinuumNodes(Iterable<Long> ids, int batchSize) {
+        if(batchSize < 1) throw new Error("batchSize must be at least 1!");
+
+        long removed = 0;
+        List<Long> batch = new ArrayList<>(batchSize);
+        for(long id : ids) {
+            batch.add(id);
+            if(batch.size() == batchSize) {
+                removed += removeBatch(batch);
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()) removed += removeBatch(batch);
+        return removed;
+    }
+
+    private int removeBatch(List<Long> batch) {
+        ContinuumMetrics metrics = this.metrics;
+        long removeStart = metrics.startTimer();
+        int removed = 0;
+        try (Transaction txBatch = db.beginTx()) {
+            EditableLayer layer = createOrRetrieveContinuumLayer();
+            Set<Node> released = new HashSet<>();
+            for(long id : batch) {
+                try {
+                    if(detachFromContinuum(db.getNodeById(id), layer, released)) removed++;
+                } catch (NotFoundException e) {
+                    // no such node, it isn't in the Continuum either
+                }
+            }
+            pruneInstants(released);
+            txBatch.success();
+        }
+        metrics.stopTimer("remove", removeStart);
+        metrics.mark("remove.nodes", removed);
+        return removed;
+    }
+
+    // released collects the instants the node was attached to
+    private boolean detachFromContinuum(Node node, EditableLayer layer, Set<Node> released) {
+        if(!node.hasLabel(label)) return false;
+
+        for(Relationship timeRel : node.getRelationships(Direction.OUTGOING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.END_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+            released.add(timeRel.getEndNode());
+            timeRel.delete();
+        }
+        if(node.hasRelationship(Direction.INCOMING, SpaceRelationshipTypes.RTREEREFERENCE)) layer.removeFromIndex(node.getId());
+        node.removeProperty("lat");
+        node.removeProperty("lon");
+        node.removeProperty(TimeTreeSpans.START_TIME);
+        node.removeProperty(TimeTreeSpans.END_TIME);
+        // written by the point encoder
+        node.removeProperty("bbox");
+        node.removeLabel(label);
+        return true;
+    }
+
+    // removeInstant deletes the instant and every parent left without children, so only instants without events are passed on
+    private void pruneInstants(Set<Node> instants) {
+        for(Node instant : instants) {
+            boolean used = false;
+            for(Relationship relationship : instant.getRelationships()) {
+                if(!relationship.isType(TimeTreeRelationshipTypes.CHILD) && !relationship.isType(TimeTreeRelationshipTypes.NEXT)
+                        && !relationship.isType(TimeTreeRelationshipTypes.FIRST) && !relationship.isType(TimeTreeRelationshipTypes.LAST)) {
+                    used = true;
+                    break;
+                }
+            }
+            if(!used) timeTree.removeInstant(instant);
+        }
+    }
+
+    private Node continuumNode(long id) {
+        Node node = db.getNodeById(id);
+        if(!node.hasLabel(label)) throw new Error("node " + id + " is not in the " + (partition == null ? "Continuum!" : "Continuum partition " + partition + "!"));
+        return node;
     }
 
     // utils
+    IntervalIndex intervalIndex() {
+        if(intervalIndex == null) {
+            synchronized (indexLock) {
+                registerIndexUpdater();
+                if(intervalIndex == null) intervalIndex = readCommitted(this::buildIntervalIndex);
+            }
+        }
+        return intervalIndex;
+    }
+
+    // the interval index for the caller's queries
+    // the shared one only holds committed writes, a caller with uncommitted writes gets one scanned inside its transaction,
+    // the same way the ContinuumIndexUpdater reads a node; that costs a label scan per query, only while the writes are pending
+    private IntervalIndex readableIntervalIndex() {
+        if(!hasUncommittedWrites()) return intervalIndex();
+        IntervalIndex index = new IntervalIndex();
+        try (Transaction tx = db.beginTx()) {
+            db.findNodes(label).forEachRemaining(t -> {
+                long[] span = t.hasProperty("lat") && t.hasProperty("lon") ? TimeTreeSpans.spanOf(t) : null;
+                if(span != null) index.add(t.getId(), span[0], span[1]);
+            });
+            tx.success();
+        }
+        return index;
+    }
+
+    // the engine only knows committed writes as well, so a caller with uncommitted ones is answered by the planner:
+    // the R-tree is part of the graph, the intervals are scanned as above
+    private Stream<Node> engineStream(Geometry geometryToSearchIn, long startTime, long endTime) {
+        if(!hasUncommittedWrites()) return indexEngine.stream(geometryToSearchIn, startTime, endTime);
+        return queryPlanner.stream(createOrRetrieveContinuumLayer(), geometryToSearchIn, readableIntervalIndex(), startTime, endTime);
+    }
+
+    // must be called holding the indexLock, before the index is built, so no commit made during the build is missed
+    // a Continuum that never builds an in-memory index registers nothing
+    private void registerIndexUpdater() {
+        if(indexUpdater != null) return;
+        indexUpdater = new ContinuumIndexUpdater(db, new ContinuumIndexUpdater.Index() {
+            @Override
+            public void put(long id, double lat, double lon, long start, long end) {
+                index(id, lat, lon, start, end);
+            }
+
+            @Override
+            public void remove(long id) {
+                unindex(id);
+            }
+        }, label, indexLock, this::getMetrics);
+        db.registerTransactionEventHandler(indexUpdater);
+    }
+
+    // the indexes must not pick up writes the caller hasn't committed yet, they might still roll back
+    // so with a transaction open they are read on another thread, which only sees what is committed
+    private <T> T readCommitted(Supplier<T> read) {
+        return hasTransaction() ? CompletableFuture.supplyAsync(read).join() : read.get();
+    }
+
+    private IntervalIndex buildIntervalIndex() {
+        IntervalIndex index = new IntervalIndex();
+        ContinuumParallelExecutor executor = parallelExecutor;
+        List<Node> roots;
+        try (Transaction tx = db.beginTx()) {
+            roots = timeTreeRoots();
+            if(executor == null) roots.forEach(root -> TimeTreeSpans.collectSpans(root).forEach((id, span) -> index.add(id, span[0], span[1])));
+            tx.success();
+        }
+        if(executor != null) roots.forEach(root -> executor.collectSpans(root).forEach((id, span) -> index.add(id, span[0], span[1])));
+        return index;
+    }
+
+    ContinuumClusterPyramid clusterPyramid() {
+        if(clusterPyramid == null) {
+            synchronized (indexLock) {
+                registerIndexUpdater();
+                if(clusterPyramid == null) clusterPyramid = buildClusterPyramid(DEFAULT_CLUSTER_LEVELS, true);
+            }
+        }
+        return clusterPyramid;
+    }
+
+    // must be called holding the indexLock
+    private ContinuumClusterPyramid buildClusterPyramid(int maxLevel, boolean perYear) {
+        // {id, lat, lon, start, end}
+        List<double[]> rows = new ArrayList<>();
+        ContinuumColumnStore store = columnStore;
+        ContinuumParallelExecutor executor = parallelExecutor;
+        if(store != null) {
+            store.forEach((id, lat, lon, start, end) -> rows.add(new double[]{id, lat, lon, start, end}));
+        } else {
+            IntervalIndex intervals = intervalIndex();
+            Function<Node, double[]> toRow = t -> {
+                long[] span = intervals.get(t.getId());
+                return span == null || !t.hasProperty("lat") || !t.hasProperty("lon") ? null : new double[]{t.getId(), (Double) t.getProperty("lat"), (Double) t.getProperty("lon"), span[0], span[1]};
+            };
+            rows.addAll(readCommitted(() -> {
+                if(executor != null) return executor.scanLabel(label, toRow);
+                List<double[]> scanned = new ArrayList<>();
+                try (Transaction tx = db.beginTx()) {
+                    db.findNodes(label).forEachRemaining(t -> {
+                        double[] row = toRow.apply(t);
+                        if(row != null) scanned.add(row);
+                    });
+                    tx.success();
+                }
+                return scanned;
+            }));
+        }
+
+        Supplier<ContinuumClusterPyramid> build = () -> rows.parallelStream().collect(
+                () -> new ContinuumClusterPyramid(maxLevel, perYear),
+                (pyramid, row) -> pyramid.add((long) row[0], row[1], row[2], (long) row[3], (long) row[4]),
+                ContinuumClusterPyramid::merge);
+        return executor != null ? executor.run(build) : build.get();
+    }
+
+    // the layer is cached, but a layer created by a transaction that rolled back is gone (and its node id may be reused),
+    // so the cached one is only used while its node is still the layer node of that name
     public EditableLayer createOrRetrieveContinuumLayer() {
-        return (EditableLayer) spatial.getOrCreateLayer("Continuum", SimplePointEncoder.class, EditableLayerImpl.class, "lon:lat");
+        EditableLayer layer = continuumLayer;
+        if(layer == null || !isLayerNodeOf(layer)) {
+            layer = (EditableLayer) spatial.getOrCreateLayer(layerName, SimplePointEncoder.class, EditableLayerImpl.class, "lon:lat");
+            continuumLayer = layer;
+        }
+        return layer;
+    }
+
+    private boolean isLayerNodeOf(Layer layer) {
+        try (Transaction tx = db.beginTx()) {
+            boolean valid;
+            try {
+                valid = layerName.equals(layer.getLayerNode().getProperty("layer", null));
+            } catch (NotFoundException e) {
+                valid = false;
+            }
+            tx.success();
+            return valid;
+        }
     }
 
     // experimental
-    public void clusterNodesBySpace() {
+    // counts and centroids of the cells of the deepest pyramid level at which the envelope covers at most maxClusters cells
+    public List<ContinuumCluster> clusterNodesBySpace(Envelope envelope, int maxClusters) {
+        if(maxClusters < 1) throw new Error("maxClusters must be at least 1!");
+        ContinuumClusterPyramid pyramid = clusterPyramid();
+        return pyramid.clusters(envelope, pyramid.levelFor(envelope, maxClusters));
+    }
+
+    // the same, counting only the nodes alive during the years of [startTime, endTime]
+    public List<ContinuumCluster> clusterNodesBySpace(Envelope envelope, int maxClusters, DateTime startTime, DateTime endTime) {
+        if(maxClusters < 1) throw new Error("maxClusters must be at least 1!");
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        ContinuumClusterPyramid pyramid = clusterPyramid();
+        return pyramid.clusters(envelope, pyramid.levelFor(envelope, maxClusters), TimeTreeSpans.startOfDay(startTime), TimeTreeSpans.endOfDay(endTime));
+    }
 
+    // rebuilds the pyramid with the given depth, perYear is needed for time filtered clusters
+    // the rows come from the column store when it is enabled, otherwise from the graph; the pyramid itself is built in parallel
+    // memory: about 100 bytes a node, which the pyramid keeps to take the node out again, plus the cells, see ContinuumClusterPyramid
+    public ContinuumClusterPyramid enableSpatialClustering(int maxLevel, boolean perYear) {
+        synchronized (indexLock) {
+            registerIndexUpdater();
+            clusterPyramid = buildClusterPyramid(maxLevel, perYear);
+            return clusterPyramid;
+        }
     }
 
-    public void clusterNodesByTime() {
+    public void disableSpatialClustering() {
+        synchronized (indexLock) {
+            clusterPyramid = null;
+        }
+    }
 
+    // periods with an unusual number of lives starting, best first, from one pass over the life times
+    // memory is bounded by the histogram size, not by the number of nodes
+    public List<ContinuumTimeCluster> clusterNodesByTime(int maxClusters) {
+        return clusterNodesByTime(null, maxClusters);
+    }
+
+    // only looks at the nodes inside the geometry, pass null for all of them
+    public List<ContinuumTimeCluster> clusterNodesByTime(Geometry geometryToSearchIn, int maxClusters) {
+        if(maxClusters < 1) throw new Error("maxClusters must be at least 1!");
+        ContinuumTimeHistogram histogram = new ContinuumTimeHistogram(TIME_HISTOGRAM_BINS);
+        IntervalIndex intervals = readableIntervalIndex();
+        ContinuumColumnStore store = columnStore;
+        if(geometryToSearchIn == null) {
+            intervals.forEachInterval((id, start, end) -> histogram.add(start, end));
+        } else if(store != null) {
+            GeometryFactory factory = geometryToSearchIn.getFactory();
+            store.forEach(geometryToSearchIn.getEnvelopeInternal(), Long.MIN_VALUE, Long.MAX_VALUE, (id, lat, lon, start, end) -> {
+                if(factory.createPoint(new com.vividsolutions.jts.geom.Coordinate(lon, lat)).within(geometryToSearchIn)) histogram.add(start, end);
+            });
+        } else {
+            try (Transaction tx = db.beginTx(); Stream<Node> inGeometry = engineStream(geometryToSearchIn, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                inGeometry.forEach(t -> {
+                    long[] span = intervals.get(t.getId());
+                    if(span != null) histogram.add(span[0], span[1]);
+                });
+                tx.success();
+            }
+        }
+        return histogram.clusters(maxClusters);
     }
 
     // give me the time-period with the most prolific artists
-    public void summarizeDataByField() {
+    // totals of the nodes whose life starts in [startTime, endTime], read from the Year, Month and Day buckets covering the range
+    public ContinuumAggregate summarizeDataByField(String aggregation, DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        ContinuumAggregator aggregator = aggregator(aggregation);
+        long start = TimeTreeSpans.startOfDay(startTime);
+        long end = TimeTreeSpans.endOfDay(endTime);
+        try (Transaction tx = db.beginTx()) {
+            ContinuumAggregate total = new ContinuumAggregate(new DateTime(start, UTC), new DateTime(end, UTC));
+            for(Node root : timeTreeRoots()) total = total.merge(aggregator.summarize(root, start, end));
+            tx.success();
+            return total;
+        }
+    }
+
+    // one aggregate per year, month or day of [startTime, endTime], e.g. to find the decade with the most painters
+    public List<ContinuumAggregate> summarizeDataByField(String aggregation, DateTime startTime, DateTime endTime, Resolution resolution) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        ContinuumAggregator aggregator = aggregator(aggregation);
+        try (Transaction tx = db.beginTx()) {
+            List<ContinuumAggregate> buckets = new ArrayList<>();
+            for(Node root : timeTreeRoots()) buckets.addAll(aggregator.summarize(root, TimeTreeSpans.startOfDay(startTime), TimeTreeSpans.endOfDay(endTime), resolution));
+            tx.success();
+            return buckets;
+        }
+    }
+
+    // AGGREGATION
+    // counts nodes per Year, Month and Day, split by the value of field and with sum/min/max of valueProperty; both may be null
+    // the definition is stored in the graph, the aggregates are rebuilt from it and from then on kept up to date by the
+    // ContinuumAggregationUpdater, also by any Continuum that is started on the database later
+    // a transaction sees its own writes in the aggregates only once it has committed
+    public ContinuumAggregator enableAggregation(String name, String field, String valueProperty) {
+        ContinuumAggregator aggregator = new ContinuumAggregator(name, field, valueProperty);
+        synchronized (aggregators) {
+            try (Transaction tx = db.beginTx()) {
+                aggregator.saveDefinition(db, label);
+                for(Node root : timeTreeRoots()) aggregator.rebuild(root);
+                tx.success();
+            }
+            aggregators.put(name, aggregator);
+            registerAggregationUpdater();
+        }
+        return aggregator;
+    }
 
+    // stops maintaining the aggregation, removes its definition and its values from the TimeTree
+    public void disableAggregation(String name) {
+        synchronized (aggregators) {
+            ContinuumAggregator aggregator = aggregators.remove(name);
+            if(aggregator == null) return;
+            try (Transaction tx = db.beginTx()) {
+                ContinuumAggregator.deleteDefinition(db, label, name);
+                for(Node root : timeTreeRoots()) aggregator.clearAll(root);
+                tx.success();
+            }
+            if(aggregators.isEmpty() && aggregationUpdater != null) {
+                db.unregisterTransactionEventHandler(aggregationUpdater);
+                aggregationUpdater = null;
+            }
+        }
+    }
+
+    // the aggregations enabled before, by this Continuum or an earlier one on the same database
+    private void loadAggregations() {
+        synchronized (aggregators) {
+            try (Transaction tx = db.beginTx()) {
+                for(ContinuumAggregator aggregator : ContinuumAggregator.loadDefinitions(db, label)) aggregators.put(aggregator.getName(), aggregator);
+                tx.success();
+            }
+            if(!aggregators.isEmpty()) registerAggregationUpdater();
+        }
+    }
+
+    // must be called holding the aggregators monitor
+    private void registerAggregationUpdater() {
+        if(aggregationUpdater != null) return;
+        aggregationUpdater = new ContinuumAggregationUpdater(aggregators, this::isOwnTimeTreeRoot);
+        db.registerTransactionEventHandler(aggregationUpdater);
+    }
+
+    private boolean isOwnTimeTreeRoot(Node root) {
+        if(partition == null) return root.hasLabel(TimeTreeLabels.TimeTreeRoot);
+        return root.hasLabel(ContinuumPartitionTimeTree.PARTITION_ROOT) && partition.equals(root.getProperty("name", null));
+    }
+
+    private ContinuumAggregator aggregator(String name) {
+        ContinuumAggregator aggregator = aggregators.get(name);
+        if(aggregator == null) throw new Error("no aggregation named " + name + ", see enableAggregation");
+        return aggregator;
+    }
+
+    // the partition has a single root, which doesn't exist before its first write
+    private List<Node> timeTreeRoots() {
+        if(partition != null) {
+            Node root = ((ContinuumPartitionTimeTree) timeTree).findRoot();
+            return root == null ? Collections.emptyList() : Collections.singletonList(root);
+        }
+        return db.findNodes(TimeTreeLabels.TimeTreeRoot).stream().collect(Collectors.toList());
     }
 
     private TimeInstant getTimeInstantFromDateTime(DateTime dateTime) {
@@ -0,0 +1,96 @@
+import org.joda.time.DateTime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregated values of the Continuum nodes whose life starts in [start, end], see {@link ContinuumAggregator}.
+ * sum, min and max are only present when the aggregation has a value property, counts and sums per field value
+ * only when it has a field.
+ */
+public class ContinuumAggregate {
+
+    private final DateTime start;
+    private final DateTime end;
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    private final Map<String, Long> countByValue = new HashMap<>();
+    private final Map<String, Double> sumByValue = new HashMap<>();
+
+    public ContinuumAggregate(DateTime start, DateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    void add(long count, double sum, Double min, Double max) {
+        this.count += count;
+        this.sum += sum;
+        if(min != null) this.min = this.min == null ? min : Math.min(this.min, min);
+        if(max != null) this.max = this.max == null ? max : Math.max(this.max, max);
+    }
+
+    void addForValue(String value, long count, double sum) {
+        countByValue.merge(value, count, Long::sum);
+        if(sum != 0) sumByValue.merge(value, sum, Double::sum);
+    }
+
+    // combines two aggregates, the result spans both
+    public ContinuumAggregate merge(ContinuumAggregate other) {
+        ContinuumAggregate merged = new ContinuumAggregate(start.isBefore(other.start) ? start : other.start, end.isAfter(other.end) ? end : other.end);
+        for(ContinuumAggregate aggregate : new ContinuumAggregate[]{this, other}) {
+            merged.add(aggregate.count, aggregate.sum, aggregate.min, aggregate.max);
+            aggregate.countByValue.forEach((value, count) -> merged.addForValue(value, count, aggregate.sumByValue.getOrDefault(value, 0.0)));
+        }
+        return merged;
+    }
+
+    public DateTime getStart() {
+        return start;
+    }
+
+    public DateTime getEnd() {
+        return end;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    // null if nothing was aggregated
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+
+    public Map<String, Long> getCountByValue() {
+        return Collections.unmodifiableMap(countByValue);
+    }
+
+    public Map<String, Double> getSumByValue() {
+        return Collections.unmodifiableMap(sumByValue);
+    }
+
+    public long getCount(String value) {
+        return countByValue.getOrDefault(value, 0L);
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuumAggregate{" + start + " - " + end + ", count=" + count + ", sum=" + sum + ", min=" + min + ", max=" + max + ", countByValue=" + countByValue + "}";
+    }
+
+}
@@ -0,0 +1,114 @@
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the aggregates of a Continuum up to date, whoever writes to the graph.
+ * Before commit it recounts the days that gained or lost a node, or whose nodes changed a counted property, then their months
+ * and years. The recount is part of the transaction, so it rolls back with it, and a recount of an unchanged day writes nothing.
+ */
+public class ContinuumAggregationUpdater implements TransactionEventHandler<Void> {
+
+    private final Map<String, ContinuumAggregator> aggregators;
+    // the TimeTree roots of this Continuum, the days of other partitions are left to their own updater
+    private final Predicate<Node> isOwnRoot;
+
+    public ContinuumAggregationUpdater(Map<String, ContinuumAggregator> aggregators, Predicate<Node> isOwnRoot) {
+        this.aggregators = aggregators;
+        this.isOwnRoot = isOwnRoot;
+    }
+
+    @Override
+    public Void beforeCommit(TransactionData data) throws Exception {
+        if(aggregators.isEmpty()) return null;
+
+        Set<Node> touched = new HashSet<>();
+        for(Relationship relationship : data.createdRelationships()) {
+            if(isStartLink(relationship)) touched.add(relationship.getEndNode());
+        }
+        for(Relationship relationship : data.deletedRelationships()) {
+            try {
+                // a pruned day takes its CHILD relationship along, its month has to be recounted
+                if(isStartLink(relationship)) touched.add(relationship.getEndNode());
+                else if(relationship.isType(TimeTreeRelationshipTypes.CHILD)) touched.add(relationship.getStartNode());
+            } catch (NotFoundException e) {
+                // the node went away with the relationship
+            }
+        }
+        for(PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            if(isCounted(entry.key()) && !data.isDeleted(entry.entity())) addStartDays(entry.entity(), touched);
+        }
+        for(PropertyEntry<Node> entry : data.removedNodeProperties()) {
+            if(isCounted(entry.key()) && !data.isDeleted(entry.entity())) addStartDays(entry.entity(), touched);
+        }
+        touched.removeIf(node -> data.isDeleted(node) || !isOwnRoot.test(rootOf(node)));
+        if(touched.isEmpty()) return null;
+
+        // bottom up, each level in id order so concurrent commits lock the months and years they share in the same order
+        Set<Node> months = refresh(touched, TimeTreeLabels.Day);
+        months.addAll(touched);
+        Set<Node> years = refresh(months, TimeTreeLabels.Month);
+        years.addAll(touched);
+        refresh(years, TimeTreeLabels.Year);
+        return null;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Void state) {
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Void state) {
+    }
+
+    // recounts the time nodes of the given resolution, returns their parents
+    private Set<Node> refresh(Set<Node> timeNodes, Label resolution) {
+        List<Node> level = timeNodes.stream().filter(node -> node.hasLabel(resolution)).sorted(Comparator.comparingLong(Node::getId)).collect(Collectors.toList());
+        Set<Node> parents = new HashSet<>();
+        for(Node timeNode : level) {
+            for(ContinuumAggregator aggregator : aggregators.values()) aggregator.refresh(timeNode);
+            parents.add(TimeTreeSpans.parent(timeNode));
+        }
+        return parents;
+    }
+
+    private boolean isCounted(String key) {
+        for(ContinuumAggregator aggregator : aggregators.values()) {
+            if(aggregator.isCountedBy(key)) return true;
+        }
+        return false;
+    }
+
+    private static void addStartDays(Node node, Set<Node> days) {
+        for(Relationship timeRel : node.getRelationships(Direction.OUTGOING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+            days.add(timeRel.getEndNode());
+        }
+    }
+
+    private static Node rootOf(Node timeNode) {
+        Node node = timeNode;
+        while(node.hasRelationship(TimeTreeRelationshipTypes.CHILD, Direction.INCOMING)) node = TimeTreeSpans.parent(node);
+        return node;
+    }
+
+    // a node counts towards the day its life starts on
+    private static boolean isStartLink(Relationship relationship) {
+        return relationship.isType(TimeRelationshipTypes.START_DATE) || relationship.isType(TimeRelationshipTypes.EVENT_DATE);
+    }
+
+}
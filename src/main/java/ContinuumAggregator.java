@@ -0,0 +1,329 @@
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Keeps the count, and optionally sum/min/max of a numeric property, of the Continuum nodes attached to every Year, Month and Day
+ * of the TimeTree, as properties of those time nodes. A node counts towards the day its life starts on, and that day's month and year.
+ * Counts and sums can also be split by the value of a field, e.g. the profession of a person.
+ * The definition is stored in the graph as a ContinuumAggregation node, and the {@link ContinuumAggregationUpdater} recounts
+ * the days a transaction touched before it commits, so a range query only reads the precomputed values of the few years,
+ * months and days that cover it.
+ */
+public class ContinuumAggregator {
+
+    public static final Label DEFINITION = Label.label("ContinuumAggregation");
+
+    private static final DateTimeZone UTC = DateTimeZone.UTC;
+    private static final String VALUE = "value";
+    private static final String COUNT = "count";
+    private static final String SUM = "sum";
+    private static final String MIN = "min";
+    private static final String MAX = "max";
+    // the counts and sums per field value, as three arrays of the same length sorted by value
+    private static final String VALUES = "values";
+    private static final String VALUE_COUNTS = "valueCounts";
+    private static final String VALUE_SUMS = "valueSums";
+
+    private final String name;
+    private final String field;
+    private final String valueProperty;
+    private final String prefix;
+
+    // field and valueProperty may be null
+    public ContinuumAggregator(String name, String field, String valueProperty) {
+        if(name == null || name.isEmpty()) throw new Error("aggregation needs a name!");
+        this.name = name;
+        this.field = field;
+        this.valueProperty = valueProperty;
+        this.prefix = "aggregate." + name + ".";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getValueProperty() {
+        return valueProperty;
+    }
+
+    // DEFINITIONS - keyed by the label of their Continuum and their name, must be called inside a transaction
+    public static List<ContinuumAggregator> loadDefinitions(GraphDatabaseService db, Label continuum) {
+        List<ContinuumAggregator> aggregators = new ArrayList<>();
+        db.findNodes(DEFINITION, "continuum", continuum.name()).forEachRemaining(definition ->
+                aggregators.add(new ContinuumAggregator((String) definition.getProperty("name"), (String) definition.getProperty("field", null), (String) definition.getProperty("valueProperty", null))));
+        return aggregators;
+    }
+
+    // replaces an earlier definition of the same name
+    public void saveDefinition(GraphDatabaseService db, Label continuum) {
+        Node definition = findDefinition(db, continuum, name);
+        if(definition == null) {
+            definition = db.createNode(DEFINITION);
+            definition.setProperty("continuum", continuum.name());
+            definition.setProperty("name", name);
+        }
+        if(field == null) definition.removeProperty("field");
+        else definition.setProperty("field", field);
+        if(valueProperty == null) definition.removeProperty("valueProperty");
+        else definition.setProperty("valueProperty", valueProperty);
+    }
+
+    public static void deleteDefinition(GraphDatabaseService db, Label continuum, String name) {
+        Node definition = findDefinition(db, continuum, name);
+        if(definition != null) definition.delete();
+    }
+
+    private static Node findDefinition(GraphDatabaseService db, Label continuum, String name) {
+        try (ResourceIterator<Node> definitions = db.findNodes(DEFINITION, "continuum", continuum.name())) {
+            while(definitions.hasNext()) {
+                Node definition = definitions.next();
+                if(name.equals(definition.getProperty("name"))) return definition;
+            }
+        }
+        return null;
+    }
+
+    // the properties a node is counted by
+    boolean isCountedBy(String key) {
+        return key.equals(field) || key.equals(valueProperty);
+    }
+
+    // recounts a Day from the nodes attached to it, or a Month or Year from its children
+    // nothing is written when the aggregates didn't change, so unrelated commits don't lock the months and years
+    public void refresh(Node timeNode) {
+        Totals totals = new Totals();
+        if(timeNode.hasLabel(TimeTreeLabels.Day)) {
+            for(Relationship timeRel : timeNode.getRelationships(Direction.INCOMING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+                Node node = timeRel.getStartNode();
+                totals.add(fieldValueOf(node), valueOf(node));
+            }
+        } else {
+            for(Relationship toChild : timeNode.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                totals.add(toChild.getEndNode(), prefix);
+            }
+        }
+        if(totals.count == 0) clear(timeNode);
+        else totals.write(timeNode, prefix, field != null);
+    }
+
+    // recomputes every aggregate below the root from the nodes attached to its days
+    public void rebuild(Node timeTreeRoot) {
+        for(Relationship toYear : timeTreeRoot.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+            for(Relationship toMonth : toYear.getEndNode().getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                for(Relationship toDay : toMonth.getEndNode().getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                    refresh(toDay.getEndNode());
+                }
+                refresh(toMonth.getEndNode());
+            }
+            refresh(toYear.getEndNode());
+        }
+    }
+
+    public void clearAll(Node timeTreeRoot) {
+        for(Relationship toYear : timeTreeRoot.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+            clear(toYear.getEndNode());
+            for(Relationship toMonth : toYear.getEndNode().getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                clear(toMonth.getEndNode());
+                for(Relationship toDay : toMonth.getEndNode().getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                    clear(toDay.getEndNode());
+                }
+            }
+        }
+    }
+
+    private void clear(Node timeNode) {
+        List<String> keys = new ArrayList<>();
+        for(String key : timeNode.getPropertyKeys()) {
+            if(key.startsWith(prefix)) keys.add(key);
+        }
+        keys.forEach(timeNode::removeProperty);
+    }
+
+    // QUERIES - start and end should already be normalised to whole days
+    public ContinuumAggregate summarize(Node timeTreeRoot, long start, long end) {
+        ContinuumAggregate aggregate = new ContinuumAggregate(new DateTime(start, UTC), new DateTime(end, UTC));
+        collect(new Bucket(timeTreeRoot, null, null), start, end, aggregate);
+        return aggregate;
+    }
+
+    // one aggregate per year, month or day overlapping [start, end], in chronological order; empty buckets are left out
+    public List<ContinuumAggregate> summarize(Node timeTreeRoot, long start, long end, Resolution resolution) {
+        if(resolution != Resolution.YEAR && resolution != Resolution.MONTH && resolution != Resolution.DAY) throw new Error("aggregates are kept per year, month and day only!");
+        List<ContinuumAggregate> aggregates = new ArrayList<>();
+        collectBuckets(new Bucket(timeTreeRoot, null, null), start, end, resolution, aggregates);
+        return aggregates;
+    }
+
+    private void collectBuckets(Bucket bucket, long start, long end, Resolution resolution, List<ContinuumAggregate> aggregates) {
+        for(Bucket child : bucket.children()) {
+            if(!child.overlaps(start, end)) continue;
+            if(child.resolution != resolution) {
+                collectBuckets(child, start, end, resolution, aggregates);
+                continue;
+            }
+            ContinuumAggregate aggregate = new ContinuumAggregate(new DateTime(Math.max(start, child.start()), UTC), new DateTime(Math.min(end, child.end()), UTC));
+            collect(child, start, end, aggregate);
+            if(aggregate.getCount() > 0) aggregates.add(aggregate);
+        }
+    }
+
+    // whole buckets are read as they are, partially covered ones are split into their children
+    private void collect(Bucket bucket, long start, long end, ContinuumAggregate into) {
+        if(bucket.resolution == Resolution.DAY || (bucket.resolution != null && bucket.start() >= start && bucket.end() <= end)) {
+            read(bucket.node, into);
+            return;
+        }
+        for(Bucket child : bucket.children()) {
+            if(child.overlaps(start, end)) collect(child, start, end, into);
+        }
+    }
+
+    private void read(Node timeNode, ContinuumAggregate into) {
+        long count = (Long) timeNode.getProperty(prefix + COUNT, 0L);
+        if(count == 0) return;
+        into.add(count, (Double) timeNode.getProperty(prefix + SUM, 0.0), (Double) timeNode.getProperty(prefix + MIN, null), (Double) timeNode.getProperty(prefix + MAX, null));
+        String[] values = (String[]) timeNode.getProperty(prefix + VALUES, new String[0]);
+        long[] valueCounts = (long[]) timeNode.getProperty(prefix + VALUE_COUNTS, new long[0]);
+        double[] valueSums = (double[]) timeNode.getProperty(prefix + VALUE_SUMS, new double[0]);
+        for(int i = 0; i < values.length; i++) into.addForValue(values[i], valueCounts[i], valueSums[i]);
+    }
+
+    private String fieldValueOf(Node node) {
+        if(field == null) return null;
+        Object fieldValue = node.getProperty(field, null);
+        return fieldValue == null ? null : String.valueOf(fieldValue);
+    }
+
+    private Double valueOf(Node node) {
+        if(valueProperty == null) return null;
+        Object value = node.getProperty(valueProperty, null);
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+    // the aggregates of one time node while they are recounted
+    private static class Totals {
+
+        long count;
+        double sum;
+        Double min;
+        Double max;
+        final Map<String, long[]> counts = new TreeMap<>();
+        final Map<String, double[]> sums = new TreeMap<>();
+
+        void add(String fieldValue, Double value) {
+            count++;
+            add(fieldValue, 1, value == null ? 0.0 : value);
+            if(value == null) return;
+            sum += value;
+            extremes(value, value);
+        }
+
+        void add(Node child, String prefix) {
+            long childCount = (Long) child.getProperty(prefix + COUNT, 0L);
+            if(childCount == 0) return;
+            count += childCount;
+            sum += (Double) child.getProperty(prefix + SUM, 0.0);
+            Double childMin = (Double) child.getProperty(prefix + MIN, null);
+            if(childMin != null) extremes(childMin, (Double) child.getProperty(prefix + MAX));
+            String[] values = (String[]) child.getProperty(prefix + VALUES, new String[0]);
+            long[] valueCounts = (long[]) child.getProperty(prefix + VALUE_COUNTS, new long[0]);
+            double[] valueSums = (double[]) child.getProperty(prefix + VALUE_SUMS, new double[0]);
+            for(int i = 0; i < values.length; i++) add(values[i], valueCounts[i], valueSums[i]);
+        }
+
+        private void add(String fieldValue, long valueCount, double valueSum) {
+            if(fieldValue == null) return;
+            counts.computeIfAbsent(fieldValue, v -> new long[1])[0] += valueCount;
+            sums.computeIfAbsent(fieldValue, v -> new double[1])[0] += valueSum;
+        }
+
+        private void extremes(double low, double high) {
+            min = min == null ? low : Math.min(min, low);
+            max = max == null ? high : Math.max(max, high);
+        }
+
+        void write(Node timeNode, String prefix, boolean byValue) {
+            update(timeNode, prefix + COUNT, count);
+            update(timeNode, prefix + SUM, sum);
+            update(timeNode, prefix + MIN, min);
+            update(timeNode, prefix + MAX, max);
+            if(!byValue) return;
+            update(timeNode, prefix + VALUES, counts.keySet().toArray(new String[counts.size()]));
+            update(timeNode, prefix + VALUE_COUNTS, counts.values().stream().mapToLong(c -> c[0]).toArray());
+            update(timeNode, prefix + VALUE_SUMS, sums.values().stream().mapToDouble(s -> s[0]).toArray());
+        }
+
+        private static void update(Node timeNode, String key, Object value) {
+            Object current = timeNode.getProperty(key, null);
+            if(value == null) {
+                if(current != null) timeNode.removeProperty(key);
+            } else if(!Objects.deepEquals(current, value)) {
+                timeNode.setProperty(key, value);
+            }
+        }
+    }
+
+    // a time node with the first millisecond it covers, the root has neither resolution nor start
+    private static class Bucket {
+
+        final Node node;
+        final Resolution resolution;
+        final DateTime start;
+
+        Bucket(Node node, Resolution resolution, DateTime start) {
+            this.node = node;
+            this.resolution = resolution;
+            this.start = start;
+        }
+
+        long start() {
+            return start.getMillis();
+        }
+
+        long end() {
+            switch (resolution) {
+                case YEAR:  return start.plusYears(1).getMillis() - 1;
+                case MONTH: return start.plusMonths(1).getMillis() - 1;
+                default:    return start.plusDays(1).getMillis() - 1;
+            }
+        }
+
+        boolean overlaps(long from, long to) {
+            return start() <= to && end() >= from;
+        }
+
+        List<Bucket> children() {
+            List<Bucket> children = new ArrayList<>();
+            for(Relationship toChild : node.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                Node child = toChild.getEndNode();
+                int value = (Integer) child.getProperty(VALUE);
+                if(resolution == null) children.add(new Bucket(child, Resolution.YEAR, new DateTime(value, 1, 1, 0, 0, UTC)));
+                else if(resolution == Resolution.YEAR) children.add(new Bucket(child, Resolution.MONTH, start.withMonthOfYear(value)));
+                else children.add(new Bucket(child, Resolution.DAY, start.withDayOfMonth(value)));
+            }
+            children.sort(Comparator.comparingLong(Bucket::start));
+            return children;
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A cell of the {@link ContinuumClusterPyramid}: how many nodes it holds and where their centroid lies.
+ */
+public class ContinuumCluster {
+
+    private final int level;
+    private final Envelope cell;
+    private final long count;
+    private final double lat;
+    private final double lon;
+
+    public ContinuumCluster(int level, Envelope cell, long count, double lat, double lon) {
+        this.level = level;
+        this.cell = cell;
+        this.count = count;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Envelope getCell() {
+        return cell;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // centroid of the nodes in the cell
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuumCluster{level=" + level + ", cell=" + cell + ", count=" + count + ", lat=" + lat + ", lon=" + lon + "}";
+    }
+
+}
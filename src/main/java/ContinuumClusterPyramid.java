@@ -0,0 +1,286 @@
+import com.vividsolutions.jts.geom.Envelope;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Quadtree pyramid of node counts and centroids, the same cells a geohash of 2 * level bits would give.
+ * Level 0 is the whole world, every next level splits each cell in four, down to maxLevel.
+ * A node lives in exactly one cell per level, so a zoomed out query reads a few hundred cells instead of the nodes.
+ * With perYear, every cell also keeps its counts by the year lives start and by the year they end,
+ * the nodes alive during [y1, y2] are then the ones starting by y2 minus the ones ended before y1 - exact at whole years.
+ * The counts by year are read through running totals, so a time filtered cell costs two binary searches;
+ * the totals of a cell are rebuilt by the first query after a change to it.
+ * Memory: every node keeps its position and span to be taken out again, about 100 bytes a node on top of the cells.
+ * Safe for concurrent readers, writers are serialized.
+ */
+public class ContinuumClusterPyramid {
+
+    private static final DateTimeZone UTC = DateTimeZone.UTC;
+
+    private final int maxLevel;
+    private final boolean perYear;
+    private final List<Map<Long, Cell>> levels = new ArrayList<>();
+    // {lat, lon, start, end} of every node, needed to take it out again
+    private final Map<Long, double[]> nodes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ContinuumClusterPyramid(int maxLevel, boolean perYear) {
+        if(maxLevel < 0 || maxLevel > 26) throw new Error("maxLevel must be between 0 and 26!");
+        this.maxLevel = maxLevel;
+        this.perYear = perYear;
+        for(int level=0;level<=maxLevel;level++) levels.add(new HashMap<>());
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    public boolean isPerYear() {
+        return perYear;
+    }
+
+    // adding an id that is already in the pyramid moves it
+    public void add(long id, double lat, double lon, long start, long end) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            double[] node = {lat, lon, start, end};
+            nodes.put(id, node);
+            apply(node, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // adds every node of other to this pyramid, used to combine pyramids built in parallel
+    public ContinuumClusterPyramid merge(ContinuumClusterPyramid other) {
+        if(other.maxLevel != maxLevel || other.perYear != perYear) throw new Error("can only merge pyramids with the same shape!");
+        lock.writeLock().lock();
+        other.lock.readLock().lock();
+        try {
+            other.nodes.forEach((id, node) -> {
+                removeInternal(id);
+                nodes.put(id, node);
+            });
+            for(int level=0;level<=maxLevel;level++) {
+                Map<Long, Cell> cells = levels.get(level);
+                other.levels.get(level).forEach((key, cell) -> cells.computeIfAbsent(key, t -> new Cell()).merge(cell));
+            }
+            return this;
+        } finally {
+            other.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeInternal(long id) {
+        double[] node = nodes.remove(id);
+        if(node == null) return false;
+        apply(node, -1);
+        return true;
+    }
+
+    private void apply(double[] node, int sign) {
+        int startYear = perYear ? year((long) node[2]) : 0;
+        int endYear = perYear ? year((long) node[3]) : 0;
+        for(int level=0;level<=maxLevel;level++) {
+            Map<Long, Cell> cells = levels.get(level);
+            long key = key(level, column(level, node[1]), row(level, node[0]));
+            Cell cell = cells.computeIfAbsent(key, t -> new Cell());
+            cell.add(node[0], node[1], sign);
+            if(perYear) {
+                cell.starts.add(startYear, sign, sign * node[0], sign * node[1]);
+                cell.ends.add(endYear, sign, sign * node[0], sign * node[1]);
+            }
+            if(cell.count == 0) cells.remove(key);
+        }
+    }
+
+    // QUERIES
+    // non empty cells of the level intersecting the envelope
+    public List<ContinuumCluster> clusters(Envelope envelope, int level) {
+        return clusters(envelope, level, null, null);
+    }
+
+    // only counts the nodes alive at some point of the years of [startTime, endTime], needs perYear
+    public List<ContinuumCluster> clusters(Envelope envelope, int level, Long startTime, Long endTime) {
+        if(level < 0 || level > maxLevel) throw new Error("level must be between 0 and " + maxLevel + "!");
+        if(startTime != null && !perYear) throw new Error("time filters need a pyramid built per year!");
+        lock.readLock().lock();
+        try {
+            Map<Long, Cell> cells = levels.get(level);
+            int minColumn = column(level, envelope.getMinX()), maxColumn = column(level, envelope.getMaxX());
+            int minRow = row(level, envelope.getMinY()), maxRow = row(level, envelope.getMaxY());
+            List<ContinuumCluster> clusters = new ArrayList<>();
+            // walk whichever is smaller, the cells covered by the envelope or the non empty cells of the level
+            if((long) (maxColumn - minColumn + 1) * (maxRow - minRow + 1) <= cells.size()) {
+                for(int column=minColumn;column<=maxColumn;column++) {
+                    for(int row=minRow;row<=maxRow;row++) {
+                        Cell cell = cells.get(key(level, column, row));
+                        if(cell != null) addCluster(clusters, level, column, row, cell, startTime, endTime);
+                    }
+                }
+            } else {
+                int side = 1 << level;
+                cells.forEach((key, cell) -> {
+                    int column = (int) (key / side), row = (int) (key % side);
+                    if(column >= minColumn && column <= maxColumn && row >= minRow && row <= maxRow) addCluster(clusters, level, column, row, cell, startTime, endTime);
+                });
+            }
+            return clusters;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the deepest level at which the envelope covers at most maxCells cells
+    public int levelFor(Envelope envelope, int maxCells) {
+        int level = 0;
+        while(level < maxLevel) {
+            int next = level + 1;
+            long columns = column(next, envelope.getMaxX()) - column(next, envelope.getMinX()) + 1;
+            long rows = row(next, envelope.getMaxY()) - row(next, envelope.getMinY()) + 1;
+            if(columns * rows > maxCells) break;
+            level = next;
+        }
+        return level;
+    }
+
+    private void addCluster(List<ContinuumCluster> clusters, int level, int column, int row, Cell cell, Long startTime, Long endTime) {
+        double count = cell.count, sumLat = cell.sumLat, sumLon = cell.sumLon;
+        if(startTime != null) {
+            double[] started = cell.starts.upTo(year(endTime), true);
+            double[] ended = cell.ends.upTo(year(startTime), false);
+            count = started[0] - ended[0];
+            sumLat = started[1] - ended[1];
+            sumLon = started[2] - ended[2];
+        }
+        if(count <= 0) return;
+        double width = 360.0 / (1 << level), height = 180.0 / (1 << level);
+        Envelope bounds = new Envelope(-180 + column * width, -180 + (column + 1) * width, -90 + row * height, -90 + (row + 1) * height);
+        clusters.add(new ContinuumCluster(level, bounds, Math.round(count), sumLat / count, sumLon / count));
+    }
+
+    private static int column(int level, double lon) {
+        int side = 1 << level;
+        return Math.max(0, Math.min(side - 1, (int) Math.floor((lon + 180) / 360 * side)));
+    }
+
+    private static int row(int level, double lat) {
+        int side = 1 << level;
+        return Math.max(0, Math.min(side - 1, (int) Math.floor((lat + 90) / 180 * side)));
+    }
+
+    private static long key(int level, int column, int row) {
+        return (long) column * (1 << level) + row;
+    }
+
+    private static int year(long millis) {
+        return new DateTime(millis, UTC).getYear();
+    }
+
+    private static class Cell {
+        long count;
+        double sumLat;
+        double sumLon;
+        final YearSums starts = new YearSums();
+        final YearSums ends = new YearSums();
+
+        void add(double lat, double lon, int sign) {
+            count += sign;
+            sumLat += sign * lat;
+            sumLon += sign * lon;
+        }
+
+        void merge(Cell other) {
+            count += other.count;
+            sumLat += other.sumLat;
+            sumLon += other.sumLon;
+            starts.merge(other.starts);
+            ends.merge(other.ends);
+        }
+    }
+
+    // {count, sumLat, sumLon} per year, with running totals for the queries
+    private static class YearSums {
+        final TreeMap<Integer, double[]> byYear = new TreeMap<>();
+        // null after a change, rebuilt by the next query; readers share the read lock, so two of them may both build it
+        private volatile Totals totals;
+
+        void add(int year, double count, double lat, double lon) {
+            double[] sums = byYear.computeIfAbsent(year, t -> new double[3]);
+            sums[0] += count;
+            sums[1] += lat;
+            sums[2] += lon;
+            if(sums[0] == 0) byYear.remove(year);
+            totals = null;
+        }
+
+        void merge(YearSums other) {
+            other.byYear.forEach((year, sums) -> add(year, sums[0], sums[1], sums[2]));
+        }
+
+        // {count, sumLat, sumLon} of the years up to year
+        double[] upTo(int year, boolean inclusive) {
+            Totals current = totals;
+            if(current == null) {
+                current = new Totals(byYear);
+                totals = current;
+            }
+            return current.upTo(year, inclusive);
+        }
+    }
+
+    private static class Totals {
+        final int[] years;
+        // sums[i] covers years[0] to years[i]
+        final double[][] sums;
+
+        Totals(TreeMap<Integer, double[]> byYear) {
+            years = new int[byYear.size()];
+            sums = new double[byYear.size()][];
+            double[] running = new double[3];
+            int i = 0;
+            for(Map.Entry<Integer, double[]> entry : byYear.entrySet()) {
+                for(int j=0;j<3;j++) running[j] += entry.getValue()[j];
+                years[i] = entry.getKey();
+                sums[i++] = running.clone();
+            }
+        }
+
+        double[] upTo(int year, boolean inclusive) {
+            int found = Arrays.binarySearch(years, year);
+            // the last year counted
+            int last = found >= 0 ? (inclusive ? found : found - 1) : -found - 2;
+            return last < 0 ? new double[3] : sums[last];
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+import com.vividsolutions.jts.geom.Envelope;
+import org.neo4j.collection.primitive.Primitive;
+import org.neo4j.collection.primitive.PrimitiveLongIntMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Off-heap columnar copy of the Continuum nodes: node id, lat, lon, start and end millis, one direct buffer per column.
+ * Full scans and filters run over primitive columns without touching the graph store or boxing values.
+ * Rows are dense: removing a row moves the last row into its place.
+ * Snapshots are plain column dumps and are loaded back through a memory mapped file.
+ * Safe for concurrent readers, writers are serialized.
+ */
+public class ContinuumColumnStore {
+
+    public interface RowVisitor {
+        void visit(long nodeId, double lat, double lon, long startTime, long endTime);
+    }
+
+    private static final int SNAPSHOT_MAGIC = 0x434f4e54;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+    // a column is a single ByteBuffer with int offsets, so row * 8 has to fit in an int
+    public static final int MAX_ROWS = Integer.MAX_VALUE / 8;
+
+    private ByteBuffer ids;
+    private ByteBuffer lats;
+    private ByteBuffer lons;
+    private ByteBuffer starts;
+    private ByteBuffer ends;
+    private int capacity;
+    private int rows;
+    private final PrimitiveLongIntMap rowOf;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ContinuumColumnStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ContinuumColumnStore(int initialCapacity) {
+        if(initialCapacity > MAX_ROWS) throw new Error("a column store holds at most " + MAX_ROWS + " rows!");
+        capacity = Math.max(1, initialCapacity);
+        ids = allocate(capacity);
+        lats = allocate(capacity);
+        lons = allocate(capacity);
+        starts = allocate(capacity);
+        ends = allocate(capacity);
+        rowOf = Primitive.longIntMap(capacity);
+    }
+
+    // inserts or replaces the row of the node
+    public void put(long nodeId, double lat, double lon, long startTime, long endTime) {
+        lock.writeLock().lock();
+        try {
+            int row;
+            if(rowOf.containsKey(nodeId)) row = rowOf.get(nodeId);
+            else {
+                if(rows == capacity) grow();
+                row = rows++;
+                rowOf.put(nodeId, row);
+            }
+            int offset = row * 8;
+            ids.putLong(offset, nodeId);
+            lats.putDouble(offset, lat);
+            lons.putDouble(offset, lon);
+            starts.putLong(offset, startTime);
+            ends.putLong(offset, endTime);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long nodeId) {
+        lock.writeLock().lock();
+        try {
+            if(!rowOf.containsKey(nodeId)) return false;
+            int row = rowOf.remove(nodeId);
+            int last = --rows;
+            if(row != last) {
+                int from = last * 8;
+                int to = row * 8;
+                long movedId = ids.getLong(from);
+                ids.putLong(to, movedId);
+                lats.putDouble(to, lats.getDouble(from));
+                lons.putDouble(to, lons.getDouble(from));
+                starts.putLong(to, starts.getLong(from));
+                ends.putLong(to, ends.getLong(from));
+                rowOf.put(movedId, row);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long nodeId) {
+        lock.readLock().lock();
+        try {
+            return rowOf.containsKey(nodeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEach(RowVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for(int offset = 0; offset < rows * 8; offset += 8) {
+                visitor.visit(ids.getLong(offset), lats.getDouble(offset), lons.getDouble(offset), starts.getLong(offset), ends.getLong(offset));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // rows in the envelope (x = lon, y = lat) whose span overlaps [startTime, endTime]
+    public void forEach(Envelope envelope, long startTime, long endTime, RowVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for(int offset = 0; offset < rows * 8; offset += 8) {
+                if(starts.getLong(offset) > endTime || ends.getLong(offset) < startTime) continue;
+                double lat = lats.getDouble(offset);
+                double lon = lons.getDouble(offset);
+                if(!envelope.contains(lon, lat)) continue;
+                visitor.visit(ids.getLong(offset), lat, lon, starts.getLong(offset), ends.getLong(offset));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] filter(Envelope envelope, long startTime, long endTime) {
+        long[][] result = {new long[16]};
+        int[] found = {0};
+        forEach(envelope, startTime, endTime, (id, lat, lon, start, end) -> {
+            if(found[0] == result[0].length) {
+                long[] grown = new long[found[0] * 2];
+                System.arraycopy(result[0], 0, grown, 0, found[0]);
+                result[0] = grown;
+            }
+            result[0][found[0]++] = id;
+        });
+        long[] ids = new long[found[0]];
+        System.arraycopy(result[0], 0, ids, 0, found[0]);
+        return ids;
+    }
+
+    public long count(Envelope envelope, long startTime, long endTime) {
+        long[] count = {0};
+        forEach(envelope, startTime, endTime, (id, lat, lon, start, end) -> count[0]++);
+        return count[0];
+    }
+
+    // header: magic, version, tag, rows; then every column in turn
+    // the tag is stored for the caller, Continuum uses it to tell whether the snapshot is still current
+    public void writeSnapshot(File file, long tag) throws IOException {
+        lock.readLock().lock();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            long size = 20 + (long) rows * 8 * 5;
+            raf.setLength(size);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.nativeOrder());
+            out.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(tag).putInt(rows);
+            for(ByteBuffer column : new ByteBuffer[]{ids, lats, lons, starts, ends}) {
+                ByteBuffer slice = column.duplicate();
+                slice.position(0).limit(rows * 8);
+                out.put(slice);
+            }
+            out.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static long readSnapshotTag(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, 16);
+            in.order(ByteOrder.nativeOrder());
+            checkHeader(in, file);
+            return in.getLong();
+        }
+    }
+
+    public static ContinuumColumnStore loadSnapshot(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.order(ByteOrder.nativeOrder());
+            checkHeader(in, file);
+            in.getLong();
+            int rows = in.getInt();
+
+            ContinuumColumnStore store = new ContinuumColumnStore(rows);
+            for(ByteBuffer column : new ByteBuffer[]{store.ids, store.lats, store.lons, store.starts, store.ends}) {
+                ByteBuffer slice = in.duplicate();
+                slice.limit(in.position() + rows * 8);
+                column.put(slice);
+                column.clear();
+                in.position(in.position() + rows * 8);
+            }
+            store.rows = rows;
+            for(int row = 0; row < rows; row++) store.rowOf.put(store.ids.getLong(row * 8), row);
+            return store;
+        }
+    }
+
+    private static void checkHeader(ByteBuffer in, File file) {
+        if(in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) throw new Error("Not a Continuum column snapshot: " + file);
+    }
+
+    private void grow() {
+        if(capacity == MAX_ROWS) throw new Error("a column store holds at most " + MAX_ROWS + " rows!");
+        capacity = (int) Math.min((long) capacity * 2, MAX_ROWS);
+        ids = copy(ids, capacity);
+        lats = copy(lats, capacity);
+        lons = copy(lons, capacity);
+        starts = copy(starts, capacity);
+        ends = copy(ends, capacity);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer copy(ByteBuffer column, int capacity) {
+        ByteBuffer grown = allocate(capacity);
+        ByteBuffer source = column.duplicate();
+        source.clear();
+        grown.put(source);
+        grown.clear();
+        return grown;
+    }
+
+}
@@ -0,0 +1,107 @@
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps a {@link ContinuumColumnStore} in sync with the graph.
+ * Before commit it only notes which nodes had their Continuum label, lat/lon, time properties or time links changed;
+ * after commit it re-reads just those nodes, so the store never sees data from a transaction that rolled back.
+ */
+public class ContinuumColumnStoreUpdater implements TransactionEventHandler<ContinuumColumnStoreUpdater.Changes> {
+
+    private final GraphDatabaseService db;
+    private final ContinuumColumnStore store;
+    // Continuum, or the label of a partition
+    private final Label label;
+
+    public ContinuumColumnStoreUpdater(GraphDatabaseService db, ContinuumColumnStore store) {
+        this(db, store, Label.label("Continuum"));
+    }
+
+    public ContinuumColumnStoreUpdater(GraphDatabaseService db, ContinuumColumnStore store, Label label) {
+        this.db = db;
+        this.store = store;
+        this.label = label;
+    }
+
+    static class Changes {
+        final Set<Long> touched = new HashSet<>();
+        final Set<Long> deleted = new HashSet<>();
+    }
+
+    @Override
+    public Changes beforeCommit(TransactionData data) throws Exception {
+        return collect(data, label);
+    }
+
+    // the nodes whose row may have changed, shared with the ContinuumIndexUpdater
+    static Changes collect(TransactionData data, Label label) {
+        Changes changes = new Changes();
+        for(Node node : data.deletedNodes()) changes.deleted.add(node.getId());
+        for(LabelEntry entry : data.assignedLabels()) {
+            if(entry.label().equals(label)) changes.touched.add(entry.node().getId());
+        }
+        for(LabelEntry entry : data.removedLabels()) {
+            if(entry.label().equals(label)) changes.touched.add(entry.node().getId());
+        }
+        for(PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            if(isRowProperty(entry.key())) changes.touched.add(entry.entity().getId());
+        }
+        for(PropertyEntry<Node> entry : data.removedNodeProperties()) {
+            if(isRowProperty(entry.key())) changes.touched.add(entry.entity().getId());
+        }
+        for(Relationship relationship : data.createdRelationships()) {
+            if(isTimeLink(relationship)) changes.touched.add(relationship.getStartNode().getId());
+        }
+        for(Relationship relationship : data.deletedRelationships()) {
+            try {
+                if(isTimeLink(relationship)) changes.touched.add(relationship.getStartNode().getId());
+            } catch (NotFoundException e) {
+                // the node went away with the relationship, it is in the deleted set
+            }
+        }
+        changes.touched.removeAll(changes.deleted);
+        return changes;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, Changes changes) {
+        changes.deleted.forEach(store::remove);
+        if(changes.touched.isEmpty()) return;
+
+        try (Transaction tx = db.beginTx()) {
+            for(long id : changes.touched) refresh(db.getNodeById(id));
+            tx.success();
+        }
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, Changes changes) {
+    }
+
+    // rows exist only for nodes that have the label, a location and a time span
+    public void refresh(Node node) {
+        long[] span = node.hasLabel(label) && node.hasProperty("lat") && node.hasProperty("lon") ? TimeTreeSpans.spanOf(node) : null;
+        if(span == null) store.remove(node.getId());
+        else store.put(node.getId(), (Double) node.getProperty("lat"), (Double) node.getProperty("lon"), span[0], span[1]);
+    }
+
+    private static boolean isRowProperty(String key) {
+        return key.equals("lat") || key.equals("lon") || key.equals(TimeTreeSpans.START_TIME) || key.equals(TimeTreeSpans.END_TIME);
+    }
+
+    private static boolean isTimeLink(Relationship relationship) {
+        return relationship.isType(TimeRelationshipTypes.START_DATE) || relationship.isType(TimeRelationshipTypes.END_DATE) || relationship.isType(TimeRelationshipTypes.EVENT_DATE);
+    }
+
+}
@@ -0,0 +1,237 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads CSV or TSV files through memory mapped windows of the file, without copying them onto the heap.
+ * A record is split into field offsets inside the current window; numbers and dates are parsed straight from those bytes
+ * and only fields read as strings are decoded. Fields may be quoted with ", a quote inside a quoted field is written "".
+ * A window is remapped at the start of the first record it doesn't hold completely, so records never straddle windows.
+ */
+public class ContinuumCsvReader implements AutoCloseable {
+
+    private static final int DEFAULT_WINDOW = 1 << 30;
+    private static final int MAX_FIELDS = 256;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final byte delimiter;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    // [start, end) of every field of the current record, relative to the window
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private final boolean[] escaped = new boolean[MAX_FIELDS];
+    private int fields;
+    private final byte[] scratch = new byte[64];
+
+    public ContinuumCsvReader(File csv, char delimiter) throws IOException {
+        this(csv, delimiter, DEFAULT_WINDOW);
+    }
+
+    ContinuumCsvReader(File csv, char delimiter, int windowSize) throws IOException {
+        if(delimiter > 127) throw new Error("the delimiter must be a single byte character!");
+        this.file = new RandomAccessFile(csv, "r");
+        this.channel = file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.delimiter = (byte) delimiter;
+        map(0);
+        // skip a UTF-8 byte order mark
+        if(size >= 3 && (window.get(0) & 0xff) == 0xef && (window.get(1) & 0xff) == 0xbb && (window.get(2) & 0xff) == 0xbf) position = 3;
+    }
+
+    // moves to the next non empty record, false at the end of the file
+    public boolean next() throws IOException {
+        while(position < size) {
+            int end = split((int) (position - windowStart));
+            if(end < 0) {
+                if(windowStart + window.limit() >= size) throw new Error("unterminated quote in the record at byte " + position + "!");
+                if(position == windowStart) throw new Error("the record at byte " + position + " is longer than the window of " + windowSize + " bytes!");
+                map(position);
+                continue;
+            }
+            position = windowStart + end;
+            if(fields > 1 || ends[0] > starts[0]) return true;
+        }
+        return false;
+    }
+
+    public int getFieldCount() {
+        return fields;
+    }
+
+    // bytes consumed so far, for progress reporting
+    public long getPosition() {
+        return position;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public boolean isEmpty(int field) {
+        return field >= fields || ends[field] == starts[field];
+    }
+
+    public String getString(int field) {
+        if(field >= fields) return "";
+        int length = ends[field] - starts[field];
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        for(int i=0;i<length;i++) bytes[i] = window.get(starts[field] + i);
+        String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        return escaped[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    public long getLong(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && window.get(i) == '-';
+        if(negative || (i < end && window.get(i) == '+')) i++;
+        if(i == end) throw new Error("not a number: '" + getString(field) + "'");
+        long value = 0;
+        for(;i<end;i++) {
+            int digit = window.get(i) - '0';
+            if(digit < 0 || digit > 9) throw new Error("not a number: '" + getString(field) + "'");
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // plain decimals with up to 15 digits are parsed from the bytes, both parts of the division are exact so the result is
+    // rounded the same way Double.parseDouble rounds; anything else (exponents, NaN, more digits) goes through Double.parseDouble
+    public double getDouble(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && window.get(i) == '-';
+        if(negative || (i < end && window.get(i) == '+')) i++;
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean digits = false;
+        for(;i<end;i++) {
+            byte b = window.get(i);
+            if(b == '.' && !fraction) fraction = true;
+            else if(b >= '0' && b <= '9' && mantissa < 100000000000000L) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits = true;
+                if(fraction) scale++;
+            }
+            else return parseDouble(field);
+        }
+        if(!digits) throw new Error("not a number: '" + getString(field) + "'");
+        if(scale >= POWERS_OF_TEN.length) return parseDouble(field);
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    // [-]yyyy[-MM[-dd]] followed by anything, e.g. a time; {year, month, day} with missing parts as 1
+    public int[] getDate(int field, int[] date) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && window.get(i) == '-';
+        if(negative) i++;
+        int part = 0;
+        date[0] = 0;
+        date[1] = 1;
+        date[2] = 1;
+        int value = 0;
+        int digits = 0;
+        for(;i<=end;i++) {
+            byte b = i < end ? window.get(i) : (byte) ' ';
+            if(b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits++;
+                continue;
+            }
+            if(digits == 0) break;
+            date[part] = part == 0 && negative ? -value : value;
+            part++;
+            value = 0;
+            digits = 0;
+            if(b != '-' || part == 3) break;
+        }
+        if(part == 0) throw new Error("not a date: '" + getString(field) + "'");
+        return date;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        file.close();
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    // splits the record starting at from, returns the offset after its line end or -1 if the window ends first
+    private int split(int from) {
+        int limit = window.limit();
+        int i = from;
+        fields = 0;
+        while(true) {
+            if(fields == MAX_FIELDS) throw new Error("more than " + MAX_FIELDS + " fields in the record at byte " + (windowStart + from) + "!");
+            boolean quoted = i < limit && window.get(i) == '"';
+            boolean hasEscapes = false;
+            int start = quoted ? i + 1 : i;
+            int end;
+            if(quoted) {
+                i++;
+                while(true) {
+                    if(i >= limit) return -1;
+                    if(window.get(i) == '"') {
+                        if(i + 1 < limit && window.get(i + 1) == '"') {
+                            hasEscapes = true;
+                            i += 2;
+                            continue;
+                        }
+                        if(i + 1 >= limit && windowStart + limit < size) return -1;
+                        break;
+                    }
+                    i++;
+                }
+                end = i++;
+            }
+            else {
+                while(i < limit && window.get(i) != delimiter && window.get(i) != '\n') i++;
+                end = i;
+                if(end > start && window.get(end - 1) == '\r') end--;
+            }
+            starts[fields] = start;
+            ends[fields] = end;
+            escaped[fields] = hasEscapes;
+            fields++;
+
+            if(i >= limit) return windowStart + limit < size ? -1 : limit;
+            byte b = window.get(i);
+            if(b == delimiter) {
+                i++;
+                continue;
+            }
+            // after a quoted field skip to the line end
+            while(i < limit && window.get(i) != '\n') i++;
+            if(i >= limit) return windowStart + limit < size ? -1 : limit;
+            return i + 1;
+        }
+    }
+
+    private double parseDouble(int field) {
+        try {
+            return Double.parseDouble(getString(field).trim());
+        } catch (NumberFormatException e) {
+            throw new Error("not a number: '" + getString(field) + "'");
+        }
+    }
+
+}
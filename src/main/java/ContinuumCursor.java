@@ -0,0 +1,34 @@
+/**
+ * Position in a chronological scan of Continuum nodes: the start of the last returned node and its id.
+ * Continuum hands one out with every full page, pass it back to get the page after it.
+ */
+public class ContinuumCursor {
+
+    private final long startTime;
+    private final long nodeId;
+
+    public ContinuumCursor(long startTime, long nodeId) {
+        this.startTime = startTime;
+        this.nodeId = nodeId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    // opaque form, safe to hand to a client
+    public String toToken() {
+        return Long.toString(startTime, 36) + "." + Long.toString(nodeId, 36);
+    }
+
+    public static ContinuumCursor fromToken(String token) {
+        String[] parts = token.split("\\.");
+        if(parts.length != 2) throw new Error("Invalid cursor token: " + token);
+        return new ContinuumCursor(Long.parseLong(parts[0], 36), Long.parseLong(parts[1], 36));
+    }
+
+}
@@ -0,0 +1,155 @@
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative longs in the style of HdrHistogram.
+ * Values below 128 get a bucket each, above that every power of two is split into 64 linear sub-buckets,
+ * so any value is reported within 1/64 (about 1.6%) of what was recorded, over the whole long range,
+ * in a fixed array of 3712 counters.
+ */
+public class ContinuumHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    public void record(long value) {
+        if(value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        if(value < min.get()) min.accumulateAndGet(value, Math::min);
+        if(value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public void reset() {
+        for(int i=0;i<BUCKETS;i++) counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(Long.MIN_VALUE);
+    }
+
+    // values are divided by scale, e.g. 1000 to report nanoseconds as microseconds
+    // taken while other threads record, so the figures are only consistent with each other up to those records
+    public Snapshot snapshot(double scale) {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for(int i=0;i<BUCKETS;i++) total += copy[i] = counts.get(i);
+        if(total == 0) return new Snapshot(0, 0, 0, 0, 0, 0, 0, 0);
+
+        long lowest = min.get();
+        long highest = max.get();
+        return new Snapshot(total,
+                sum.sum() / (double) total / scale,
+                lowest / scale,
+                highest / scale,
+                percentile(copy, total, 0.5, lowest, highest) / scale,
+                percentile(copy, total, 0.9, lowest, highest) / scale,
+                percentile(copy, total, 0.99, lowest, highest) / scale,
+                percentile(copy, total, 0.999, lowest, highest) / scale);
+    }
+
+    // the highest value equivalent to the bucket holding the p-th value, kept inside [min, max]
+    private static long percentile(long[] counts, long total, double p, long lowest, long highest) {
+        long target = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for(int i=0;i<counts.length;i++) {
+            seen += counts[i];
+            if(seen >= target) return Math.max(lowest, Math.min(highest, highestEquivalent(i)));
+        }
+        return highest;
+    }
+
+    static int indexOf(long value) {
+        if(value < LINEAR) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long highestEquivalent(int index) {
+        if(index < LINEAR) return index;
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (subBucket + 1) << shift;
+        return next < 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    /**
+     * Point in time view of a histogram, exposed over JMX as composite data.
+     */
+    public static class Snapshot {
+
+        private final long count;
+        private final double mean;
+        private final double min;
+        private final double max;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+
+        @ConstructorProperties({"count", "mean", "min", "max", "p50", "p90", "p99", "p999"})
+        public Snapshot(long count, double mean, double min, double max, double p50, double p90, double p99, double p999) {
+            this.count = count;
+            this.mean = mean;
+            this.min = min;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP90() {
+            return p90;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + mean + ", min=" + min + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max;
+        }
+    }
+
+}
@@ -0,0 +1,399 @@
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import org.joda.time.Chronology;
+import org.joda.time.chrono.ISOChronology;
+import org.neo4j.gis.spatial.EditableLayerImpl;
+import org.neo4j.gis.spatial.encoders.SimplePointEncoder;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline import of large CSV/TSV files into a new store through Neo4j's BatchInserter, without transactions.
+ * Every record gets what Continuum.addContinuumCapabilitiesToNode would write: the Continuum label, lat/lon,
+ * startTime/endTime, the bbox of the point encoder and the links to its TimeTree days.
+ * The TimeTree and the Continuum layer are built directly: days, months and years are created as they are first seen
+ * and chained with NEXT/FIRST/LAST once all are known, and the R-tree is packed bottom up with full nodes from the
+ * records in Hilbert order instead of growing by single inserts and splits.
+ * The result is a regular store, open it and query it with Continuum.
+ * Keeps node id, lat and lon of every record in memory for the packing, about 32 bytes per record.
+ */
+public class ContinuumImporter {
+
+    public enum TimeFormat {
+        // [-]yyyy[-MM[-dd]], anything after the day is ignored
+        ISO_DATE,
+        EPOCH_MILLIS
+    }
+
+    // node capacity of the neo4j-spatial R-tree
+    public static final int RTREE_NODE_CAPACITY = 100;
+    private static final Chronology UTC = ISOChronology.getInstanceUTC();
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+    private static final int MAX_REPORTED_REJECTS = 10;
+    private static final Map<String, Object> NO_PROPERTIES = Collections.emptyMap();
+
+    private final File storeDirectory;
+    private final Map<String, String> config = new HashMap<>();
+    private char delimiter = ',';
+    private String latColumn = "lat";
+    private String lonColumn = "lon";
+    private String startColumn = "start";
+    private String endColumn = "end";
+    private TimeFormat timeFormat = TimeFormat.ISO_DATE;
+    private Label[] labels = {Label.label("Continuum")};
+    private PrintStream progress = System.out;
+    private long rejected;
+
+    public ContinuumImporter(File storeDirectory) {
+        this.storeDirectory = storeDirectory;
+    }
+
+    public ContinuumImporter withDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    // the end column may be missing from the file, records without an end are single events
+    public ContinuumImporter withColumns(String lat, String lon, String start, String end) {
+        this.latColumn = lat;
+        this.lonColumn = lon;
+        this.startColumn = start;
+        this.endColumn = end;
+        return this;
+    }
+
+    public ContinuumImporter withTimeFormat(TimeFormat timeFormat) {
+        this.timeFormat = timeFormat;
+        return this;
+    }
+
+    // labels besides Continuum
+    public ContinuumImporter withLabels(String... names) {
+        labels = new Label[names.length + 1];
+        labels[0] = Label.label("Continuum");
+        for(int i=0;i<names.length;i++) labels[i + 1] = Label.label(names[i]);
+        return this;
+    }
+
+    // Neo4j settings for the inserter, e.g. dbms.pagecache.memory
+    public ContinuumImporter withConfig(String key, String value) {
+        config.put(key, value);
+        return this;
+    }
+
+    // null for a quiet import
+    public ContinuumImporter withProgress(PrintStream progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    // records skipped by the last import, because of a missing or invalid position or time span
+    public long getRejected() {
+        return rejected;
+    }
+
+    // the first line names the columns, all columns besides position and time become string properties
+    // returns the number of records imported
+    public long importCsv(File csv) throws IOException {
+        if(new File(storeDirectory, "neostore").exists()) throw new Error(storeDirectory + " already holds a store, the importer only creates new ones!");
+
+        rejected = 0;
+        long started = System.currentTimeMillis();
+        BatchInserter inserter = BatchInserters.inserter(storeDirectory, config);
+        try (ContinuumCsvReader reader = new ContinuumCsvReader(csv, delimiter)) {
+            if(!reader.next()) return 0;
+            String[] header = new String[reader.getFieldCount()];
+            for(int i=0;i<header.length;i++) header[i] = reader.getString(i).trim();
+            int lat = column(header, latColumn, true);
+            int lon = column(header, lonColumn, true);
+            int start = column(header, startColumn, true);
+            int end = column(header, endColumn, false);
+            Set<Integer> timeAndSpace = new HashSet<>(Arrays.asList(lat, lon, start, end));
+
+            TimeTreeBuilder timeTree = new TimeTreeBuilder(inserter);
+            Points points = new Points();
+            int[] date = new int[3];
+            long lastReport = started;
+            while(reader.next()) {
+                double latValue;
+                double lonValue;
+                long startTime;
+                long endTime;
+                try {
+                    latValue = reader.getDouble(lat);
+                    lonValue = reader.getDouble(lon);
+                    startTime = time(reader, start, date);
+                    endTime = end < 0 || reader.isEmpty(end) ? startTime : time(reader, end, date);
+                    if(!(latValue >= -90 && latValue <= 90 && lonValue >= -180 && lonValue <= 180)) throw new Error("lat/lon out of range");
+                    if(startTime > endTime) throw new Error("startTime can't be after endTime!");
+                } catch (Error | IllegalArgumentException e) {
+                    if(e instanceof VirtualMachineError) throw e;
+                    if(rejected++ < MAX_REPORTED_REJECTS) report("rejected the record before byte " + reader.getPosition() + ": " + e.getMessage());
+                    continue;
+                }
+
+                Map<String, Object> properties = new HashMap<>();
+                for(int i=0;i<header.length;i++) {
+                    if(!timeAndSpace.contains(i) && !reader.isEmpty(i)) properties.put(header[i], reader.getString(i));
+                }
+                properties.put("lat", latValue);
+                properties.put("lon", lonValue);
+                properties.put(TimeTreeSpans.START_TIME, startTime);
+                properties.put(TimeTreeSpans.END_TIME, endTime);
+                // what the point encoder writes
+                properties.put("gtype", 1);
+                properties.put("bbox", new double[]{lonValue, latValue, lonValue, latValue});
+                long node = inserter.createNode(properties, labels);
+
+                long startInstant = timeTree.day(startTime);
+                if(startTime != endTime) {
+                    inserter.createRelationship(node, startInstant, TimeRelationshipTypes.START_DATE, NO_PROPERTIES);
+                    inserter.createRelationship(node, timeTree.day(endTime), TimeRelationshipTypes.END_DATE, NO_PROPERTIES);
+                }
+                else inserter.createRelationship(node, startInstant, TimeRelationshipTypes.EVENT_DATE, NO_PROPERTIES);
+                points.add(node, lonValue, latValue);
+
+                if((points.size & 0xffff) == 0 && System.currentTimeMillis() - lastReport > PROGRESS_INTERVAL_MILLIS) {
+                    lastReport = System.currentTimeMillis();
+                    report(String.format("%,d records (%d%%), %,d rejected, %,.0f records/s",
+                            points.size, 100 * reader.getPosition() / Math.max(1, reader.getSize()), rejected, points.size / seconds(started)));
+                }
+            }
+
+            report(String.format("%,d records read in %.1fs, linking %,d TimeTree days", points.size, seconds(started), timeTree.days.size()));
+            timeTree.link();
+            report("packing the R-tree");
+            packLayer(inserter, points);
+            report(String.format("imported %,d records in %.1fs (%,.0f records/s), %,d rejected", points.size, seconds(started), points.size / seconds(started), rejected));
+            return points.size;
+        } finally {
+            inserter.shutdown();
+        }
+    }
+
+    // builds the Continuum layer the way neo4j-spatial lays it out: spatial root -LAYER-> layer node, with the index
+    // metadata and the R-tree root beneath it; leaves reference the Continuum nodes themselves
+    private static void packLayer(BatchInserter inserter, Points points) {
+        Map<String, Object> root = new HashMap<>();
+        root.put("name", "spatial_root");
+        long spatialRoot = inserter.createNode(root, Label.label("ReferenceNode"));
+
+        Map<String, Object> layerProperties = new HashMap<>();
+        layerProperties.put("layer", "Continuum");
+        layerProperties.put("ctime", System.currentTimeMillis());
+        layerProperties.put("geomencoder", SimplePointEncoder.class.getCanonicalName());
+        layerProperties.put("geomencoder_config", "lon:lat");
+        layerProperties.put("layer_class", EditableLayerImpl.class.getCanonicalName());
+        long layer = inserter.createNode(layerProperties);
+        inserter.createRelationship(spatialRoot, layer, SpaceRelationshipTypes.LAYER, NO_PROPERTIES);
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("maxNodeReferences", RTREE_NODE_CAPACITY);
+        metadata.put("totalGeometryCount", points.size);
+        inserter.createRelationship(layer, inserter.createNode(metadata), SpaceRelationshipTypes.RTREE_METADATA, NO_PROPERTIES);
+
+        if(points.size == 0) {
+            inserter.createRelationship(layer, inserter.createNode(NO_PROPERTIES), SpaceRelationshipTypes.RTREE_ROOT, NO_PROPERTIES);
+            return;
+        }
+
+        // hilbert index in the high bits, position in points in the low 31
+        long[] order = new long[points.size];
+        for(int i=0;i<points.size;i++) order[i] = SpaceFillingCurve.hilbertIndex(points.lons[i], points.lats[i]) << 31 | i;
+        Arrays.sort(order);
+
+        long[] level = new long[(points.size + RTREE_NODE_CAPACITY - 1) / RTREE_NODE_CAPACITY];
+        double[][] bboxes = new double[level.length][];
+        for(int leaf=0;leaf<level.length;leaf++) {
+            int from = leaf * RTREE_NODE_CAPACITY;
+            int to = Math.min(points.size, from + RTREE_NODE_CAPACITY);
+            double[] bbox = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            for(int i=from;i<to;i++) {
+                int point = (int) (order[i] & Integer.MAX_VALUE);
+                expand(bbox, points.lons[point], points.lats[point], points.lons[point], points.lats[point]);
+            }
+            bboxes[leaf] = bbox;
+            level[leaf] = inserter.createNode(Collections.singletonMap("bbox", bbox));
+            for(int i=from;i<to;i++) {
+                inserter.createRelationship(level[leaf], points.ids[(int) (order[i] & Integer.MAX_VALUE)], SpaceRelationshipTypes.RTREEREFERENCE, NO_PROPERTIES);
+            }
+        }
+
+        // neighbours in Hilbert order are neighbours in space, so consecutive nodes make compact parents
+        while(level.length > 1) {
+            long[] parents = new long[(level.length + RTREE_NODE_CAPACITY - 1) / RTREE_NODE_CAPACITY];
+            double[][] parentBboxes = new double[parents.length][];
+            for(int parent=0;parent<parents.length;parent++) {
+                int from = parent * RTREE_NODE_CAPACITY;
+                int to = Math.min(level.length, from + RTREE_NODE_CAPACITY);
+                double[] bbox = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+                for(int i=from;i<to;i++) expand(bbox, bboxes[i][0], bboxes[i][1], bboxes[i][2], bboxes[i][3]);
+                parentBboxes[parent] = bbox;
+                parents[parent] = inserter.createNode(Collections.singletonMap("bbox", bbox));
+                for(int i=from;i<to;i++) inserter.createRelationship(parents[parent], level[i], SpaceRelationshipTypes.RTREE_CHILD, NO_PROPERTIES);
+            }
+            level = parents;
+            bboxes = parentBboxes;
+        }
+        inserter.createRelationship(layer, level[0], SpaceRelationshipTypes.RTREE_ROOT, NO_PROPERTIES);
+    }
+
+    private static void expand(double[] bbox, double minX, double minY, double maxX, double maxY) {
+        bbox[0] = Math.min(bbox[0], minX);
+        bbox[1] = Math.min(bbox[1], minY);
+        bbox[2] = Math.max(bbox[2], maxX);
+        bbox[3] = Math.max(bbox[3], maxY);
+    }
+
+    private long time(ContinuumCsvReader reader, int column, int[] date) {
+        if(reader.isEmpty(column)) throw new Error("no time");
+        if(timeFormat == TimeFormat.EPOCH_MILLIS) return reader.getLong(column);
+        reader.getDate(column, date);
+        return UTC.getDateTimeMillis(date[0], date[1], date[2], 0);
+    }
+
+    private static int column(String[] header, String name, boolean required) {
+        for(int i=0;i<header.length;i++) {
+            if(header[i].equals(name)) return i;
+        }
+        if(required) throw new Error("no column " + name + " in " + Arrays.toString(header) + "!");
+        return -1;
+    }
+
+    private void report(String message) {
+        if(progress != null) progress.println(message);
+    }
+
+    private static double seconds(long started) {
+        return Math.max(1, System.currentTimeMillis() - started) / 1000.0;
+    }
+
+    // node ids and coordinates of the imported records, in primitive arrays
+    private static class Points {
+
+        long[] ids = new long[1024];
+        double[] lons = new double[1024];
+        double[] lats = new double[1024];
+        int size;
+
+        void add(long id, double lon, double lat) {
+            if(size == Integer.MAX_VALUE) throw new Error("can't import more than " + Integer.MAX_VALUE + " records at once!");
+            if(size == ids.length) {
+                int capacity = (int) Math.min(Integer.MAX_VALUE, ids.length * 2L);
+                ids = Arrays.copyOf(ids, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+            }
+            ids[size] = id;
+            lons[size] = lon;
+            lats[size] = lat;
+            size++;
+        }
+    }
+
+    // the day, month and year instants, with the same labels, values and relationships SingleTimeTree creates,
+    // so the tree keeps working with TimeTree afterwards
+    private static class TimeTreeBuilder {
+
+        private final BatchInserter inserter;
+        private final long root;
+        // key -> {node, parent}; years by year, months by year * 12 + month - 1, days by their start
+        private final Map<Long, long[]> years = new HashMap<>();
+        private final Map<Long, long[]> months = new HashMap<>();
+        private final Map<Long, long[]> days = new HashMap<>();
+        // input is often sorted by time, the day of the previous record is asked for again
+        private long lastDay = Long.MIN_VALUE;
+        private long lastDayNode;
+
+        TimeTreeBuilder(BatchInserter inserter) {
+            this.inserter = inserter;
+            this.root = inserter.createNode(NO_PROPERTIES, TimeTreeLabels.TimeTreeRoot);
+        }
+
+        long day(long millis) {
+            long dayStart = Math.floorDiv(millis, DAY) * DAY;
+            if(dayStart == lastDay) return lastDayNode;
+            long[] day = days.get(dayStart);
+            if(day == null) {
+                int year = UTC.year().get(dayStart);
+                int month = UTC.monthOfYear().get(dayStart);
+                long[] yearInstant = years.computeIfAbsent((long) year, t -> child(root, TimeTreeLabels.Year, year));
+                long[] monthInstant = months.computeIfAbsent(year * 12L + month - 1, t -> child(yearInstant[0], TimeTreeLabels.Month, month));
+                day = child(monthInstant[0], TimeTreeLabels.Day, UTC.dayOfMonth().get(dayStart));
+                days.put(dayStart, day);
+            }
+            lastDay = dayStart;
+            lastDayNode = day[0];
+            return lastDayNode;
+        }
+
+        private long[] child(long parent, Label label, int value) {
+            long node = inserter.createNode(Collections.singletonMap("value", value), label);
+            inserter.createRelationship(parent, node, TimeTreeRelationshipTypes.CHILD, NO_PROPERTIES);
+            return new long[]{node, parent};
+        }
+
+        // NEXT runs through each whole level, FIRST and LAST point from every parent to its first and last child
+        void link() {
+            chain(years);
+            chain(months);
+            chain(days);
+        }
+
+        private void chain(Map<Long, long[]> level) {
+            List<Long> keys = new ArrayList<>(level.keySet());
+            Collections.sort(keys);
+            long[] previous = null;
+            for(long key : keys) {
+                long[] instant = level.get(key);
+                if(previous != null) inserter.createRelationship(previous[0], instant[0], TimeTreeRelationshipTypes.NEXT, NO_PROPERTIES);
+                if(previous == null || previous[1] != instant[1]) {
+                    inserter.createRelationship(instant[1], instant[0], TimeTreeRelationshipTypes.FIRST, NO_PROPERTIES);
+                    if(previous != null) inserter.createRelationship(previous[1], previous[0], TimeTreeRelationshipTypes.LAST, NO_PROPERTIES);
+                }
+                previous = instant;
+            }
+            if(previous != null) inserter.createRelationship(previous[1], previous[0], TimeTreeRelationshipTypes.LAST, NO_PROPERTIES);
+        }
+    }
+
+    // ContinuumImporter <store directory> <csv file> [delimiter=tab] [labels=Painter,Person] [lat=lat] [lon=lon] [start=start] [end=end]
+    //                   [time=iso|millis] [pagecache=4g]
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("usage: ContinuumImporter <store directory> <csv file> [delimiter=tab] [labels=A,B] [lat=lat] [lon=lon] [start=start] [end=end] [time=iso|millis] [pagecache=4g]");
+            System.exit(1);
+        }
+        Map<String, String> options = new HashMap<>();
+        for(int i=2;i<args.length;i++) {
+            int split = args[i].indexOf('=');
+            if(split < 0) throw new Error("options are key=value, not " + args[i]);
+            options.put(args[i].substring(0, split), args[i].substring(split + 1));
+        }
+
+        String delimiter = options.getOrDefault("delimiter", ",");
+        ContinuumImporter importer = new ContinuumImporter(new File(args[0]))
+                .withDelimiter("tab".equals(delimiter) ? '\t' : delimiter.charAt(0))
+                .withColumns(options.getOrDefault("lat", "lat"), options.getOrDefault("lon", "lon"), options.getOrDefault("start", "start"), options.getOrDefault("end", "end"))
+                .withTimeFormat("millis".equals(options.get("time")) ? TimeFormat.EPOCH_MILLIS : TimeFormat.ISO_DATE);
+        if(options.containsKey("labels")) importer.withLabels(options.get("labels").split(","));
+        if(options.containsKey("pagecache")) importer.withConfig("dbms.pagecache.memory", options.get("pagecache"));
+        importer.importCsv(new File(args[1]));
+    }
+
+}
@@ -0,0 +1,29 @@
+import com.vividsolutions.jts.geom.Geometry;
+import org.neo4j.graphdb.Node;
+
+import java.util.stream.Stream;
+
+/**
+ * The index Continuum answers space and time queries with, selected when Continuum is constructed.
+ * Continuum always writes the graph representation of a node (label, lat/lon, TimeTree links, Continuum layer),
+ * and tells the engine about every committed write so it can keep its own structures in sync, see {@link ContinuumIndexUpdater}.
+ * Time spans are in epoch millis.
+ */
+public interface ContinuumIndexEngine {
+
+    enum Backend {
+        // neo4j-spatial R-tree for space, interval index for time, joined by the query planner
+        DUAL_INDEX,
+        // a single 3D R-tree over (lon, lat, time)
+        SPACE_TIME
+    }
+
+    void add(long nodeId, double lat, double lon, long startTime, long endTime);
+
+    void remove(long nodeId);
+
+    // nodes in the geometry whose time span overlaps [startTime, endTime]
+    // lazily evaluated, must be consumed inside a transaction
+    Stream<Node> stream(Geometry geometryToSearchIn, long startTime, long endTime);
+
+}
@@ -0,0 +1,83 @@
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps the in-memory indexes of a Continuum (interval index, space-time R-tree, cluster pyramid) in sync with the graph,
+ * the same way {@link ContinuumColumnStoreUpdater} keeps the column store: before commit it notes which nodes were touched,
+ * after commit it re-reads them. The indexes only ever hold committed data, a transaction that rolls back leaves nothing
+ * behind, and writes that didn't go through this Continuum (Cypher, another instance) are picked up as well.
+ * Commits are applied holding the given lock, the index builds hold it too, so a build never misses a commit.
+ */
+public class ContinuumIndexUpdater implements TransactionEventHandler<ContinuumColumnStoreUpdater.Changes> {
+
+    // the structures kept in sync, spans at day resolution
+    public interface Index {
+        void put(long id, double lat, double lon, long start, long end);
+
+        void remove(long id);
+    }
+
+    private final GraphDatabaseService db;
+    private final Index index;
+    // Continuum, or the label of a partition
+    private final Label label;
+    private final Object lock;
+    private final Supplier<ContinuumMetrics> metrics;
+
+    public ContinuumIndexUpdater(GraphDatabaseService db, Index index, Label label, Object lock, Supplier<ContinuumMetrics> metrics) {
+        this.db = db;
+        this.index = index;
+        this.label = label;
+        this.lock = lock;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ContinuumColumnStoreUpdater.Changes beforeCommit(TransactionData data) throws Exception {
+        return ContinuumColumnStoreUpdater.collect(data, label);
+    }
+
+    // re-reading under the lock keeps two commits of the same node from being applied out of order
+    @Override
+    public void afterCommit(TransactionData data, ContinuumColumnStoreUpdater.Changes changes) {
+        if(changes.touched.isEmpty() && changes.deleted.isEmpty()) return;
+
+        ContinuumMetrics metrics = this.metrics.get();
+        long indexStart = metrics.startTimer();
+        synchronized (lock) {
+            changes.deleted.forEach(index::remove);
+            if(!changes.touched.isEmpty()) {
+                try (Transaction tx = db.beginTx()) {
+                    for(long id : changes.touched) refresh(id);
+                    tx.success();
+                }
+            }
+        }
+        metrics.stopTimer("ingest.index", indexStart);
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, ContinuumColumnStoreUpdater.Changes changes) {
+    }
+
+    // only nodes with the label, a location and a time span are indexed
+    private void refresh(long id) {
+        try {
+            Node node = db.getNodeById(id);
+            long[] span = node.hasLabel(label) && node.hasProperty("lat") && node.hasProperty("lon") ? TimeTreeSpans.spanOf(node) : null;
+            if(span == null) index.remove(id);
+            else index.put(id, (Double) node.getProperty("lat"), (Double) node.getProperty("lon"), span[0], span[1]);
+        } catch (NotFoundException e) {
+            // deleted by a later commit
+            index.remove(id);
+        }
+    }
+
+}
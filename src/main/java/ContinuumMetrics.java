@@ -0,0 +1,49 @@
+/**
+ * Where Continuum reports what its queries and writes cost.
+ * Phases are timed in nanoseconds, cardinalities and transaction sizes are plain values, marks count events for rates.
+ * Continuum starts with NOOP, which skips even the clock reads, so metrics cost a field read and a
+ * call that inlines to nothing while they are off. See ContinuumMetricsRegistry for the JMX backed implementation.
+ */
+public interface ContinuumMetrics {
+
+    ContinuumMetrics NOOP = new ContinuumMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordLatency(String phase, long nanos) {
+        }
+
+        @Override
+        public void recordValue(String name, long value) {
+        }
+
+        @Override
+        public void mark(String name, long events) {
+        }
+    };
+
+    boolean isEnabled();
+
+    void recordLatency(String phase, long nanos);
+
+    void recordValue(String name, long value);
+
+    void mark(String name, long events);
+
+    // 0 when disabled, pass the result to stopTimer
+    default long startTimer() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    // records the time since startTimer and returns the current time, so consecutive phases can share a clock read
+    default long stopTimer(String phase, long start) {
+        if(!isEnabled()) return 0;
+        long now = System.nanoTime();
+        recordLatency(phase, now - start);
+        return now;
+    }
+
+}
@@ -0,0 +1,21 @@
+import java.util.Map;
+
+/**
+ * JMX view of a ContinuumMetricsRegistry, registered under continuum:type=Metrics,name=...
+ * Latencies are in microseconds, rates in events per second since the last reset.
+ */
+public interface ContinuumMetricsMXBean {
+
+    Map<String, ContinuumHistogram.Snapshot> getLatencies();
+
+    Map<String, ContinuumHistogram.Snapshot> getValues();
+
+    Map<String, Long> getCounts();
+
+    Map<String, Double> getRates();
+
+    long getSecondsSinceReset();
+
+    void reset();
+
+}
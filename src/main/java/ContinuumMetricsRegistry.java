@@ -0,0 +1,129 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a ContinuumHistogram per phase and per value name and a counter per mark, created on first use.
+ * Recording is lock free; register publishes the registry as an MXBean on the platform MBean server.
+ */
+public class ContinuumMetricsRegistry implements ContinuumMetrics, ContinuumMetricsMXBean {
+
+    public static final String JMX_DOMAIN = "continuum";
+
+    private final ConcurrentMap<String, ContinuumHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ContinuumHistogram> values = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> marks = new ConcurrentHashMap<>();
+    private volatile long resetAt = System.nanoTime();
+    private ObjectName objectName;
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordLatency(String phase, long nanos) {
+        latencies.computeIfAbsent(phase, t -> new ContinuumHistogram()).record(nanos);
+    }
+
+    @Override
+    public void recordValue(String name, long value) {
+        values.computeIfAbsent(name, t -> new ContinuumHistogram()).record(value);
+    }
+
+    @Override
+    public void mark(String name, long events) {
+        marks.computeIfAbsent(name, t -> new LongAdder()).add(events);
+    }
+
+    public ContinuumHistogram getLatency(String phase) {
+        return latencies.get(phase);
+    }
+
+    public ContinuumHistogram getValue(String name) {
+        return values.get(name);
+    }
+
+    public long getCount(String name) {
+        LongAdder count = marks.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    // JMX
+    @Override
+    public Map<String, ContinuumHistogram.Snapshot> getLatencies() {
+        Map<String, ContinuumHistogram.Snapshot> snapshots = new TreeMap<>();
+        latencies.forEach((phase, histogram) -> snapshots.put(phase, histogram.snapshot(1e3)));
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, ContinuumHistogram.Snapshot> getValues() {
+        Map<String, ContinuumHistogram.Snapshot> snapshots = new TreeMap<>();
+        values.forEach((name, histogram) -> snapshots.put(name, histogram.snapshot(1)));
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        marks.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getRates() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - resetAt) / 1e9);
+        Map<String, Double> rates = new TreeMap<>();
+        marks.forEach((name, count) -> rates.put(name, count.sum() / seconds));
+        return rates;
+    }
+
+    @Override
+    public long getSecondsSinceReset() {
+        return (System.nanoTime() - resetAt) / 1000000000L;
+    }
+
+    // starts a new window for histograms and rates alike
+    @Override
+    public void reset() {
+        latencies.values().forEach(ContinuumHistogram::reset);
+        values.values().forEach(ContinuumHistogram::reset);
+        marks.values().forEach(LongAdder::reset);
+        resetAt = System.nanoTime();
+    }
+
+    public synchronized ContinuumMetricsRegistry register(String name) {
+        if(objectName != null) throw new Error("metrics are already registered as " + objectName + "!");
+        try {
+            ObjectName candidate = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            objectName = candidate;
+        } catch (JMException e) {
+            throw new Error("can't register metrics as " + name + "!", e);
+        }
+        return this;
+    }
+
+    public synchronized void unregister() {
+        if(objectName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new Error("can't unregister " + objectName + "!", e);
+        }
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+}
@@ -0,0 +1,106 @@
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * k nearest neighbours over the Continuum R-tree, best first: index nodes and points share one queue ordered by
+ * the smallest distance they could have from the query point. A point coming off the queue is closer than anything
+ * still queued, so the search stops as soon as k points alive during the window came off - the cost follows k,
+ * not the density of the area.
+ * Must be used inside a transaction.
+ */
+public class ContinuumNearestNeighbours {
+
+    public enum Distance { GREAT_CIRCLE, PLANAR }
+
+    // mean earth radius in meters
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    // nearest k nodes to (lat, lon) whose time span overlaps [startTime, endTime], closest first
+    public static List<ContinuumNeighbour> nearest(Layer layer, IntervalIndex intervals, double lat, double lon, int k, long startTime, long endTime, Distance distance) {
+        if(k < 1) throw new Error("k must be at least 1!");
+        List<ContinuumNeighbour> found = new ArrayList<>(k);
+        Relationship rootRel = layer.getLayerNode().getSingleRelationship(SpaceRelationshipTypes.RTREE_ROOT, Direction.OUTGOING);
+        if(rootRel == null) return found;
+
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        queue.add(new Entry(rootRel.getEndNode(), 0, false));
+        while(!queue.isEmpty() && found.size() < k) {
+            Entry entry = queue.poll();
+            if(entry.point) {
+                found.add(new ContinuumNeighbour(entry.node, entry.distance));
+                continue;
+            }
+            for(Relationship child : entry.node.getRelationships(Direction.OUTGOING, SpaceRelationshipTypes.RTREE_CHILD)) {
+                double[] bbox = (double[]) child.getEndNode().getProperty("bbox", null);
+                if(bbox != null) queue.add(new Entry(child.getEndNode(), boxDistance(lat, lon, bbox, distance), false));
+            }
+            for(Relationship reference : entry.node.getRelationships(Direction.OUTGOING, SpaceRelationshipTypes.RTREEREFERENCE)) {
+                Node candidate = reference.getEndNode();
+                // the interval index is in memory, so the time check comes before reading the coordinates
+                if(!intervals.overlaps(candidate.getId(), startTime, endTime)) continue;
+                double candidateLat = (Double) candidate.getProperty("lat");
+                double candidateLon = (Double) candidate.getProperty("lon");
+                queue.add(new Entry(candidate, pointDistance(lat, lon, candidateLat, candidateLon, distance), true));
+            }
+        }
+        return found;
+    }
+
+    public static double pointDistance(double lat1, double lon1, double lat2, double lon2, Distance distance) {
+        if(distance == Distance.PLANAR) return Math.hypot(lat2 - lat1, lon2 - lon1);
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // smallest distance from the point to anything inside bbox {minLon, minLat, maxLon, maxLat}
+    static double boxDistance(double lat, double lon, double[] bbox, Distance distance) {
+        double minLon = bbox[0], minLat = bbox[1], maxLon = bbox[2], maxLat = bbox[3];
+        if(distance == Distance.PLANAR) {
+            double dLon = Math.max(0, Math.max(minLon - lon, lon - maxLon));
+            double dLat = Math.max(0, Math.max(minLat - lat, lat - maxLat));
+            return Math.hypot(dLat, dLon);
+        }
+        // inside the longitudes the closest point is straight north or south
+        if(lon >= minLon && lon <= maxLon) return pointDistance(lat, lon, Math.max(minLat, Math.min(maxLat, lat)), lon, distance);
+        // otherwise it lies on the nearer of the two meridian edges, found by clamping the closest point of the whole meridian
+        return Math.min(meridianDistance(lat, lon, minLon, minLat, maxLat), meridianDistance(lat, lon, maxLon, minLat, maxLat));
+    }
+
+    private static double meridianDistance(double lat, double lon, double edgeLon, double minLat, double maxLat) {
+        double cosDLon = Math.cos(Math.toRadians(edgeLon - lon));
+        if(cosDLon <= 0) {
+            // the meridian lies on the far side of the globe, the closest point is one of the segment ends
+            return Math.min(pointDistance(lat, lon, minLat, edgeLon, Distance.GREAT_CIRCLE), pointDistance(lat, lon, maxLat, edgeLon, Distance.GREAT_CIRCLE));
+        }
+        double closestLat = Math.toDegrees(Math.atan(Math.tan(Math.toRadians(lat)) / cosDLon));
+        return pointDistance(lat, lon, Math.max(minLat, Math.min(maxLat, closestLat)), edgeLon, Distance.GREAT_CIRCLE);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final Node node;
+        final double distance;
+        final boolean point;
+
+        Entry(Node node, double distance, boolean point) {
+            this.node = node;
+            this.distance = distance;
+            this.point = point;
+        }
+
+        // points before index nodes at the same distance, so ties are confirmed without expanding more of the tree
+        @Override
+        public int compareTo(Entry other) {
+            int byDistance = Double.compare(distance, other.distance);
+            return byDistance != 0 ? byDistance : Boolean.compare(other.point, point);
+        }
+    }
+
+}
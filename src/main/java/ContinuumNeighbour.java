@@ -0,0 +1,30 @@
+import org.neo4j.graphdb.Node;
+
+/**
+ * A node found by {@link Continuum#nearest}, with its distance from the query point:
+ * meters for great circle distances, degrees for planar ones.
+ */
+public class ContinuumNeighbour {
+
+    private final Node node;
+    private final double distance;
+
+    public ContinuumNeighbour(Node node, double distance) {
+        this.node = node;
+        this.distance = distance;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuumNeighbour{node=" + node.getId() + ", distance=" + distance + "}";
+    }
+
+}
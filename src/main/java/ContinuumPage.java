@@ -0,0 +1,30 @@
+import org.neo4j.graphdb.Node;
+
+import java.util.List;
+
+/**
+ * One page of a chronological Continuum query, with the cursor of the next page or null after the last one.
+ */
+public class ContinuumPage {
+
+    private final List<Node> nodes;
+    private final ContinuumCursor next;
+
+    public ContinuumPage(List<Node> nodes, ContinuumCursor next) {
+        this.nodes = nodes;
+        this.next = next;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public ContinuumCursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+}
@@ -0,0 +1,228 @@
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs Continuum queries on a fork-join pool.
+ * A query is planned first, and only its driving leg is split: the R-tree into one task per subtree, the interval index
+ * into chunks of ids. Label scans are split into chunks of node ids and TimeTree walks into one task per year.
+ * Every task reads the graph in its own transaction and never holds it while waiting for other tasks.
+ * Only committed data is visible, Continuum uses the executor when the caller has no transaction open.
+ */
+public class ContinuumParallelExecutor implements AutoCloseable {
+
+    private static final int SCAN_CHUNK_SIZE = 4096;
+
+    private final GraphDatabaseService db;
+    private final ForkJoinPool pool;
+    private final Supplier<ContinuumMetrics> metrics;
+    private final ContinuumQueryPlanner queryPlanner;
+
+    public ContinuumParallelExecutor(GraphDatabaseService db, int parallelism) {
+        this(db, parallelism, () -> ContinuumMetrics.NOOP);
+    }
+
+    public ContinuumParallelExecutor(GraphDatabaseService db, int parallelism, Supplier<ContinuumMetrics> metrics) {
+        if(parallelism < 1) throw new Error("parallelism must be at least 1!");
+        this.db = db;
+        this.pool = new ForkJoinPool(parallelism);
+        this.metrics = metrics;
+        this.queryPlanner = new ContinuumQueryPlanner(db, metrics);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    // planned like the sequential path and returning the same nodes in the same order, see ContinuumQueryPlanner
+    // only the driving leg is split, every candidate is probed against the other leg by the task that found it:
+    // spatial first forks one task per R-tree subtree and checks the interval index at the leaves, results in depth-first order,
+    // temporal first splits the overlapping ids, ordered by start, into chunks and checks the geometry node by node
+    // with metrics on, the driving leg is timed with its probes as query.spatial or query.temporal
+    public List<Node> getContinuumNodes(Layer layer, IntervalIndex intervals, Geometry geometryToSearchIn, long startTime, long endTime) {
+        ContinuumMetrics metrics = this.metrics.get();
+        ContinuumQueryPlanner.Plan plan;
+        try (Transaction tx = db.beginTx()) {
+            plan = queryPlanner.plan(layer, geometryToSearchIn, intervals, startTime, endTime);
+            tx.success();
+        }
+        if(plan == null) return new ArrayList<>();
+
+        long legStart = metrics.startTimer();
+        List<Long> ids;
+        if(plan == ContinuumQueryPlanner.Plan.SPATIAL_FIRST) {
+            Long root = rootOf(layer);
+            ids = root == null ? new ArrayList<>() : pool.invoke(new RTreeSearch(root, geometryToSearchIn, layer.getGeometryFactory(), t -> intervals.overlaps(t, startTime, endTime)));
+            metrics.stopTimer("query.spatial", legStart);
+        } else {
+            List<Long> candidates = intervals.getOverlapping(startTime, endTime);
+            ids = pool.invoke(new ScanChunk<>(candidates, 0, candidates.size(), t -> ContinuumQueryPlanner.isInGeometry(layer, t, geometryToSearchIn) ? t.getId() : null));
+            metrics.stopTimer("query.temporal", legStart);
+        }
+
+        // the caller has no transaction, see Continuum.getContinuumNodes, and the nodes can only be loaded in one
+        List<Node> result = new ArrayList<>(ids.size());
+        try (Transaction tx = db.beginTx()) {
+            for(long id : ids) result.add(db.getNodeById(id));
+            tx.success();
+        }
+        return result;
+    }
+
+    // label scan for the ids only, then the per node work in parallel chunks; the order of the scan is kept
+    // the mapper returns null for nodes to leave out
+    public <T> List<T> scanLabel(Label label, Function<Node, T> mapper) {
+        List<Long> ids = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            db.findNodes(label).forEachRemaining(t -> ids.add(t.getId()));
+            tx.success();
+        }
+        return pool.invoke(new ScanChunk<>(ids, 0, ids.size(), mapper));
+    }
+
+    // the same as TimeTreeSpans.collectSpans, one task per year
+    public Map<Long, long[]> collectSpans(Node timeTreeRoot) {
+        List<Long> years = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            for(Relationship toYear : timeTreeRoot.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                years.add(toYear.getEndNode().getId());
+            }
+            tx.success();
+        }
+        List<CompletableFuture<Map<Long, long[]>>> perYear = new ArrayList<>();
+        for(long year : years) {
+            perYear.add(CompletableFuture.supplyAsync(() -> {
+                Map<Long, long[]> spans = new HashMap<>();
+                try (Transaction tx = db.beginTx()) {
+                    TimeTreeSpans.collectYearSpans(db.getNodeById(year), spans);
+                    tx.success();
+                }
+                return spans;
+            }, pool));
+        }
+        Map<Long, long[]> spans = new HashMap<>();
+        for(CompletableFuture<Map<Long, long[]>> year : perYear) TimeTreeSpans.merge(spans, year.join());
+        return TimeTreeSpans.complete(spans);
+    }
+
+    // runs the task inside the pool, parallel streams started by the task use the pool's threads
+    public <T> T run(Supplier<T> task) {
+        return pool.submit(task::get).join();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private Long rootOf(Layer layer) {
+        try (Transaction tx = db.beginTx()) {
+            Relationship rootRel = layer.getLayerNode().getSingleRelationship(SpaceRelationshipTypes.RTREE_ROOT, Direction.OUTGOING);
+            tx.success();
+            return rootRel == null ? null : rootRel.getEndNode().getId();
+        }
+    }
+
+    // searches one R-tree subtree, forking a task for every child whose bbox intersects the geometry
+    // references are kept if the probe accepts their id and they lie in the geometry; children's results follow in child order
+    private class RTreeSearch extends RecursiveTask<List<Long>> {
+
+        private final long indexNodeId;
+        private final Geometry geometry;
+        private final GeometryFactory geometryFactory;
+        private final LongPredicate probe;
+
+        RTreeSearch(long indexNodeId, Geometry geometry, GeometryFactory geometryFactory, LongPredicate probe) {
+            this.indexNodeId = indexNodeId;
+            this.geometry = geometry;
+            this.geometryFactory = geometryFactory;
+            this.probe = probe;
+        }
+
+        @Override
+        protected List<Long> compute() {
+            Envelope envelope = geometry.getEnvelopeInternal();
+            List<Long> found = new ArrayList<>();
+            List<RTreeSearch> children = new ArrayList<>();
+            try (Transaction tx = db.beginTx()) {
+                Node indexNode = db.getNodeById(indexNodeId);
+                for(Relationship child : indexNode.getRelationships(Direction.OUTGOING, SpaceRelationshipTypes.RTREE_CHILD)) {
+                    double[] bbox = (double[]) child.getEndNode().getProperty("bbox", null);
+                    if(bbox != null && envelope.intersects(new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]))) {
+                        children.add(new RTreeSearch(child.getEndNode().getId(), geometry, geometryFactory, probe));
+                    }
+                }
+                for(Relationship reference : indexNode.getRelationships(Direction.OUTGOING, SpaceRelationshipTypes.RTREEREFERENCE)) {
+                    Node candidate = reference.getEndNode();
+                    // the probe is in memory, so it comes before reading the coordinates
+                    if(!probe.test(candidate.getId())) continue;
+                    double lon = (Double) candidate.getProperty("lon");
+                    double lat = (Double) candidate.getProperty("lat");
+                    if(envelope.contains(lon, lat) && geometryFactory.createPoint(new Coordinate(lon, lat)).within(geometry)) found.add(candidate.getId());
+                }
+                tx.success();
+            }
+            invokeAll(children);
+            for(RTreeSearch child : children) found.addAll(child.join());
+            return found;
+        }
+    }
+
+    private class ScanChunk<T> extends RecursiveTask<List<T>> {
+
+        private final List<Long> ids;
+        private final int from;
+        private final int to;
+        private final Function<Node, T> mapper;
+
+        ScanChunk(List<Long> ids, int from, int to, Function<Node, T> mapper) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.mapper = mapper;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if(to - from > SCAN_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                ScanChunk<T> left = new ScanChunk<>(ids, from, middle, mapper);
+                ScanChunk<T> right = new ScanChunk<>(ids, middle, to, mapper);
+                right.fork();
+                List<T> result = left.compute();
+                result.addAll(right.join());
+                return result;
+            }
+            List<T> result = new ArrayList<>(to - from);
+            try (Transaction tx = db.beginTx()) {
+                for(int i = from; i < to; i++) {
+                    T mapped = mapper.apply(db.getNodeById(ids.get(i)));
+                    if(mapped != null) result.add(mapped);
+                }
+                tx.success();
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+import com.graphaware.module.timetree.SingleTimeTree;
+import org.neo4j.graphdb.ConstraintViolationException;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.schema.ConstraintDefinition;
+import org.neo4j.graphdb.schema.ConstraintType;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The TimeTree of one Continuum partition, rooted at a ContinuumPartitionRoot node named after the partition
+ * instead of the database wide TimeTreeRoot. Like the default root it is created on first use, and removeInstant
+ * deletes it again once its last year is gone.
+ * The names are kept unique by a constraint, created along with the first partition TimeTree of the database.
+ */
+public class ContinuumPartitionTimeTree extends SingleTimeTree {
+
+    public static final Label PARTITION_ROOT = Label.label("ContinuumPartitionRoot");
+
+    private final GraphDatabaseService db;
+    private final String partition;
+
+    public ContinuumPartitionTimeTree(GraphDatabaseService db, String partition) {
+        super(db);
+        this.db = db;
+        this.partition = partition;
+        createRootConstraint(db);
+    }
+
+    // null if nothing was written to the partition yet, must be called inside a transaction
+    public Node findRoot() {
+        return db.findNode(PARTITION_ROOT, "name", partition);
+    }
+
+    // the monitor only covers this instance, MERGE takes the lock of the unique constraint,
+    // so two transactions creating the root at the same time end up with the same node
+    @Override
+    protected synchronized Node getTimeRoot() {
+        Node root = findRoot();
+        if(root != null) return root;
+        try (Result result = db.execute("MERGE (root:" + PARTITION_ROOT.name() + " {name: {name}}) RETURN root", Collections.singletonMap("name", partition))) {
+            return (Node) result.next().get("root");
+        }
+    }
+
+    // a schema change needs a transaction of its own, with one open on this thread it is made on another
+    // fails if the graph already holds two roots of the same name
+    private static void createRootConstraint(GraphDatabaseService db) {
+        Runnable create = () -> {
+            try (Transaction tx = db.beginTx()) {
+                if(!hasRootConstraint(db)) db.schema().constraintFor(PARTITION_ROOT).assertPropertyIsUnique("name").create();
+                tx.success();
+            } catch (ConstraintViolationException e) {
+                // fine if another partition created it at the same time
+                if(!hasRootConstraint(db)) throw e;
+            }
+        };
+        boolean inTransaction = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).hasTransaction();
+        if(inTransaction) CompletableFuture.runAsync(create).join();
+        else create.run();
+    }
+
+    private static boolean hasRootConstraint(GraphDatabaseService db) {
+        try (Transaction tx = db.beginTx()) {
+            boolean found = false;
+            for(ConstraintDefinition constraint : db.schema().getConstraints(PARTITION_ROOT)) {
+                if(constraint.isConstraintType(ConstraintType.UNIQUENESS) && constraint.getPropertyKeys().iterator().next().equals("name")) found = true;
+            }
+            tx.success();
+            return found;
+        }
+    }
+
+}
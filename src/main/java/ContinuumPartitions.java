@@ -0,0 +1,203 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.joda.time.DateTime;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the Continuum into named partitions, e.g. per continent, per century or per dataset, each with its own
+ * layer, TimeTree and in-memory indexes (see the partition constructor of {@link Continuum}).
+ * A partition is bounded by an envelope and a time window, null for either means unbounded. Writes are routed to the
+ * first partition, in definition order, that holds the point and the whole span; writes to a different place of the
+ * graph never share an R-tree or TimeTree node and so never wait on each other's locks.
+ * Queries skip the partitions whose bounds can't overlap and run the others in parallel, each in its own transaction,
+ * unless the caller has a transaction open; results are concatenated in definition order.
+ * Definitions live in memory only, define the same partitions again after a restart to get at their data.
+ */
+public class ContinuumPartitions implements AutoCloseable {
+
+    private final GraphDatabaseService db;
+    private final ContinuumIndexEngine.Backend backend;
+    private final ForkJoinPool pool;
+    private final Map<String, Partition> partitions = new LinkedHashMap<>();
+
+    public ContinuumPartitions(GraphDatabaseService db, int parallelism) {
+        this(db, ContinuumIndexEngine.Backend.DUAL_INDEX, parallelism);
+    }
+
+    public ContinuumPartitions(GraphDatabaseService db, ContinuumIndexEngine.Backend backend, int parallelism) {
+        if(parallelism < 1) throw new Error("parallelism must be at least 1!");
+        this.db = db;
+        this.backend = backend;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public synchronized Continuum define(String name, Envelope envelope, DateTime startTime, DateTime endTime) {
+        if(partitions.containsKey(name)) throw new Error("partition " + name + " is already defined!");
+        if(startTime != null && endTime != null && startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        Partition partition = new Partition(name, envelope, startTime, endTime, new Continuum(db, backend, name));
+        partitions.put(name, partition);
+        return partition.continuum;
+    }
+
+    public synchronized Continuum getPartition(String name) {
+        Partition partition = partitions.get(name);
+        if(partition == null) throw new Error("no partition named " + name + ", see define");
+        return partition.continuum;
+    }
+
+    public synchronized List<String> getPartitionNames() {
+        return new ArrayList<>(partitions.keySet());
+    }
+
+    // the partition a record goes to
+    public String route(double lat, double lon, DateTime startTime, DateTime endTime) {
+        for(Partition partition : snapshot()) {
+            if(partition.holds(lat, lon, startTime.getMillis(), endTime.getMillis())) return partition.name;
+        }
+        throw new Error("no partition holds " + lat + ", " + lon + " from " + startTime + " to " + endTime + "!");
+    }
+
+    // the partitions a query has to look at
+    public List<String> getCandidatePartitions(Envelope envelope, DateTime startTime, DateTime endTime) {
+        return candidates(envelope, startTime, endTime).stream().map(t -> t.name).collect(Collectors.toList());
+    }
+
+    // WRITE
+    public Node addContinuumCapabilitiesToNode(Node node, double lat, double lon, DateTime startTime, DateTime endTime) {
+        return getPartition(route(lat, lon, startTime, endTime)).addContinuumCapabilitiesToNode(node, lat, lon, startTime, endTime);
+    }
+
+    // for partitions by dataset, which the bounds can't tell apart; the record must still be within the partition's bounds
+    public Node addContinuumCapabilitiesToNode(String name, Node node, double lat, double lon, DateTime startTime, DateTime endTime) {
+        Partition partition = partition(name);
+        if(!partition.holds(lat, lon, startTime.getMillis(), endTime.getMillis())) throw new Error("partition " + name + " doesn't hold " + lat + ", " + lon + " from " + startTime + " to " + endTime + "!");
+        return partition.continuum.addContinuumCapabilitiesToNode(node, lat, lon, startTime, endTime);
+    }
+
+    // records are grouped by partition, every partition ingests its group on its own thread
+    // all records are validated and routed before any partition starts writing
+    public long addContinuumCapabilitiesToNodes(Iterable<ContinuumRecord> records, int batchSize) {
+        Map<String, List<ContinuumRecord>> byPartition = new LinkedHashMap<>();
+        for(ContinuumRecord record : records) {
+            if(record.getStartTime().isAfter(record.getEndTime())) throw new Error("startTime can't be after endTime!");
+            byPartition.computeIfAbsent(route(record.getLat(), record.getLon(), record.getStartTime(), record.getEndTime()), t -> new ArrayList<>()).add(record);
+        }
+        List<Partition> targets = byPartition.keySet().stream().map(this::partition).collect(Collectors.toList());
+        return fanOut(targets, t -> t.continuum.addContinuumCapabilitiesToNodes(byPartition.get(t.name), batchSize))
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    // READ
+    public List<Node> getContinuumNodes(Geometry geometryToSearchIn, DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return concat(fanOut(candidates(geometryToSearchIn.getEnvelopeInternal(), startTime, endTime),
+                t -> t.continuum.getContinuumNodes(geometryToSearchIn, startTime, endTime)));
+    }
+
+    public List<Node> getContinuumNodesOverlapping(DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        return concat(fanOut(candidates(null, startTime, endTime), t -> t.continuum.getContinuumNodesOverlapping(startTime, endTime)));
+    }
+
+    // the k nearest of every partition alive during the window, merged
+    public List<ContinuumNeighbour> nearest(double lat, double lon, int k, DateTime startTime, DateTime endTime) {
+        if(startTime.isAfter(endTime)) throw new Error("startTime can't be after endTime!");
+        List<ContinuumNeighbour> neighbours = concat(fanOut(candidates(null, startTime, endTime), t -> t.continuum.nearest(lat, lon, k, startTime, endTime)));
+        neighbours.sort(Comparator.comparingDouble(ContinuumNeighbour::getDistance));
+        return neighbours.size() > k ? new ArrayList<>(neighbours.subList(0, k)) : neighbours;
+    }
+
+    // closes every partition's Continuum too, see Continuum.close
+    @Override
+    public synchronized void close() {
+        partitions.values().forEach(t -> t.continuum.close());
+        pool.shutdown();
+    }
+
+    // a single partition, or a caller's transaction whose writes the pool threads couldn't see, runs on the calling thread
+    private <T> List<T> fanOut(List<Partition> targets, Function<Partition, T> task) {
+        List<T> results = new ArrayList<>(targets.size());
+        if(targets.size() <= 1 || hasTransaction()) {
+            for(Partition partition : targets) results.add(task.apply(partition));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = targets.stream()
+                .map(t -> CompletableFuture.supplyAsync(() -> task.apply(t), pool))
+                .collect(Collectors.toList());
+        for(CompletableFuture<T> future : futures) results.add(future.join());
+        return results;
+    }
+
+    private static <T> List<T> concat(List<List<T>> lists) {
+        List<T> all = new ArrayList<>();
+        lists.forEach(all::addAll);
+        return all;
+    }
+
+    // envelope null for time only queries
+    private List<Partition> candidates(Envelope envelope, DateTime startTime, DateTime endTime) {
+        long start = startTime.getMillis();
+        long end = endTime.getMillis();
+        return snapshot().stream().filter(t -> t.mayOverlap(envelope, start, end)).collect(Collectors.toList());
+    }
+
+    private synchronized Partition partition(String name) {
+        Partition partition = partitions.get(name);
+        if(partition == null) throw new Error("no partition named " + name + ", see define");
+        return partition;
+    }
+
+    private synchronized List<Partition> snapshot() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    private boolean hasTransaction() {
+        return ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class).hasTransaction();
+    }
+
+    private static class Partition {
+
+        final String name;
+        // null for anywhere
+        final Envelope envelope;
+        // the window writes must fit in
+        final long startTime;
+        final long endTime;
+        // the window widened to whole days, nodes are queried by the days they are attached to
+        final long firstDay;
+        final long lastDay;
+        final Continuum continuum;
+
+        Partition(String name, Envelope envelope, DateTime startTime, DateTime endTime, Continuum continuum) {
+            this.name = name;
+            this.envelope = envelope;
+            this.startTime = startTime == null ? Long.MIN_VALUE : startTime.getMillis();
+            this.endTime = endTime == null ? Long.MAX_VALUE : endTime.getMillis();
+            this.firstDay = startTime == null ? Long.MIN_VALUE : TimeTreeSpans.startOfDay(startTime);
+            this.lastDay = endTime == null ? Long.MAX_VALUE : TimeTreeSpans.endOfDay(endTime);
+            this.continuum = continuum;
+        }
+
+        boolean holds(double lat, double lon, long start, long end) {
+            return (envelope == null || envelope.contains(lon, lat)) && start >= startTime && end <= endTime;
+        }
+
+        boolean mayOverlap(Envelope queried, long start, long end) {
+            return (envelope == null || queried == null || envelope.intersects(queried)) && firstDay <= end && lastDay >= start;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.kernel.impl.factory.GraphDatabaseFacade;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Name;
+import org.neo4j.procedure.PerformsWrites;
+import org.neo4j.procedure.Procedure;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Continuum as Neo4j stored procedures, deployed by dropping the jar into the server's plugins directory.
+ * Times are epoch millis, geometries WKT in lon/lat order. Nodes go in and come out as ids, procedures in Neo4j 3.0
+ * can't take or yield nodes; MATCH (n) WHERE id(n) = nodeId gets at the node.
+ * Everything runs in the transaction of the calling statement, so an insert commits with the statement.
+ * Over HTTP the transactional endpoint (/db/data/transaction/commit) streams the rows as JSON and takes several
+ * statements per request, which covers the batch case, e.g.
+ * {"statements": [{"statement": "CALL continuum.within({wkt}, {start}, {end})", "parameters": {...}}, ...]}
+ */
+public class ContinuumProcedures {
+
+    // one Continuum per database, so the interval index and the other in-memory structures are built once and shared by every call
+    private static final Map<GraphDatabaseService, Continuum> CONTINUUMS = new ConcurrentHashMap<>();
+
+    @Context
+    public GraphDatabaseService db;
+
+    @Procedure("continuum.add")
+    @PerformsWrites
+    public Stream<NodeResult> add(@Name("nodeId") long nodeId, @Name("lat") double lat, @Name("lon") double lon, @Name("start") long start, @Name("end") long end) {
+        return Stream.of(new NodeResult(continuum().addContinuumCapabilitiesToNode(db.getNodeById(nodeId), lat, lon, toDateTime(start), toDateTime(end))));
+    }
+
+    // records are maps with nodeId, lat, lon, start and end; batchSize only groups the TimeTree lookups and the R-tree insert order
+    @Procedure("continuum.addAll")
+    @PerformsWrites
+    public Stream<CountResult> addAll(@Name("records") List<Map<String, Object>> records, @Name("batchSize") long batchSize) {
+        List<ContinuumRecord> continuumRecords = records.stream().map(this::toRecord).collect(Collectors.toList());
+        return Stream.of(new CountResult(continuum().addContinuumCapabilitiesToNodes(continuumRecords, (int) batchSize)));
+    }
+
+    // the rows are pulled from the index as the client reads them
+    @Procedure("continuum.within")
+    public Stream<NodeResult> within(@Name("wkt") String wkt, @Name("start") long start, @Name("end") long end) {
+        if(isEmpty()) return Stream.empty();
+        Continuum continuum = continuum();
+        Geometry geometry = parse(wkt, continuum.createOrRetrieveContinuumLayer().getGeometryFactory());
+        return continuum.streamContinuumNodes(geometry, toDateTime(start), toDateTime(end)).map(NodeResult::new);
+    }
+
+    // distance in meters
+    @Procedure("continuum.nearest")
+    public Stream<NeighbourResult> nearest(@Name("lat") double lat, @Name("lon") double lon, @Name("k") long k, @Name("start") long start, @Name("end") long end) {
+        if(isEmpty()) return Stream.empty();
+        return continuum().nearest(lat, lon, (int) k, toDateTime(start), toDateTime(end)).stream().map(NeighbourResult::new);
+    }
+
+    // the injected database only lives as long as the call, the Continuum is kept for the database behind it
+    private Continuum continuum() {
+        GraphDatabaseService database = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(GraphDatabaseFacade.class);
+        return CONTINUUMS.computeIfAbsent(database, t -> {
+            t.registerKernelEventHandler(new Forget(t));
+            return new Continuum(t);
+        });
+    }
+
+    // the read procedures can't create the Continuum layer, there is nothing to find before the first insert anyway
+    private boolean isEmpty() {
+        return !db.findNodes(Label.label("Continuum")).hasNext();
+    }
+
+    private ContinuumRecord toRecord(Map<String, Object> record) {
+        if(!(record.get("nodeId") instanceof Number)) throw new Error("every record needs a nodeId!");
+        return new ContinuumRecord(db.getNodeById(number(record, "nodeId").longValue()), number(record, "lat").doubleValue(), number(record, "lon").doubleValue(),
+                toDateTime(number(record, "start").longValue()), toDateTime(number(record, "end").longValue()));
+    }
+
+    private static Number number(Map<String, Object> record, String key) {
+        Object value = record.get(key);
+        if(!(value instanceof Number)) throw new Error("record field " + key + " must be a number!");
+        return (Number) value;
+    }
+
+    private static DateTime toDateTime(long millis) {
+        return new DateTime(millis, DateTimeZone.UTC);
+    }
+
+    private static Geometry parse(String wkt, GeometryFactory geometryFactory) {
+        try {
+            return new WKTReader(geometryFactory).read(wkt);
+        } catch (ParseException e) {
+            throw new Error("not a valid WKT geometry: " + wkt, e);
+        }
+    }
+
+    public static class NodeResult {
+
+        public long nodeId;
+
+        public NodeResult(Node node) {
+            this.nodeId = node.getId();
+        }
+    }
+
+    public static class CountResult {
+
+        public long added;
+
+        public CountResult(long added) {
+            this.added = added;
+        }
+    }
+
+    public static class NeighbourResult {
+
+        public long nodeId;
+        public double distance;
+
+        public NeighbourResult(ContinuumNeighbour neighbour) {
+            this.nodeId = neighbour.getNode().getId();
+            this.distance = neighbour.getDistance();
+        }
+    }
+
+    // drops the cached Continuum when its database shuts down
+    private static class Forget implements KernelEventHandler {
+
+        private final GraphDatabaseService db;
+
+        Forget(GraphDatabaseService db) {
+            this.db = db;
+        }
+
+        @Override
+        public void beforeShutdown() {
+            CONTINUUMS.remove(db);
+        }
+
+        @Override
+        public void kernelPanic(ErrorState error) {
+        }
+
+        @Override
+        public Object getResource() {
+            return null;
+        }
+
+        @Override
+        public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+            return ExecutionOrder.DOESNT_MATTER;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LRU cache of getContinuumNodes results, bounded both by number of entries and by total number of cached nodes.
+ * Entries are keyed on the normalized geometry and the time window. A change to a node evicts only the entries whose
+ * envelope contains the node and whose window overlaps its time span.
+ * The keys are indexed by the cells of a lat/lon grid their envelope touches, like {@link ContinuumSubscriptions},
+ * so a change only looks at the entries of its own cell and at the few entries too large for the grid.
+ * Every invalidation bumps a generation counter: a result computed while an invalidation happened is not stored,
+ * so a query racing a commit can't put stale data back.
+ */
+public class ContinuumQueryCache {
+
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+    private static final int MAX_CELLS = 1024;
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final double cellDegrees;
+    private final long columns;
+    private final LinkedHashMap<Key, List<Node>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Set<Key>> grid = new HashMap<>();
+    // keys whose envelope covers more than MAX_CELLS cells
+    private final Set<Key> large = new HashSet<>();
+    private long weight;
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ContinuumQueryCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, DEFAULT_CELL_DEGREES);
+    }
+
+    public ContinuumQueryCache(int maxEntries, long maxWeight, double cellDegrees) {
+        if(maxEntries < 1 || maxWeight < 1) throw new Error("Cache bounds must be positive!");
+        if(!(cellDegrees > 0 && cellDegrees <= 180)) throw new Error("cellDegrees must be in (0, 180]!");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.cellDegrees = cellDegrees;
+        this.columns = column(180) + 1;
+    }
+
+    public static Key key(Geometry geometry, long startTime, long endTime) {
+        return new Key(geometry.norm().toText(), geometry.getEnvelopeInternal(), startTime, endTime);
+    }
+
+    // null on a miss
+    public synchronized List<Node> get(Key key) {
+        List<Node> result = entries.get(key);
+        if(result == null) misses++;
+        else hits++;
+        return result;
+    }
+
+    // take the generation before running the query, the result is dropped if anything was invalidated since
+    public synchronized void put(Key key, List<Node> result, long generationAtStart) {
+        if(generationAtStart != generation || result.size() + 1 > maxWeight) return;
+        List<Node> previous = entries.put(key, Collections.unmodifiableList(new ArrayList<>(result)));
+        if(previous != null) weight -= previous.size() + 1;
+        else index(key);
+        weight += result.size() + 1;
+
+        Iterator<Map.Entry<Key, List<Node>>> eldest = entries.entrySet().iterator();
+        while(entries.size() > maxEntries || weight > maxWeight) {
+            Map.Entry<Key, List<Node>> entry = eldest.next();
+            weight -= entry.getValue().size() + 1;
+            eldest.remove();
+            unindex(entry.getKey());
+            evictions++;
+        }
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    // a node at (lat, lon) living [startTime, endTime] changed
+    public void invalidate(double lat, double lon, long startTime, long endTime) {
+        invalidate(Collections.singletonList(new double[]{lat, lon, startTime, endTime}));
+    }
+
+    // all the changes of a commit at once, each region is {lat, lon, start, end}
+    public synchronized void invalidate(List<double[]> regions) {
+        generation++;
+        Set<Key> stale = new HashSet<>();
+        for(double[] region : regions) {
+            double lat = region[0];
+            double lon = region[1];
+            long start = (long) region[2];
+            long end = (long) region[3];
+            Set<Key> inCell = grid.get(cell(lat, lon));
+            if(inCell != null) {
+                for(Key key : inCell) {
+                    if(key.isAffectedBy(lat, lon, start, end)) stale.add(key);
+                }
+            }
+            for(Key key : large) {
+                if(key.isAffectedBy(lat, lon, start, end)) stale.add(key);
+            }
+        }
+        for(Key key : stale) {
+            weight -= entries.remove(key).size() + 1;
+            unindex(key);
+            invalidations++;
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+        grid.clear();
+        large.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    private void index(Key key) {
+        List<Long> cells = cells(key.envelope);
+        if(cells == null) large.add(key);
+        else for(long cell : cells) grid.computeIfAbsent(cell, t -> new HashSet<>()).add(key);
+    }
+
+    private void unindex(Key key) {
+        List<Long> cells = cells(key.envelope);
+        if(cells == null) large.remove(key);
+        else for(long cell : cells) {
+            Set<Key> inCell = grid.get(cell);
+            inCell.remove(key);
+            if(inCell.isEmpty()) grid.remove(cell);
+        }
+    }
+
+    // cells covered by the envelope, null when there are more than MAX_CELLS
+    private List<Long> cells(Envelope envelope) {
+        long fromRow = row(envelope.getMinY());
+        long toRow = row(envelope.getMaxY());
+        long fromColumn = column(envelope.getMinX());
+        long toColumn = column(envelope.getMaxX());
+        if((toRow - fromRow + 1) * (toColumn - fromColumn + 1) > MAX_CELLS) return null;
+        List<Long> cells = new ArrayList<>();
+        for(long row=fromRow;row<=toRow;row++) {
+            for(long column=fromColumn;column<=toColumn;column++) cells.add(row * columns + column);
+        }
+        return cells;
+    }
+
+    private long cell(double lat, double lon) {
+        return row(lat) * columns + column(lon);
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor((Math.max(-90, Math.min(90, lat)) + 90) / cellDegrees);
+    }
+
+    private long column(double lon) {
+        return (long) Math.floor((Math.max(-180, Math.min(180, lon)) + 180) / cellDegrees);
+    }
+
+    public static final class Key {
+        private final String geometry;
+        private final Envelope envelope;
+        private final long startTime;
+        private final long endTime;
+
+        private Key(String geometry, Envelope envelope, long startTime, long endTime) {
+            this.geometry = geometry;
+            this.envelope = envelope;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        boolean isAffectedBy(double lat, double lon, long start, long end) {
+            return envelope.contains(lon, lat) && startTime <= end && endTime >= start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return startTime == key.startTime && endTime == key.endTime && geometry.equals(key.geometry);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * geometry.hashCode() + Long.hashCode(startTime)) + Long.hashCode(endTime);
+        }
+    }
+
+}
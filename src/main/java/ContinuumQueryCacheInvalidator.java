@@ -0,0 +1,119 @@
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evicts the {@link ContinuumQueryCache} entries a transaction affects, once it has committed.
+ * Every changed Continuum node is invalidated at its new position and span, and at its previous position when it moved.
+ * When the previous span can't be known any more (time links or the node itself deleted) the whole time axis is used.
+ */
+public class ContinuumQueryCacheInvalidator implements TransactionEventHandler<List<double[]>> {
+
+    private final ContinuumQueryCache cache;
+    // Continuum, or the label of a partition
+    private final Label label;
+
+    public ContinuumQueryCacheInvalidator(ContinuumQueryCache cache) {
+        this(cache, Label.label("Continuum"));
+    }
+
+    public ContinuumQueryCacheInvalidator(ContinuumQueryCache cache, Label label) {
+        this.cache = cache;
+        this.label = label;
+    }
+
+    // each region is {lat, lon, start, end}
+    @Override
+    public List<double[]> beforeCommit(TransactionData data) throws Exception {
+        List<double[]> regions = new ArrayList<>();
+        Set<Node> touched = new HashSet<>();
+        Set<Node> lostTimeLinks = new HashSet<>();
+        for(LabelEntry entry : data.assignedLabels()) {
+            if(entry.label().equals(label)) touched.add(entry.node());
+        }
+        for(LabelEntry entry : data.removedLabels()) {
+            if(entry.label().equals(label)) touched.add(entry.node());
+        }
+        for(Relationship relationship : data.createdRelationships()) {
+            if(isTimeLink(relationship)) touched.add(relationship.getStartNode());
+        }
+        for(Relationship relationship : data.deletedRelationships()) {
+            try {
+                if(isTimeLink(relationship)) lostTimeLinks.add(relationship.getStartNode());
+            } catch (NotFoundException e) {
+                // deleted with its node, covered by the removed properties below
+            }
+        }
+        touched.addAll(lostTimeLinks);
+
+        // nodes that moved or were deleted have to go from their previous position too, {lat, lon} by node
+        Map<Node, Double[]> previousPositions = new HashMap<>();
+        for(PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            if(isLocation(entry.key())) {
+                touched.add(entry.entity());
+                addPreviousCoordinate(previousPositions, entry);
+            }
+        }
+        for(PropertyEntry<Node> entry : data.removedNodeProperties()) {
+            if(isLocation(entry.key())) addPreviousCoordinate(previousPositions, entry);
+        }
+        previousPositions.forEach((node, position) -> {
+            // only one of the two may have changed, the other one is still on the node
+            if(position[0] == null) position[0] = currentCoordinate(node, "lat");
+            if(position[1] == null) position[1] = currentCoordinate(node, "lon");
+            if(position[0] != null && position[1] != null) regions.add(new double[]{position[0], position[1], Long.MIN_VALUE, Long.MAX_VALUE});
+        });
+
+        for(Node node : touched) {
+            if(data.isDeleted(node) || !node.hasProperty("lat") || !node.hasProperty("lon")) continue;
+            long[] span = lostTimeLinks.contains(node) ? null : TimeTreeSpans.spanOf(node);
+            regions.add(new double[]{(Double) node.getProperty("lat"), (Double) node.getProperty("lon"),
+                    span == null ? Long.MIN_VALUE : span[0], span == null ? Long.MAX_VALUE : span[1]});
+        }
+        return regions;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, List<double[]> regions) {
+        if(!regions.isEmpty()) cache.invalidate(regions);
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, List<double[]> regions) {
+    }
+
+    private static void addPreviousCoordinate(Map<Node, Double[]> previousPositions, PropertyEntry<Node> entry) {
+        if(entry.previouslyCommitedValue() == null) return;
+        Double[] position = previousPositions.computeIfAbsent(entry.entity(), t -> new Double[2]);
+        position[entry.key().equals("lat") ? 0 : 1] = (Double) entry.previouslyCommitedValue();
+    }
+
+    private static Double currentCoordinate(Node node, String key) {
+        try {
+            return (Double) node.getProperty(key, null);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLocation(String key) {
+        return key.equals("lat") || key.equals("lon");
+    }
+
+    private static boolean isTimeLink(Relationship relationship) {
+        return relationship.isType(TimeRelationshipTypes.START_DATE) || relationship.isType(TimeRelationshipTypes.END_DATE) || relationship.isType(TimeRelationshipTypes.EVENT_DATE);
+    }
+
+}
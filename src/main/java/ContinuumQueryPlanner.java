@@ -0,0 +1,246 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.gis.spatial.pipes.GeoPipeFlow;
+import org.neo4j.gis.spatial.pipes.GeoPipeline;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decides which side of a space and time query is cheaper and drives the query from it.
+ * The spatial side is estimated from the bounding boxes of the top R-tree levels, the temporal side is counted
+ * exactly by the interval index. The other side is then only probed per candidate,
+ * so the cost follows the smaller side instead of the product of both.
+ * With metrics on, planning, the driving leg and the probes of the other leg are timed separately.
+ * Must be used inside a transaction.
+ */
+public class ContinuumQueryPlanner {
+
+    public enum Plan { SPATIAL_FIRST, TEMPORAL_FIRST }
+
+    // how many R-tree index nodes the spatial estimate may look at
+    private static final int SPATIAL_ESTIMATE_BUDGET = 64;
+
+    private final GraphDatabaseService db;
+    private final Supplier<ContinuumMetrics> metrics;
+
+    public ContinuumQueryPlanner(GraphDatabaseService db) {
+        this(db, () -> ContinuumMetrics.NOOP);
+    }
+
+    public ContinuumQueryPlanner(GraphDatabaseService db, Supplier<ContinuumMetrics> metrics) {
+        this.db = db;
+        this.metrics = metrics;
+    }
+
+    // nodes in the geometry whose time span overlaps [startTime, endTime]
+    public List<Node> execute(Layer layer, Geometry geometryToSearchIn, IntervalIndex intervals, long startTime, long endTime) {
+        return stream(layer, geometryToSearchIn, intervals, startTime, endTime).collect(Collectors.toList());
+    }
+
+    // lazy version of execute, both plans pull from their driving index only as far as the stream is consumed
+    public Stream<Node> stream(Layer layer, Geometry geometryToSearchIn, IntervalIndex intervals, long startTime, long endTime) {
+        Plan plan = plan(layer, geometryToSearchIn, intervals, startTime, endTime);
+        return plan == null ? Stream.empty() : stream(layer, geometryToSearchIn, intervals, startTime, endTime, plan);
+    }
+
+    // the plan the estimates pick, null when nothing is alive during the window; must be called inside a transaction
+    public Plan plan(Layer layer, Geometry geometryToSearchIn, IntervalIndex intervals, long startTime, long endTime) {
+        ContinuumMetrics metrics = this.metrics.get();
+        long planStart = metrics.startTimer();
+        long temporalEstimate = intervals.countOverlapping(startTime, endTime);
+        if(temporalEstimate == 0) {
+            metrics.stopTimer("query.plan", planStart);
+            return null;
+        }
+
+        long spatialEstimate = estimateSpatialCardinality(layer, geometryToSearchIn.getEnvelopeInternal());
+        Plan plan = choosePlan(spatialEstimate, temporalEstimate);
+        metrics.stopTimer("query.plan", planStart);
+        if(metrics.isEnabled()) {
+            // the temporal count is exact, the spatial one only an estimate unless the spatial leg drives
+            metrics.mark(plan == Plan.SPATIAL_FIRST ? "query.plan.spatialFirst" : "query.plan.temporalFirst", 1);
+            metrics.recordValue("query.temporal.candidates", temporalEstimate);
+            metrics.recordValue("query.spatial.estimate", spatialEstimate);
+        }
+        return plan;
+    }
+
+    // runs the given plan whatever the estimates say, both plans return the same nodes
+    Stream<Node> stream(Layer layer, Geometry geometryToSearchIn, IntervalIndex intervals, long startTime, long endTime, Plan plan) {
+        ContinuumMetrics metrics = this.metrics.get();
+        return plan == Plan.SPATIAL_FIRST
+                ? join(metrics, "query.spatial", "query.temporal", spatialCandidates(layer, geometryToSearchIn), t -> intervals.overlaps(t.getId(), startTime, endTime))
+                : join(metrics, "query.temporal", "query.spatial", temporalCandidates(intervals, startTime, endTime), t -> isInGeometry(layer, t, geometryToSearchIn));
+    }
+
+    public Plan choosePlan(long spatialEstimate, long temporalEstimate) {
+        return spatialEstimate <= temporalEstimate ? Plan.SPATIAL_FIRST : Plan.TEMPORAL_FIRST;
+    }
+
+    // descends the R-tree breadth first, only into index nodes whose bbox intersects the envelope
+    // leaves contribute their real number of references, nodes left unexpanded once the budget is spent
+    // contribute an even share of their parent, scaled by how much of their bbox is covered
+    public long estimateSpatialCardinality(Layer layer, Envelope envelope) {
+        Relationship rootRel = layer.getLayerNode().getSingleRelationship(SpaceRelationshipTypes.RTREE_ROOT, Direction.OUTGOING);
+        if(rootRel == null) return 0;
+
+        double estimate = 0;
+        int visited = 0;
+        Deque<Node> frontier = new ArrayDeque<>();
+        Deque<Double> weights = new ArrayDeque<>();
+        frontier.add(rootRel.getEndNode());
+        weights.add((double) layer.getIndex().count());
+        while(!frontier.isEmpty()) {
+            Node indexNode = frontier.poll();
+            double weight = weights.poll();
+            double[] bbox = (double[]) indexNode.getProperty("bbox", null);
+            if(bbox == null || !envelope.intersects(toEnvelope(bbox))) continue;
+
+            if(indexNode.hasRelationship(Direction.OUTGOING, SpaceRelationshipTypes.RTREEREFERENCE)) {
+                estimate += indexNode.getDegree(SpaceRelationshipTypes.RTREEREFERENCE, Direction.OUTGOING) * coveredFraction(bbox, envelope);
+            }
+            else if(visited++ >= SPATIAL_ESTIMATE_BUDGET) {
+                estimate += weight * coveredFraction(bbox, envelope);
+            }
+            else {
+                int children = indexNode.getDegree(SpaceRelationshipTypes.RTREE_CHILD, Direction.OUTGOING);
+                for(Relationship child : indexNode.getRelationships(Direction.OUTGOING, SpaceRelationshipTypes.RTREE_CHILD)) {
+                    frontier.add(child.getEndNode());
+                    weights.add(weight / children);
+                }
+            }
+        }
+        return (long) Math.ceil(estimate);
+    }
+
+    // spatial first walks the R-tree and keeps the candidates whose span overlaps the window,
+    // temporal first walks the interval index and keeps the candidates that are indexed in the layer and lie in the geometry
+    private Stream<Node> join(ContinuumMetrics metrics, String drivingLeg, String probingLeg, Iterator<Node> candidates, Predicate<Node> probe) {
+        if(!metrics.isEnabled()) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(candidates, Spliterator.ORDERED), false).filter(probe);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new MeasuredJoin(metrics, drivingLeg, probingLeg, candidates, probe), Spliterator.ORDERED), false);
+    }
+
+    private Iterator<Node> spatialCandidates(Layer layer, Geometry geometryToSearchIn) {
+        Iterator<GeoPipeFlow> flows = GeoPipeline.startWithinSearch(layer, geometryToSearchIn).iterator();
+        return new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return flows.hasNext();
+            }
+
+            @Override
+            public Node next() {
+                return flows.next().getGeomNode();
+            }
+        };
+    }
+
+    private Iterator<Node> temporalCandidates(IntervalIndex intervals, long startTime, long endTime) {
+        Iterator<Long> ids = intervals.iterateOverlapping(startTime, endTime);
+        return new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Node next() {
+                return db.getNodeById(ids.next());
+            }
+        };
+    }
+
+    public static boolean isInGeometry(Layer layer, Node candidate, Geometry geometryToSearchIn) {
+        if(!candidate.hasRelationship(Direction.INCOMING, SpaceRelationshipTypes.RTREEREFERENCE)) return false;
+        double lon = (Double) candidate.getProperty("lon");
+        double lat = (Double) candidate.getProperty("lat");
+        if(!geometryToSearchIn.getEnvelopeInternal().contains(lon, lat)) return false;
+        Point point = layer.getGeometryFactory().createPoint(new Coordinate(lon, lat));
+        return point.within(geometryToSearchIn);
+    }
+
+    // the join with the time spent in either leg added up, recorded once the driving leg is exhausted
+    // a stream that is abandoned early, e.g. by a limit, leaves no leg figures
+    private static class MeasuredJoin implements Iterator<Node> {
+
+        private final ContinuumMetrics metrics;
+        private final String drivingLeg;
+        private final String probingLeg;
+        private final Iterator<Node> candidates;
+        private final Predicate<Node> probe;
+        private long drivingNanos;
+        private long probingNanos;
+        private long candidateCount;
+        private Node next;
+        private boolean done;
+
+        MeasuredJoin(ContinuumMetrics metrics, String drivingLeg, String probingLeg, Iterator<Node> candidates, Predicate<Node> probe) {
+            this.metrics = metrics;
+            this.drivingLeg = drivingLeg;
+            this.probingLeg = probingLeg;
+            this.candidates = candidates;
+            this.probe = probe;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(next == null && !done) {
+                long start = System.nanoTime();
+                Node candidate = candidates.hasNext() ? candidates.next() : null;
+                long fetched = System.nanoTime();
+                drivingNanos += fetched - start;
+                if(candidate == null) {
+                    done = true;
+                    metrics.recordLatency(drivingLeg, drivingNanos);
+                    metrics.recordLatency(probingLeg, probingNanos);
+                    metrics.recordValue(drivingLeg + ".candidates", candidateCount);
+                    break;
+                }
+                candidateCount++;
+                boolean matches = probe.test(candidate);
+                probingNanos += System.nanoTime() - fetched;
+                if(matches) next = candidate;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Node next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            Node result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    private static Envelope toEnvelope(double[] bbox) {
+        return new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+    }
+
+    private static double coveredFraction(double[] bbox, Envelope envelope) {
+        Envelope indexEnvelope = toEnvelope(bbox);
+        if(indexEnvelope.getArea() == 0) return envelope.intersects(indexEnvelope) ? 1 : 0;
+        return indexEnvelope.intersection(envelope).getArea() / indexEnvelope.getArea();
+    }
+
+}
@@ -0,0 +1,49 @@
+import org.joda.time.DateTime;
+import org.neo4j.graphdb.Node;
+
+/**
+ * A node together with the space and time information Continuum should attach to it.
+ * Used by the bulk ingest API, see {@link Continuum#addContinuumCapabilitiesToNodes(Iterable, int)}.
+ */
+public class ContinuumRecord {
+
+    private final Node node;
+    private final double lat;
+    private final double lon;
+    private final DateTime startTime;
+    private final DateTime endTime;
+
+    public ContinuumRecord(Node node, double lat, double lon, DateTime startTime, DateTime endTime) {
+        this.node = node;
+        this.lat = lat;
+        this.lon = lon;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    // single date event
+    public ContinuumRecord(Node node, double lat, double lon, DateTime eventTime) {
+        this(node, lat, lon, eventTime, eventTime);
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public DateTime getStartTime() {
+        return startTime;
+    }
+
+    public DateTime getEndTime() {
+        return endTime;
+    }
+
+}
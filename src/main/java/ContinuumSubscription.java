@@ -0,0 +1,86 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import org.neo4j.graphdb.Node;
+
+import java.util.List;
+
+/**
+ * A standing getContinuumNodes query: the listener is told about every committed Continuum node that lies within
+ * the geometry (lon/lat) and whose time span overlaps [startTime, endTime], as soon as the commit is done.
+ */
+public class ContinuumSubscription {
+
+    /**
+     * Called off the committing thread, once per subscription and commit, with the nodes of that commit that matched.
+     * The nodes are read in a transaction of the listener's own.
+     */
+    public interface Listener {
+        void onMatch(ContinuumSubscription subscription, List<Node> nodes);
+    }
+
+    private final long id;
+    private final Geometry geometry;
+    private final PreparedGeometry prepared;
+    private final Envelope envelope;
+    private final long startTime;
+    private final long endTime;
+    private final Listener listener;
+
+    ContinuumSubscription(long id, Geometry geometry, long startTime, long endTime, Listener listener) {
+        if(startTime > endTime) throw new Error("startTime can't be after endTime!");
+        if(listener == null) throw new Error("a subscription needs a listener!");
+        this.id = id;
+        this.geometry = geometry;
+        this.prepared = PreparedGeometryFactory.prepare(geometry);
+        this.envelope = geometry.getEnvelopeInternal();
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.listener = listener;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    Envelope getEnvelope() {
+        return envelope;
+    }
+
+    boolean overlaps(long start, long end) {
+        return startTime <= end && endTime >= start;
+    }
+
+    // the same test getContinuumNodes applies, a point within the geometry
+    // prepared geometries build their indexes lazily and aren't safe to share, commits may match concurrently
+    boolean contains(double lat, double lon) {
+        if(!envelope.contains(lon, lat)) return false;
+        synchronized (prepared) {
+            return prepared.contains(geometry.getFactory().createPoint(new Coordinate(lon, lat)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuumSubscription{id=" + id + ", envelope=" + envelope + ", startTime=" + startTime + ", endTime=" + endTime + "}";
+    }
+
+}
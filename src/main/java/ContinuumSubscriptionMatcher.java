@@ -0,0 +1,126 @@
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Matches the Continuum nodes a transaction adds, moves or reschedules against the {@link ContinuumSubscriptions}.
+ * Before commit it reads position and span of just those nodes, while the transaction can still see them; after commit it
+ * looks up the subscriptions each one matches and hands one batch per subscription to the executor, so listeners never
+ * hold up the commit and never hear about a transaction that rolled back.
+ * A listener that throws loses that batch only, failures are counted as subscriptions.failures.
+ */
+public class ContinuumSubscriptionMatcher implements TransactionEventHandler<List<ContinuumSubscriptionMatcher.Change>> {
+
+    private final ContinuumSubscriptions subscriptions;
+    private final Executor executor;
+    // Continuum, or the label of a partition
+    private final Label label;
+    private final Supplier<ContinuumMetrics> metrics;
+
+    public ContinuumSubscriptionMatcher(ContinuumSubscriptions subscriptions, Executor executor) {
+        this(subscriptions, executor, Label.label("Continuum"), () -> ContinuumMetrics.NOOP);
+    }
+
+    public ContinuumSubscriptionMatcher(ContinuumSubscriptions subscriptions, Executor executor, Label label, Supplier<ContinuumMetrics> metrics) {
+        this.subscriptions = subscriptions;
+        this.executor = executor;
+        this.label = label;
+        this.metrics = metrics;
+    }
+
+    static class Change {
+        final Node node;
+        final double lat;
+        final double lon;
+        final long start;
+        final long end;
+
+        Change(Node node, double lat, double lon, long start, long end) {
+            this.node = node;
+            this.lat = lat;
+            this.lon = lon;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    @Override
+    public List<Change> beforeCommit(TransactionData data) throws Exception {
+        if(subscriptions.size() == 0) return null;
+
+        Set<Node> touched = new HashSet<>();
+        for(LabelEntry entry : data.assignedLabels()) {
+            if(entry.label().equals(label)) touched.add(entry.node());
+        }
+        for(PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+            if(isMatchProperty(entry.key())) touched.add(entry.entity());
+        }
+        for(Relationship relationship : data.createdRelationships()) {
+            if(isTimeLink(relationship)) touched.add(relationship.getStartNode());
+        }
+
+        List<Change> changes = new ArrayList<>();
+        for(Node node : touched) {
+            if(data.isDeleted(node)) continue;
+            try {
+                if(!node.hasLabel(label) || !node.hasProperty("lat") || !node.hasProperty("lon")) continue;
+                long[] span = TimeTreeSpans.spanOf(node);
+                if(span != null) changes.add(new Change(node, (Double) node.getProperty("lat"), (Double) node.getProperty("lon"), span[0], span[1]));
+            } catch (NotFoundException e) {
+                // deleted further down the transaction
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, List<Change> changes) {
+        if(changes == null || changes.isEmpty()) return;
+
+        ContinuumMetrics metrics = this.metrics.get();
+        long matchStart = metrics.startTimer();
+        Map<ContinuumSubscription, List<Node>> matches = new LinkedHashMap<>();
+        for(Change change : changes) {
+            subscriptions.forEachMatch(change.lat, change.lon, change.start, change.end,
+                    t -> matches.computeIfAbsent(t, s -> new ArrayList<>()).add(change.node));
+        }
+        metrics.stopTimer("subscriptions.match", matchStart);
+        if(matches.isEmpty()) return;
+
+        metrics.recordValue("subscriptions.matches", matches.size());
+        matches.forEach((subscription, nodes) -> executor.execute(() -> {
+            try {
+                subscription.getListener().onMatch(subscription, nodes);
+            } catch (RuntimeException e) {
+                this.metrics.get().mark("subscriptions.failures", 1);
+            }
+        }));
+    }
+
+    @Override
+    public void afterRollback(TransactionData data, List<Change> changes) {
+    }
+
+    private static boolean isMatchProperty(String key) {
+        return key.equals("lat") || key.equals("lon") || key.equals(TimeTreeSpans.START_TIME) || key.equals(TimeTreeSpans.END_TIME);
+    }
+
+    private static boolean isTimeLink(Relationship relationship) {
+        return relationship.isType(TimeRelationshipTypes.START_DATE) || relationship.isType(TimeRelationshipTypes.END_DATE) || relationship.isType(TimeRelationshipTypes.EVENT_DATE);
+    }
+
+}
@@ -0,0 +1,147 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the standing subscriptions, so a committed node is only tested against the ones it could match.
+ * Subscriptions are put in every cell of a lat/lon grid their envelope touches; a node only looks at the subscriptions of
+ * its own cell and checks their window. Subscriptions spanning more than MAX_CELLS cells (a continent, the world) would
+ * flood the grid, they are kept in an interval tree over their windows instead and found by the node's time span.
+ * Matching a node costs the subscriptions sharing its cell plus the large ones alive at its time, however many there are elsewhere.
+ * Safe for concurrent readers, writers are serialized.
+ */
+public class ContinuumSubscriptions {
+
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+    private static final int MAX_CELLS = 1024;
+
+    private final double cellDegrees;
+    private final long columns;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, ContinuumSubscription> subscriptions = new HashMap<>();
+    private final Map<Long, List<ContinuumSubscription>> grid = new HashMap<>();
+    // windows of the subscriptions too large for the grid
+    private final IntervalIndex large = new IntervalIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ContinuumSubscriptions() {
+        this(DEFAULT_CELL_DEGREES);
+    }
+
+    public ContinuumSubscriptions(double cellDegrees) {
+        if(!(cellDegrees > 0 && cellDegrees <= 180)) throw new Error("cellDegrees must be in (0, 180]!");
+        this.cellDegrees = cellDegrees;
+        this.columns = column(180) + 1;
+    }
+
+    public ContinuumSubscription subscribe(Geometry geometry, long startTime, long endTime, ContinuumSubscription.Listener listener) {
+        if(geometry == null || geometry.isEmpty()) throw new Error("a subscription needs a geometry!");
+        ContinuumSubscription subscription = new ContinuumSubscription(ids.incrementAndGet(), geometry, startTime, endTime, listener);
+        lock.writeLock().lock();
+        try {
+            subscriptions.put(subscription.getId(), subscription);
+            List<Long> cells = cells(subscription.getEnvelope());
+            if(cells == null) large.add(subscription.getId(), startTime, endTime);
+            else for(long cell : cells) grid.computeIfAbsent(cell, t -> new ArrayList<>()).add(subscription);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return subscription;
+    }
+
+    public boolean unsubscribe(ContinuumSubscription subscription) {
+        lock.writeLock().lock();
+        try {
+            if(subscriptions.remove(subscription.getId()) == null) return false;
+            List<Long> cells = cells(subscription.getEnvelope());
+            if(cells == null) large.remove(subscription.getId());
+            else for(long cell : cells) {
+                List<ContinuumSubscription> inCell = grid.get(cell);
+                inCell.remove(subscription);
+                if(inCell.isEmpty()) grid.remove(cell);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return subscriptions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ContinuumSubscription> getSubscriptions() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(subscriptions.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // every subscription a node at lat/lon alive during [start, end] matches
+    public void forEachMatch(double lat, double lon, long start, long end, Consumer<ContinuumSubscription> visitor) {
+        lock.readLock().lock();
+        try {
+            List<ContinuumSubscription> inCell = grid.get(cell(lat, lon));
+            if(inCell != null) {
+                for(ContinuumSubscription subscription : inCell) {
+                    if(subscription.overlaps(start, end) && subscription.contains(lat, lon)) visitor.accept(subscription);
+                }
+            }
+            large.forEachOverlapping(start, end, id -> {
+                ContinuumSubscription subscription = subscriptions.get(id);
+                if(subscription.contains(lat, lon)) visitor.accept(subscription);
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ContinuumSubscription> getMatches(double lat, double lon, long start, long end) {
+        List<ContinuumSubscription> matches = new ArrayList<>();
+        forEachMatch(lat, lon, start, end, matches::add);
+        return matches;
+    }
+
+    // cells covered by the envelope, null when there are more than MAX_CELLS
+    private List<Long> cells(Envelope envelope) {
+        long fromRow = row(envelope.getMinY());
+        long toRow = row(envelope.getMaxY());
+        long fromColumn = column(envelope.getMinX());
+        long toColumn = column(envelope.getMaxX());
+        if((toRow - fromRow + 1) * (toColumn - fromColumn + 1) > MAX_CELLS) return null;
+        List<Long> cells = new ArrayList<>();
+        for(long row=fromRow;row<=toRow;row++) {
+            for(long column=fromColumn;column<=toColumn;column++) cells.add(row * columns + column);
+        }
+        return cells;
+    }
+
+    private long cell(double lat, double lon) {
+        return row(lat) * columns + column(lon);
+    }
+
+    private long row(double lat) {
+        return (long) Math.floor((Math.max(-90, Math.min(90, lat)) + 90) / cellDegrees);
+    }
+
+    private long column(double lon) {
+        return (long) Math.floor((Math.max(-180, Math.min(180, lon)) + 180) / cellDegrees);
+    }
+
+}
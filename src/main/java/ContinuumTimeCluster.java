@@ -0,0 +1,49 @@
+import org.joda.time.DateTime;
+
+/**
+ * A period of unusual activity found by {@link ContinuumTimeHistogram}.
+ * count is the number of lives starting in the period, peakAlive the most nodes alive at once during it,
+ * score how many times the period's start rate exceeds the average over the whole data set.
+ */
+public class ContinuumTimeCluster {
+
+    private final DateTime start;
+    private final DateTime end;
+    private final long count;
+    private final long peakAlive;
+    private final double score;
+
+    public ContinuumTimeCluster(DateTime start, DateTime end, long count, long peakAlive, double score) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.peakAlive = peakAlive;
+        this.score = score;
+    }
+
+    public DateTime getStart() {
+        return start;
+    }
+
+    public DateTime getEnd() {
+        return end;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getPeakAlive() {
+        return peakAlive;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuumTimeCluster{" + start + " - " + end + ", count=" + count + ", peakAlive=" + peakAlive + ", score=" + score + "}";
+    }
+
+}
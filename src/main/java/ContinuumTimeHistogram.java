@@ -0,0 +1,144 @@
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Single pass histogram of life times with a fixed number of bins, so memory does not depend on the number of nodes.
+ * Bins start one day wide; whenever a time falls outside the covered range, neighbouring bins are merged in pairs
+ * and the range doubles towards that time.
+ * Starts and ends are counted separately, sweeping over them gives the number of nodes alive in every bin.
+ * clusters() segments the start counts with Bayesian blocks (Scargle et al. 2013) and ranks the blocks
+ * whose start rate is above average - bursts of activity.
+ */
+public class ContinuumTimeHistogram {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    // false positive rate of a change point, used for the block prior
+    private static final double P0 = 0.05;
+
+    private final int bins;
+    private long[] starts;
+    private long[] ends;
+    private long origin;
+    private long width = DAY;
+    private long count;
+
+    public ContinuumTimeHistogram(int bins) {
+        if(bins < 2 || Integer.bitCount(bins) != 1) throw new Error("bins must be a power of two!");
+        this.bins = bins;
+        this.starts = new long[bins];
+        this.ends = new long[bins];
+    }
+
+    public void add(long start, long end) {
+        if(start > end) throw new Error("start can't be after end!");
+        if(count == 0) origin = Math.floorDiv(start, DAY) * DAY;
+        cover(start);
+        cover(end);
+        starts[bin(start)]++;
+        ends[bin(end)]++;
+        count++;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getBinWidth() {
+        return width;
+    }
+
+    private int bin(long time) {
+        return (int) ((time - origin) / width);
+    }
+
+    private void cover(long time) {
+        while(time < origin) {
+            origin -= bins * width;
+            widen(bins / 2);
+        }
+        while(time - origin >= bins * width) widen(0);
+    }
+
+    // merges bins in pairs and moves them to offset, the other half of the range is empty
+    private void widen(int offset) {
+        long[] mergedStarts = new long[bins];
+        long[] mergedEnds = new long[bins];
+        for(int i=0;i<bins/2;i++) {
+            mergedStarts[offset + i] = starts[2 * i] + starts[2 * i + 1];
+            mergedEnds[offset + i] = ends[2 * i] + ends[2 * i + 1];
+        }
+        starts = mergedStarts;
+        ends = mergedEnds;
+        width *= 2;
+    }
+
+    // nodes alive during each bin: started up to and including it, minus ended before it
+    public long[] alive() {
+        long[] alive = new long[bins];
+        long running = 0;
+        for(int i=0;i<bins;i++) {
+            running += starts[i];
+            alive[i] = running;
+            running -= ends[i];
+        }
+        return alive;
+    }
+
+    // the maxClusters blocks with the most starts above the average rate, best first
+    public List<ContinuumTimeCluster> clusters(int maxClusters) {
+        if(count == 0) return new ArrayList<>();
+        int first = 0, last = bins - 1;
+        while(starts[first] == 0) first++;
+        while(starts[last] == 0) last--;
+        int n = last - first + 1;
+
+        // best[r] is the fitness of the best partition of [first, first + r], lastChange[r] where its last block starts
+        double prior = 4 - Math.log(73.53 * P0 * Math.pow(count, -0.478));
+        double[] best = new double[n];
+        int[] lastChange = new int[n];
+        for(int r=0;r<n;r++) {
+            long blockCount = 0;
+            best[r] = Double.NEGATIVE_INFINITY;
+            for(int l=r;l>=0;l--) {
+                blockCount += starts[first + l];
+                double fitness = blockCount == 0 ? 0 : blockCount * (Math.log(blockCount) - Math.log(r - l + 1));
+                double total = fitness - prior + (l > 0 ? best[l - 1] : 0);
+                if(total > best[r]) {
+                    best[r] = total;
+                    lastChange[r] = l;
+                }
+            }
+        }
+
+        long[] alive = alive();
+        double meanRate = (double) count / n;
+        List<ContinuumTimeCluster> clusters = new ArrayList<>();
+        List<Double> excess = new ArrayList<>();
+        for(int r=n-1;r>=0;r=lastChange[r]-1) {
+            int l = lastChange[r];
+            long blockCount = 0, peak = 0;
+            for(int i=l;i<=r;i++) {
+                blockCount += starts[first + i];
+                peak = Math.max(peak, alive[first + i]);
+            }
+            double rate = (double) blockCount / (r - l + 1);
+            if(rate <= meanRate) continue;
+            clusters.add(new ContinuumTimeCluster(
+                    new DateTime(origin + (first + l) * width, DateTimeZone.UTC),
+                    new DateTime(origin + (first + r + 1) * width - 1, DateTimeZone.UTC),
+                    blockCount, peak, rate / meanRate));
+            excess.add(blockCount - meanRate * (r - l + 1));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for(int i=0;i<clusters.size();i++) order.add(i);
+        order.sort(Comparator.comparingDouble(i -> -excess.get(i)));
+        return order.stream().limit(maxClusters).map(clusters::get).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * Start and end epoch millis of many Continuum nodes, kept in primitive arrays instead of one object per node.
+ * Single instant events have the same start and end.
+ */
+public class ContinuumTimePoints {
+
+    private long[] ids;
+    private long[] starts;
+    private long[] ends;
+    private int size;
+
+    public ContinuumTimePoints() {
+        this(1024);
+    }
+
+    public ContinuumTimePoints(int capacity) {
+        ids = new long[Math.max(1, capacity)];
+        starts = new long[ids.length];
+        ends = new long[ids.length];
+    }
+
+    public void add(long nodeId, long start, long end) {
+        if(size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        ids[size] = nodeId;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getNodeId(int index) {
+        return ids[checked(index)];
+    }
+
+    public long getStart(int index) {
+        return starts[checked(index)];
+    }
+
+    public long getEnd(int index) {
+        return ends[checked(index)];
+    }
+
+    public boolean isInstant(int index) {
+        return starts[checked(index)] == ends[index];
+    }
+
+    public LongStream starts() {
+        return Arrays.stream(starts, 0, size);
+    }
+
+    public LongStream ends() {
+        return Arrays.stream(ends, 0, size);
+    }
+
+    private int checked(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        return index;
+    }
+
+}
@@ -1,19 +1,19 @@
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.RelationshipType;
 
 /**
  * Created by user on 03/08/2016.
  */
 public class ContinuumValidator {
 
+    // the time properties, or a link to the TimeTree for nodes that were not backfilled yet
     public static boolean continuumNodeHasTimeReference(Node node) {
-        return (node.hasRelationship(Direction.INCOMING, RelationshipType.withName("startTime")) && node.hasRelationship(Direction.INCOMING, RelationshipType.withName("endTime")))
-                || node.hasRelationship(Direction.INCOMING, RelationshipType.withName("eventTime"));
+        return (node.hasProperty(TimeTreeSpans.START_TIME) && node.hasProperty(TimeTreeSpans.END_TIME))
+                || node.hasRelationship(Direction.OUTGOING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.EVENT_DATE);
     }
 
     public static boolean continuumNodeHasLocation(Node node) {
-        return node.hasRelationship(Direction.INCOMING, RelationshipType.withName("RTREEREFERENCE")) && node.hasProperty("lat") && node.hasProperty("lon");
+        return node.hasRelationship(Direction.INCOMING, SpaceRelationshipTypes.RTREEREFERENCE) && node.hasProperty("lat") && node.hasProperty("lon");
     }
 
 }
@@ -0,0 +1,42 @@
+import com.vividsolutions.jts.geom.Geometry;
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Queries the Continuum layer R-tree and the interval index independently and lets the
+ * {@link ContinuumQueryPlanner} join them. Both indexes are maintained by Continuum itself.
+ */
+public class DualIndexEngine implements ContinuumIndexEngine {
+
+    private final Supplier<Layer> layer;
+    private final Supplier<IntervalIndex> intervals;
+    private final ContinuumQueryPlanner queryPlanner;
+
+    public DualIndexEngine(GraphDatabaseService db, Supplier<Layer> layer, Supplier<IntervalIndex> intervals) {
+        this(db, layer, intervals, () -> ContinuumMetrics.NOOP);
+    }
+
+    public DualIndexEngine(GraphDatabaseService db, Supplier<Layer> layer, Supplier<IntervalIndex> intervals, Supplier<ContinuumMetrics> metrics) {
+        this.layer = layer;
+        this.intervals = intervals;
+        this.queryPlanner = new ContinuumQueryPlanner(db, metrics);
+    }
+
+    @Override
+    public void add(long nodeId, double lat, double lon, long startTime, long endTime) {
+    }
+
+    @Override
+    public void remove(long nodeId) {
+    }
+
+    @Override
+    public Stream<Node> stream(Geometry geometryToSearchIn, long startTime, long endTime) {
+        return queryPlanner.stream(layer.get(), geometryToSearchIn, intervals.get(), startTime, endTime);
+    }
+
+}
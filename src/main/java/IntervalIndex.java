@@ -0,0 +1,381 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory interval tree over [start, end] epoch millis, keyed by node id.
+ * Intervals are kept in an AVL tree ordered by start and augmented with the largest end of every subtree, so overlap
+ * and containment queries only descend into subtrees that can hold a match: O(log n + k).
+ * A second tree ordered by end gives an O(log n) count of overlapping intervals, used by the query planner.
+ * Safe for concurrent readers, writers are serialized.
+ */
+public class IntervalIndex {
+
+    private final AugmentedTree byStart = new AugmentedTree();
+    private final AugmentedTree byEnd = new AugmentedTree();
+    private final Map<Long, long[]> intervals = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final int ITERATOR_CHUNK_SIZE = 256;
+
+    // adding an id that is already indexed replaces its interval
+    public void add(long id, long start, long end) {
+        if(start > end) throw new Error("start can't be after end!");
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            intervals.put(id, new long[]{start, end});
+            byStart.root = byStart.insert(byStart.root, start, id, end);
+            byEnd.root = byEnd.insert(byEnd.root, end, id, start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            intervals.clear();
+            byStart.root = null;
+            byEnd.root = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return intervals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // returns {start, end} or null if the id is not indexed
+    public long[] get(long id) {
+        lock.readLock().lock();
+        try {
+            long[] interval = intervals.get(id);
+            return interval == null ? null : interval.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean overlaps(long id, long start, long end) {
+        lock.readLock().lock();
+        try {
+            long[] interval = intervals.get(id);
+            return interval != null && interval[0] <= end && interval[1] >= start;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEachInterval(IntervalVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            intervals.forEach((id, interval) -> visitor.visit(id, interval[0], interval[1]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // everything that starts before the window ends, minus everything that ended before the window started
+    public long countOverlapping(long start, long end) {
+        lock.readLock().lock();
+        try {
+            return byStart.countAtMost(byStart.root, end) - byEnd.countLess(byEnd.root, start);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // intervals sharing at least one instant with [start, end], ordered by start
+    public List<Long> getOverlapping(long start, long end) {
+        List<Long> result = new ArrayList<>();
+        forEachOverlapping(start, end, result::add);
+        return result;
+    }
+
+    // the visitor returns false to stop the walk; returns false if the walk was stopped
+    public boolean forEachOverlapping(long start, long end, LongPredicate visitor) {
+        lock.readLock().lock();
+        try {
+            return byStart.visitOverlapping(byStart.root, start, end, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // like forEachOverlapping, but only visits intervals ordered after (afterStart, afterId)
+    // this is what lets a scan resume from a cursor in O(log n)
+    public boolean forEachOverlappingAfter(long start, long end, long afterStart, long afterId, LongPredicate visitor) {
+        lock.readLock().lock();
+        try {
+            return byStart.visitOverlappingAfter(byStart.root, start, end, afterStart, afterId, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // lazily walks the overlapping intervals ordered by (start, id), resuming after (afterStart, afterId)
+    // ids are fetched in small chunks, no lock is held between two calls to next()
+    public Iterator<Long> iterateOverlapping(long start, long end, long afterStart, long afterId) {
+        return new Iterator<Long>() {
+            private final Deque<Long> chunk = new ArrayDeque<>();
+            private long lastStart = afterStart;
+            private long lastId = afterId;
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                if(chunk.isEmpty() && !exhausted) fetch();
+                return !chunk.isEmpty();
+            }
+
+            @Override
+            public Long next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return chunk.poll();
+            }
+
+            private void fetch() {
+                lock.readLock().lock();
+                try {
+                    exhausted = byStart.visitOverlappingAfter(byStart.root, start, end, lastStart, lastId, id -> {
+                        chunk.add(id);
+                        lastStart = intervals.get(id)[0];
+                        lastId = id;
+                        return chunk.size() < ITERATOR_CHUNK_SIZE;
+                    });
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    public Iterator<Long> iterateOverlapping(long start, long end) {
+        return iterateOverlapping(start, end, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    // intervals lying entirely inside [start, end]
+    public List<Long> getContainedIn(long start, long end) {
+        List<Long> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            byStart.visitContainedIn(byStart.root, start, end, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // intervals spanning the whole of [start, end]
+    public List<Long> getCovering(long start, long end) {
+        List<Long> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            byStart.visitCovering(byStart.root, start, end, result);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public interface IntervalVisitor {
+        void visit(long id, long start, long end);
+    }
+
+    private boolean removeInternal(long id) {
+        long[] interval = intervals.remove(id);
+        if(interval == null) return false;
+        byStart.root = byStart.delete(byStart.root, interval[0], id);
+        byEnd.root = byEnd.delete(byEnd.root, interval[1], id);
+        return true;
+    }
+
+    private static final class Entry {
+        final long key;
+        final long id;
+        final long value;
+        long maxValue;
+        int height = 1;
+        int size = 1;
+        Entry left;
+        Entry right;
+
+        Entry(long key, long id, long value) {
+            this.key = key;
+            this.id = id;
+            this.value = value;
+            this.maxValue = value;
+        }
+    }
+
+    // AVL tree ordered by (key, id), every entry knows the size and the largest value of its subtree
+    private static final class AugmentedTree {
+
+        Entry root;
+
+        Entry insert(Entry entry, long key, long id, long value) {
+            if(entry == null) return new Entry(key, id, value);
+            if(compare(key, id, entry) < 0) entry.left = insert(entry.left, key, id, value);
+            else entry.right = insert(entry.right, key, id, value);
+            return balance(entry);
+        }
+
+        Entry delete(Entry entry, long key, long id) {
+            if(entry == null) return null;
+            int comparison = compare(key, id, entry);
+            if(comparison < 0) entry.left = delete(entry.left, key, id);
+            else if(comparison > 0) entry.right = delete(entry.right, key, id);
+            else {
+                if(entry.left == null) return entry.right;
+                if(entry.right == null) return entry.left;
+                Entry successor = entry.right;
+                while(successor.left != null) successor = successor.left;
+                successor.right = deleteMin(entry.right);
+                successor.left = entry.left;
+                return balance(successor);
+            }
+            return balance(entry);
+        }
+
+        long countLess(Entry entry, long key) {
+            long count = 0;
+            while(entry != null) {
+                if(entry.key < key) {
+                    count += size(entry.left) + 1;
+                    entry = entry.right;
+                }
+                else entry = entry.left;
+            }
+            return count;
+        }
+
+        long countAtMost(Entry entry, long key) {
+            long count = 0;
+            while(entry != null) {
+                if(entry.key <= key) {
+                    count += size(entry.left) + 1;
+                    entry = entry.right;
+                }
+                else entry = entry.left;
+            }
+            return count;
+        }
+
+        boolean visitOverlappingAfter(Entry entry, long start, long end, long afterKey, long afterId, LongPredicate visitor) {
+            if(entry == null || entry.maxValue < start) return true;
+            boolean isAfter = compare(afterKey, afterId, entry) < 0;
+            if(isAfter && !visitOverlappingAfter(entry.left, start, end, afterKey, afterId, visitor)) return false;
+            if(entry.key > end) return true;
+            if(isAfter && entry.value >= start && !visitor.test(entry.id)) return false;
+            return visitOverlappingAfter(entry.right, start, end, afterKey, afterId, visitor);
+        }
+
+        // key = start, value = end
+        boolean visitOverlapping(Entry entry, long start, long end, LongPredicate visitor) {
+            if(entry == null || entry.maxValue < start) return true;
+            if(!visitOverlapping(entry.left, start, end, visitor)) return false;
+            if(entry.key > end) return true;
+            if(entry.value >= start && !visitor.test(entry.id)) return false;
+            return visitOverlapping(entry.right, start, end, visitor);
+        }
+
+        void visitContainedIn(Entry entry, long start, long end, List<Long> result) {
+            if(entry == null) return;
+            if(entry.key >= start) visitContainedIn(entry.left, start, end, result);
+            if(entry.key >= start && entry.key <= end && entry.value <= end) result.add(entry.id);
+            if(entry.key <= end) visitContainedIn(entry.right, start, end, result);
+        }
+
+        void visitCovering(Entry entry, long start, long end, List<Long> result) {
+            if(entry == null || entry.maxValue < end) return;
+            visitCovering(entry.left, start, end, result);
+            if(entry.key > start) return;
+            if(entry.value >= end) result.add(entry.id);
+            visitCovering(entry.right, start, end, result);
+        }
+
+        private Entry deleteMin(Entry entry) {
+            if(entry.left == null) return entry.right;
+            entry.left = deleteMin(entry.left);
+            return balance(entry);
+        }
+
+        private Entry balance(Entry entry) {
+            update(entry);
+            int balance = height(entry.left) - height(entry.right);
+            if(balance > 1) {
+                if(height(entry.left.left) < height(entry.left.right)) entry.left = rotateLeft(entry.left);
+                return rotateRight(entry);
+            }
+            if(balance < -1) {
+                if(height(entry.right.right) < height(entry.right.left)) entry.right = rotateRight(entry.right);
+                return rotateLeft(entry);
+            }
+            return entry;
+        }
+
+        private Entry rotateRight(Entry entry) {
+            Entry left = entry.left;
+            entry.left = left.right;
+            left.right = entry;
+            update(entry);
+            update(left);
+            return left;
+        }
+
+        private Entry rotateLeft(Entry entry) {
+            Entry right = entry.right;
+            entry.right = right.left;
+            right.left = entry;
+            update(entry);
+            update(right);
+            return right;
+        }
+
+        private static void update(Entry entry) {
+            entry.height = 1 + Math.max(height(entry.left), height(entry.right));
+            entry.size = 1 + size(entry.left) + size(entry.right);
+            entry.maxValue = entry.value;
+            if(entry.left != null) entry.maxValue = Math.max(entry.maxValue, entry.left.maxValue);
+            if(entry.right != null) entry.maxValue = Math.max(entry.maxValue, entry.right.maxValue);
+        }
+
+        private static int height(Entry entry) {
+            return entry == null ? 0 : entry.height;
+        }
+
+        private static int size(Entry entry) {
+            return entry == null ? 0 : entry.size;
+        }
+
+        private static int compare(long key, long id, Entry entry) {
+            int comparison = Long.compare(key, entry.key);
+            return comparison != 0 ? comparison : Long.compare(id, entry.id);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Maps lon/lat coordinates onto a Hilbert curve, so that points close in space get close keys.
+ * Sorting a batch by this key before inserting it into the R-tree keeps each leaf spatially compact.
+ */
+public class SpaceFillingCurve {
+
+    // 2^16 cells on each axis
+    public static final int ORDER = 16;
+    private static final long SIDE = 1L << ORDER;
+
+    public static long hilbertIndex(double lon, double lat) {
+        return hilbertIndex(toCell(lon, -180, 180), toCell(lat, -90, 90));
+    }
+
+    // classic xy -> d conversion, see https://en.wikipedia.org/wiki/Hilbert_curve
+    public static long hilbertIndex(long x, long y) {
+        long d = 0;
+        for (long s = SIDE / 2; s > 0; s /= 2) {
+            long rx = (x & s) > 0 ? 1 : 0;
+            long ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = SIDE - 1 - x;
+                    y = SIDE - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    // values outside [min, max] are clamped to the border cells
+    static long toCell(double value, double min, double max) {
+        long cell = (long) ((value - min) / (max - min) * SIDE);
+        return Math.max(0, Math.min(SIDE - 1, cell));
+    }
+
+}
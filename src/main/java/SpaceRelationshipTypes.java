@@ -5,6 +5,12 @@ import org.neo4j.graphdb.RelationshipType;
  */
 public class SpaceRelationshipTypes {
 
-    public final static RelationshipType RTREEREFERENCE = RelationshipType.withName("RTREEREFERENCE");
+    // names used by the neo4j-spatial R-tree
+    public final static RelationshipType RTREEREFERENCE = RelationshipType.withName("RTREE_REFERENCE");
+    public final static RelationshipType RTREE_ROOT = RelationshipType.withName("RTREE_ROOT");
+    public final static RelationshipType RTREE_CHILD = RelationshipType.withName("RTREE_CHILD");
+    public final static RelationshipType RTREE_METADATA = RelationshipType.withName("RTREE_METADATA");
+    // from the spatial root to each layer
+    public final static RelationshipType LAYER = RelationshipType.withName("LAYER");
 
 }
@@ -0,0 +1,84 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps every Continuum node once in a {@link SpaceTimeRTree}, so a query prunes space and time in a single descent
+ * and only the candidates in the envelope and the window are checked against the exact geometry.
+ * The tree is bulk loaded from the committed graph the first time it is needed and then kept in sync by Continuum after every commit.
+ */
+public class SpaceTimeIndexEngine implements ContinuumIndexEngine {
+
+    private final GraphDatabaseService db;
+    private final Supplier<Layer> layer;
+    private final Supplier<IntervalIndex> intervals;
+    private volatile SpaceTimeRTree tree;
+
+    public SpaceTimeIndexEngine(GraphDatabaseService db, Supplier<Layer> layer, Supplier<IntervalIndex> intervals) {
+        this.db = db;
+        this.layer = layer;
+        this.intervals = intervals;
+    }
+
+    // before the first query the graph is the only copy, the bulk load will pick the node up
+    // waits for a bulk load in progress, which might have read the node before its commit
+    @Override
+    public synchronized void add(long nodeId, double lat, double lon, long startTime, long endTime) {
+        if(tree != null) tree.add(nodeId, lon, lat, startTime, endTime);
+    }
+
+    @Override
+    public synchronized void remove(long nodeId) {
+        if(tree != null) tree.remove(nodeId);
+    }
+
+    @Override
+    // only the candidate ids are collected up front, nodes are loaded and checked as the stream is consumed
+    public Stream<Node> stream(Geometry geometryToSearchIn, long startTime, long endTime) {
+        Layer continuumLayer = layer.get();
+        Envelope envelope = geometryToSearchIn.getEnvelopeInternal();
+        return tree().search(envelope.getMinX(), envelope.getMinY(), startTime, envelope.getMaxX(), envelope.getMaxY(), endTime)
+                .stream()
+                .map(t -> db.getNodeById(t))
+                .filter(t -> ContinuumQueryPlanner.isInGeometry(continuumLayer, t, geometryToSearchIn));
+    }
+
+    // the interval index is resolved first, it has a lock of its own that Continuum holds while it calls add and remove
+    // the load runs on another thread, so the coordinates of the caller's uncommitted writes can't get into the tree
+    private SpaceTimeRTree tree() {
+        if(tree == null) {
+            IntervalIndex index = intervals.get();
+            synchronized (this) {
+                if(tree == null) tree = CompletableFuture.supplyAsync(() -> buildTree(index)).join();
+            }
+        }
+        return tree;
+    }
+
+    // the time spans come from the interval index, the coordinates from the nodes
+    private SpaceTimeRTree buildTree(IntervalIndex index) {
+        List<double[]> points = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            index.forEachInterval((id, start, end) -> {
+                Node node = db.getNodeById(id);
+                if(node.hasProperty("lat") && node.hasProperty("lon")) {
+                    points.add(new double[]{id, (Double) node.getProperty("lon"), (Double) node.getProperty("lat"), start, end});
+                }
+            });
+            tx.success();
+        }
+        SpaceTimeRTree built = new SpaceTimeRTree();
+        built.bulkLoad(points);
+        return built;
+    }
+
+}
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory 3D R-tree over (lon, lat, time), every node id is stored once as a box
+ * {lon, lat, start} - {lon, lat, end}, so a range query prunes space and time in the same descent.
+ * Supports incremental inserts and deletes (Guttman, quadratic split) and STR bulk loading.
+ * Safe for concurrent readers, writers are serialized.
+ */
+public class SpaceTimeRTree {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+    // one day weighs as much as one degree when comparing box sizes
+    private static final double TIME_SCALE = 1.0 / 86400000;
+
+    private RNode root = new RNode(true);
+    private final Map<Long, RNode> leafOf = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // adding an id that is already indexed replaces its box
+    public void add(long id, double lon, double lat, long start, long end) {
+        if(start > end) throw new Error("start can't be after end!");
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            insert(new Entry(new double[]{lon, lat, start, lon, lat, end}, id, null), height());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return leafOf.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // replaces the whole content with a tree packed by Sort-Tile-Recursive, much tighter than repeated inserts
+    // each element of points is {id, lon, lat, start, end}
+    public void bulkLoad(List<double[]> points) {
+        List<Entry> entries = new ArrayList<>(points.size());
+        for(double[] point : points) {
+            entries.add(new Entry(new double[]{point[1], point[2], point[3], point[1], point[2], point[4]}, (long) point[0], null));
+        }
+        lock.writeLock().lock();
+        try {
+            leafOf.clear();
+            List<RNode> level = pack(entries, true);
+            while(level.size() > 1) {
+                List<Entry> parents = new ArrayList<>(level.size());
+                for(RNode node : level) parents.add(new Entry(node.box(), 0, node));
+                level = pack(parents, false);
+            }
+            root = level.isEmpty() ? new RNode(true) : level.get(0);
+            root.parent = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ids whose box intersects [minLon, maxLon] x [minLat, maxLat] x [start, end]
+    public List<Long> search(double minLon, double minLat, long start, double maxLon, double maxLat, long end) {
+        List<Long> result = new ArrayList<>();
+        forEach(minLon, minLat, start, maxLon, maxLat, end, result::add);
+        return result;
+    }
+
+    // the visitor returns false to stop the search; returns false if the search was stopped
+    public boolean forEach(double minLon, double minLat, long start, double maxLon, double maxLat, long end, LongPredicate visitor) {
+        double[] query = {minLon, minLat, start, maxLon, maxLat, end};
+        lock.readLock().lock();
+        try {
+            return search(root, query, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean search(RNode node, double[] query, LongPredicate visitor) {
+        for(Entry entry : node.entries) {
+            if(!intersects(entry.box, query)) continue;
+            if(node.leaf) {
+                if(!visitor.test(entry.id)) return false;
+            }
+            else if(!search(entry.child, query, visitor)) return false;
+        }
+        return true;
+    }
+
+    private boolean removeInternal(long id) {
+        RNode leaf = leafOf.remove(id);
+        if(leaf == null) return false;
+        leaf.entries.removeIf(t -> t.id == id);
+        condense(leaf);
+        return true;
+    }
+
+    // inserts the entry at the given depth, leaves are at depth height() and the root at depth 0
+    private void insert(Entry entry, int depth) {
+        RNode node = root;
+        for(int level = 0; level < depth; level++) {
+            Entry best = null;
+            double bestEnlargement = Double.MAX_VALUE;
+            for(Entry candidate : node.entries) {
+                double enlargement = margin(union(candidate.box, entry.box)) - margin(candidate.box);
+                if(enlargement < bestEnlargement || (enlargement == bestEnlargement && margin(candidate.box) < margin(best.box))) {
+                    best = candidate;
+                    bestEnlargement = enlargement;
+                }
+            }
+            best.box = union(best.box, entry.box);
+            node = best.child;
+        }
+        node.add(entry, leafOf);
+        if(node.entries.size() > MAX_ENTRIES) split(node);
+    }
+
+    private void split(RNode node) {
+        List<Entry> entries = new ArrayList<>(node.entries);
+        node.entries.clear();
+        RNode sibling = new RNode(node.leaf);
+
+        // quadratic split, start with the two entries that would waste the most space together
+        Entry seedA = null, seedB = null;
+        double worst = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < entries.size(); i++) {
+            for(int j = i + 1; j < entries.size(); j++) {
+                double waste = margin(union(entries.get(i).box, entries.get(j).box)) - margin(entries.get(i).box) - margin(entries.get(j).box);
+                if(waste > worst) {
+                    worst = waste;
+                    seedA = entries.get(i);
+                    seedB = entries.get(j);
+                }
+            }
+        }
+        entries.remove(seedA);
+        entries.remove(seedB);
+        node.add(seedA, leafOf);
+        sibling.add(seedB, leafOf);
+        double[] boxA = seedA.box.clone();
+        double[] boxB = seedB.box.clone();
+        while(!entries.isEmpty()) {
+            if(node.entries.size() + entries.size() == MIN_ENTRIES) {
+                for(Entry entry : entries) node.add(entry, leafOf);
+                break;
+            }
+            if(sibling.entries.size() + entries.size() == MIN_ENTRIES) {
+                for(Entry entry : entries) sibling.add(entry, leafOf);
+                break;
+            }
+            Entry entry = entries.remove(entries.size() - 1);
+            double growthA = margin(union(boxA, entry.box)) - margin(boxA);
+            double growthB = margin(union(boxB, entry.box)) - margin(boxB);
+            if(growthA < growthB || (growthA == growthB && node.entries.size() <= sibling.entries.size())) {
+                node.add(entry, leafOf);
+                boxA = union(boxA, entry.box);
+            }
+            else {
+                sibling.add(entry, leafOf);
+                boxB = union(boxB, entry.box);
+            }
+        }
+
+        if(node == root) {
+            RNode newRoot = new RNode(false);
+            newRoot.add(new Entry(node.box(), 0, node), leafOf);
+            newRoot.add(new Entry(sibling.box(), 0, sibling), leafOf);
+            root = newRoot;
+            return;
+        }
+        RNode parent = node.parent;
+        parent.entryOf(node).box = node.box();
+        parent.add(new Entry(sibling.box(), 0, sibling), leafOf);
+        if(parent.entries.size() > MAX_ENTRIES) split(parent);
+    }
+
+    // removes underfull nodes on the way up and reinserts their entries, then shrinks the boxes
+    private void condense(RNode node) {
+        List<RNode> orphans = new ArrayList<>();
+        while(node != root) {
+            RNode parent = node.parent;
+            if(node.entries.size() < MIN_ENTRIES) {
+                parent.entries.remove(parent.entryOf(node));
+                orphans.add(node);
+            }
+            else parent.entryOf(node).box = node.box();
+            node = parent;
+        }
+        if(!root.leaf && root.entries.isEmpty()) root = new RNode(true);
+        shrinkRoot();
+        for(RNode orphan : orphans) reinsert(orphan);
+        shrinkRoot();
+    }
+
+    private void shrinkRoot() {
+        while(!root.leaf && root.entries.size() == 1) {
+            root = root.entries.get(0).child;
+            root.parent = null;
+        }
+    }
+
+    private void reinsert(RNode orphan) {
+        for(Entry entry : orphan.entries) {
+            if(orphan.leaf) insert(entry, height());
+            else reinsert(entry.child);
+        }
+    }
+
+    private int height() {
+        int height = 0;
+        for(RNode node = root; !node.leaf; node = node.entries.get(0).child) height++;
+        return height;
+    }
+
+    // Sort-Tile-Recursive: tile by lon, then by lat, then by time, and cut runs of MAX_ENTRIES
+    private List<RNode> pack(List<Entry> entries, boolean leaf) {
+        List<RNode> nodes = new ArrayList<>();
+        if(entries.isEmpty()) return nodes;
+        int nodeCount = (entries.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int slices = (int) Math.ceil(Math.cbrt(nodeCount));
+        for(List<Entry> lonSlice : tile(entries, 0, slices * slices * MAX_ENTRIES)) {
+            for(List<Entry> latSlice : tile(lonSlice, 1, slices * MAX_ENTRIES)) {
+                for(List<Entry> run : tile(latSlice, 2, MAX_ENTRIES)) {
+                    RNode node = new RNode(leaf);
+                    for(Entry entry : run) node.add(entry, leafOf);
+                    nodes.add(node);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static List<List<Entry>> tile(List<Entry> entries, int dimension, int tileSize) {
+        entries.sort(Comparator.comparingDouble(t -> t.box[dimension] + t.box[dimension + 3]));
+        List<List<Entry>> tiles = new ArrayList<>();
+        for(int i = 0; i < entries.size(); i += tileSize) {
+            tiles.add(new ArrayList<>(entries.subList(i, Math.min(entries.size(), i + tileSize))));
+        }
+        return tiles;
+    }
+
+    private static boolean intersects(double[] a, double[] b) {
+        return a[0] <= b[3] && a[3] >= b[0] && a[1] <= b[4] && a[4] >= b[1] && a[2] <= b[5] && a[5] >= b[2];
+    }
+
+    private static double[] union(double[] a, double[] b) {
+        return new double[]{
+                Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.min(a[2], b[2]),
+                Math.max(a[3], b[3]), Math.max(a[4], b[4]), Math.max(a[5], b[5])};
+    }
+
+    // sum of the extents, unlike the volume it still tells apart boxes that are flat in some dimension
+    private static double margin(double[] box) {
+        return (box[3] - box[0]) + (box[4] - box[1]) + (box[5] - box[2]) * TIME_SCALE;
+    }
+
+    private static final class Entry {
+        double[] box;
+        final long id;
+        final RNode child;
+
+        Entry(double[] box, long id, RNode child) {
+            this.box = box;
+            this.id = id;
+            this.child = child;
+        }
+    }
+
+    private static final class RNode {
+        final boolean leaf;
+        final List<Entry> entries = new ArrayList<>(MAX_ENTRIES + 1);
+        RNode parent;
+
+        RNode(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(Entry entry, Map<Long, RNode> leafOf) {
+            entries.add(entry);
+            if(leaf) leafOf.put(entry.id, this);
+            else entry.child.parent = this;
+        }
+
+        Entry entryOf(RNode child) {
+            for(Entry entry : entries) {
+                if(entry.child == child) return entry;
+            }
+            throw new IllegalStateException("node is not a child of its parent");
+        }
+
+        double[] box() {
+            double[] box = entries.get(0).box.clone();
+            for(Entry entry : entries) box = union(box, entry.box);
+            return box;
+        }
+    }
+
+}
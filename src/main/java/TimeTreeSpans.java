@@ -0,0 +1,109 @@
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Converts between Continuum time spans and the day instants of the TimeTree.
+ * The TimeTree works at day resolution in UTC, so a span always starts at the beginning of its first day
+ * and ends with the last millisecond of its last day.
+ */
+public class TimeTreeSpans {
+
+    private static final DateTimeZone UTC = DateTimeZone.forTimeZone(TimeZone.getTimeZone("UTC"));
+    private static final String VALUE = "value";
+
+    // epoch millis as given to Continuum, kept on the node next to the TimeTree links
+    public static final String START_TIME = "startTime";
+    public static final String END_TIME = "endTime";
+
+    public static long startOfDay(DateTime dateTime) {
+        return dateTime.withZone(UTC).withTimeAtStartOfDay().getMillis();
+    }
+
+    public static long endOfDay(DateTime dateTime) {
+        return dateTime.withZone(UTC).withTimeAtStartOfDay().plusDays(1).getMillis() - 1;
+    }
+
+    // start of the day represented by a Day instant, read from the Year and Month above it
+    public static long startOfDay(Node dayInstant) {
+        Node month = parent(dayInstant);
+        Node year = parent(month);
+        return new DateTime((Integer) year.getProperty(VALUE), (Integer) month.getProperty(VALUE), (Integer) dayInstant.getProperty(VALUE), 0, 0, UTC).getMillis();
+    }
+
+    // {start, end} of a single Continuum node at day resolution, or null if it has no time
+    public static long[] spanOf(Node continuumNode) {
+        long[] times = timesOf(continuumNode);
+        return times == null ? null : new long[]{startOfDay(new DateTime(times[0], UTC)), endOfDay(new DateTime(times[1], UTC))};
+    }
+
+    // {start, end} as given to Continuum, a property read
+    // nodes written before the properties existed fall back to the TimeTree until backfilled, see Continuum.backfillTimeProperties
+    public static long[] timesOf(Node continuumNode) {
+        Object start = continuumNode.getProperty(START_TIME, null);
+        Object end = continuumNode.getProperty(END_TIME, null);
+        if(start != null && end != null) return new long[]{(Long) start, (Long) end};
+        return timesFromTimeTree(continuumNode);
+    }
+
+    // the start of the first and of the last day the node is attached to, or null
+    public static long[] timesFromTimeTree(Node continuumNode) {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for(Relationship timeRel : continuumNode.getRelationships(Direction.OUTGOING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.END_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+            long dayStart = startOfDay(timeRel.getEndNode());
+            if(!timeRel.isType(TimeRelationshipTypes.END_DATE)) start = Math.min(start, dayStart);
+            if(!timeRel.isType(TimeRelationshipTypes.START_DATE)) end = Math.max(end, dayStart);
+        }
+        return start <= end ? new long[]{start, end} : null;
+    }
+
+    // walks the tree top down once and returns {start, end} for every node attached to one of its days
+    public static Map<Long, long[]> collectSpans(Node timeTreeRoot) {
+        Map<Long, long[]> spans = new HashMap<>();
+        for(Relationship toYear : timeTreeRoot.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+            collectYearSpans(toYear.getEndNode(), spans);
+        }
+        return complete(spans);
+    }
+
+    // partial spans of a single year, a node may start in one year and end in another,
+    // so yearly results have to be merged before calling complete
+    public static void collectYearSpans(Node year, Map<Long, long[]> spans) {
+        for(Relationship toMonth : year.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+            Node month = toMonth.getEndNode();
+            for(Relationship toDay : month.getRelationships(Direction.OUTGOING, TimeTreeRelationshipTypes.CHILD)) {
+                Node day = toDay.getEndNode();
+                long dayStart = new DateTime((Integer) year.getProperty(VALUE), (Integer) month.getProperty(VALUE), (Integer) day.getProperty(VALUE), 0, 0, UTC).getMillis();
+                long dayEnd = new DateTime(dayStart, UTC).plusDays(1).getMillis() - 1;
+                for(Relationship timeRel : day.getRelationships(Direction.INCOMING, TimeRelationshipTypes.START_DATE, TimeRelationshipTypes.END_DATE, TimeRelationshipTypes.EVENT_DATE)) {
+                    long[] span = spans.computeIfAbsent(timeRel.getStartNode().getId(), t -> new long[]{Long.MAX_VALUE, Long.MIN_VALUE});
+                    if(!timeRel.isType(TimeRelationshipTypes.END_DATE)) span[0] = Math.min(span[0], dayStart);
+                    if(!timeRel.isType(TimeRelationshipTypes.START_DATE)) span[1] = Math.max(span[1], dayEnd);
+                }
+            }
+        }
+    }
+
+    public static void merge(Map<Long, long[]> into, Map<Long, long[]> from) {
+        from.forEach((id, span) -> into.merge(id, span, (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])}));
+    }
+
+    // drops half attached nodes
+    public static Map<Long, long[]> complete(Map<Long, long[]> spans) {
+        spans.values().removeIf(t -> t[0] > t[1]);
+        return spans;
+    }
+
+    static Node parent(Node instant) {
+        return instant.getSingleRelationship(TimeTreeRelationshipTypes.CHILD, Direction.INCOMING).getStartNode();
+    }
+
+}
@@ -0,0 +1,129 @@
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ContinuumAggregatorTest {
+
+    private GraphDatabaseService db;
+    private TimeTree timeTree;
+    private ContinuumAggregator aggregator = new ContinuumAggregator("works", "profession", "plays");
+
+    @Before
+    public void setUp() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        timeTree = new SingleTimeTree(db);
+        db.registerTransactionEventHandler(new ContinuumAggregationUpdater(Collections.singletonMap("works", aggregator), root -> root.hasLabel(TimeTreeLabels.TimeTreeRoot)));
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void shouldSummarizeRangesAndBuckets() {
+        try (Transaction tx = db.beginTx()) {
+            attach(new DateTime(1921, 3, 5, 0, 0, DateTimeZone.UTC), "writer", 10);
+            attach(new DateTime(1925, 7, 1, 0, 0, DateTimeZone.UTC), "writer", 4);
+            attach(new DateTime(1925, 7, 20, 0, 0, DateTimeZone.UTC), "painter", null);
+            attach(new DateTime(1931, 1, 1, 0, 0, DateTimeZone.UTC), "writer", 7);
+            tx.success();
+        }
+        try (Transaction tx = db.beginTx()) {
+            Node root = db.findNodes(TimeTreeLabels.TimeTreeRoot).next();
+
+            ContinuumAggregate twenties = aggregator.summarize(root, millis(1920, 1, 1), millis(1930, 1, 1) - 1);
+            Assert.isTrue(twenties.getCount() == 3);
+            Assert.isTrue(twenties.getCount("writer") == 2 && twenties.getCount("painter") == 1);
+            Assert.isTrue(twenties.getSum() == 14 && twenties.getMin() == 4 && twenties.getMax() == 10);
+
+            // partially covered months are read day by day
+            Assert.isTrue(aggregator.summarize(root, millis(1925, 7, 2), millis(1931, 1, 1)).getCount() == 2);
+
+            List<ContinuumAggregate> years = aggregator.summarize(root, millis(1900, 1, 1), millis(2000, 1, 1), Resolution.YEAR);
+            Assert.isTrue(years.size() == 3);
+            Assert.isTrue(years.get(1).getStart().getYear() == 1925 && years.get(1).getCount() == 2);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void removingTheExtremeShouldRecomputeMinAndMax() {
+        Node first;
+        try (Transaction tx = db.beginTx()) {
+            first = attach(new DateTime(1850, 1, 1, 0, 0, DateTimeZone.UTC), "painter", 1);
+            attach(new DateTime(1850, 1, 1, 0, 0, DateTimeZone.UTC), "painter", 5);
+            attach(new DateTime(1850, 2, 1, 0, 0, DateTimeZone.UTC), "painter", 3);
+            tx.success();
+        }
+        try (Transaction tx = db.beginTx()) {
+            first.getSingleRelationship(TimeRelationshipTypes.START_DATE, Direction.OUTGOING).delete();
+            tx.success();
+        }
+        try (Transaction tx = db.beginTx()) {
+            Node root = db.findNodes(TimeTreeLabels.TimeTreeRoot).next();
+            ContinuumAggregate year = aggregator.summarize(root, millis(1850, 1, 1), millis(1851, 1, 1) - 1);
+            Assert.isTrue(year.getCount() == 2 && year.getMin() == 3 && year.getMax() == 5);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void changingTheFieldShouldMoveTheNodeToItsNewValue() {
+        Node node;
+        try (Transaction tx = db.beginTx()) {
+            node = attach(new DateTime(1900, 6, 1, 0, 0, DateTimeZone.UTC), "painter", 2);
+            attach(new DateTime(1900, 6, 1, 0, 0, DateTimeZone.UTC), "painter", 3);
+            tx.success();
+        }
+        try (Transaction tx = db.beginTx()) {
+            node.setProperty("profession", "writer");
+            tx.success();
+        }
+        // a rolled back change leaves the aggregates alone
+        try (Transaction tx = db.beginTx()) {
+            node.setProperty("profession", "sculptor");
+            tx.failure();
+        }
+        try (Transaction tx = db.beginTx()) {
+            Node root = db.findNodes(TimeTreeLabels.TimeTreeRoot).next();
+            ContinuumAggregate year = aggregator.summarize(root, millis(1900, 1, 1), millis(1901, 1, 1) - 1);
+            Assert.isTrue(year.getCount() == 2 && year.getCount("painter") == 1 && year.getCount("writer") == 1 && year.getCount("sculptor") == 0);
+            Assert.isTrue(year.getSumByValue().get("writer") == 2);
+            // the field values are kept in arrays, not in the property keys
+            Node day = timeTree.getOrCreateInstant(TimeInstant.instant(millis(1900, 6, 1)));
+            for(String key : day.getPropertyKeys()) Assert.isTrue(!key.contains("writer") && !key.contains("painter"));
+            tx.success();
+        }
+    }
+
+    private Node attach(DateTime start, String profession, Integer plays) {
+        Node node = db.createNode();
+        node.setProperty("profession", profession);
+        if(plays != null) node.setProperty("plays", plays);
+        Node day = timeTree.getOrCreateInstant(TimeInstant.instant(start.getMillis()));
+        node.createRelationshipTo(day, TimeRelationshipTypes.START_DATE);
+        return node;
+    }
+
+    private static long millis(int year, int month, int day) {
+        return new DateTime(year, month, day, 0, 0, DateTimeZone.UTC).getMillis();
+    }
+
+}
@@ -1,5 +1,298 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.io.fs.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 /**
- * Created by user on 26/07/2016.
+ * Benchmarks for Continuum, run with mvn -P benchmark test-compile exec:exec
+ * JMH refuses benchmark classes in the default package, so this is a small harness in the same spirit:
+ * warmup rounds are thrown away, every data set is generated from a fixed seed and the results are written as JSON
+ * (target/benchmark-result.json by default) so two runs can be compared.
+ * Arguments: [output file] [regex on benchmark names]
  */
 public class ContinuumBenchmark {
+
+    private static final long SEED = 20160726L;
+    private static final DateTime FROM = new DateTime(1900, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime TO = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+    private static final Label LABEL = Label.label("Benchmark");
+
+    private static final String[] DISTRIBUTIONS = {"uniform", "clustered"};
+    private static final int[] DATA_SET_SIZES = {10000, 100000};
+    private static final int[] BATCH_SIZES = {1000, 10000};
+    // fraction of the world covered by the query envelope and fraction of [FROM, TO] covered by the query window
+    private static final double[] SPATIAL_SELECTIVITIES = {0.0001, 0.01, 0.25};
+    private static final double[] TEMPORAL_SELECTIVITIES = {0.001, 0.01, 0.1};
+    private static final int QUERY_WINDOWS = 16;
+
+    private final Pattern filter;
+    private final List<Result> results = new ArrayList<>();
+    // everything a benchmark returns ends up here so the JIT can't drop the work
+    private long sink;
+
+    public ContinuumBenchmark(Pattern filter) {
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File output = new File(args.length > 0 ? args[0] : "target/benchmark-result.json");
+        ContinuumBenchmark benchmark = new ContinuumBenchmark(Pattern.compile(args.length > 1 ? args[1] : ".*"));
+        for(String distribution : DISTRIBUTIONS) {
+            benchmark.insertSingle(distribution);
+            for(int batchSize : BATCH_SIZES) benchmark.insertBatch(distribution, batchSize);
+            for(int nodes : DATA_SET_SIZES) benchmark.onLoadedDatabase(distribution, nodes);
+        }
+        benchmark.write(output);
+        System.out.println("results written to " + output.getAbsolutePath() + " (" + benchmark.sink + ")");
+    }
+
+    // INSERT
+    private void insertSingle(String distribution) throws IOException {
+        if(!enabled("insertSingle")) return;
+        try (Database database = new Database(distribution)) {
+            double[] samples = measure(1000, 5000, 1e3, () -> {
+                double[] point = database.point();
+                DateTime[] span = database.generator.lifespan(FROM, TO);
+                try (Transaction tx = database.db.beginTx()) {
+                    long id = database.continuum.addContinuumCapabilitiesToNode(database.db.createNode(LABEL), point[0], point[1], span[0], span[1]).getId();
+                    tx.success();
+                    return id;
+                }
+            });
+            report(new Result("insertSingle", "us/op", samples).param("distribution", distribution));
+        }
+    }
+
+    private void insertBatch(String distribution, int batchSize) throws IOException {
+        if(!enabled("insertBatch")) return;
+        try (Database database = new Database(distribution)) {
+            // the records, and the nodes they point at, are created up front so only the ingest is timed
+            int warmup = 1, rounds = 5;
+            List<List<ContinuumRecord>> batches = new ArrayList<>();
+            for(int i=0;i<warmup+rounds;i++) batches.add(database.records(batchSize));
+            int[] next = new int[1];
+            double[] samples = measure(warmup, rounds, 1e6, () -> database.continuum.addContinuumCapabilitiesToNodes(batches.get(next[0]++), batchSize));
+            Result result = new Result("insertBatch", "ms/batch", samples).param("distribution", distribution).param("batchSize", batchSize);
+            report(result.secondary("recordsPerSecond", batchSize / (result.mean() / 1e3)));
+        }
+    }
+
+    // QUERIES AND SCANS - all share one loaded database per data set
+    private void onLoadedDatabase(String distribution, int nodes) throws IOException {
+        if(Stream.of("footprint", "getContinuumNodes", "getAllContinuumNodes", "getAllSpacePoints", "getAllTimePoints").noneMatch(this::enabled)) return;
+        try (Database database = new Database(distribution)) {
+            long heapBefore = usedHeap();
+            database.continuum.addContinuumCapabilitiesToNodes(database.records(nodes));
+            database.continuum.intervalIndex();
+            if(enabled("footprint")) {
+                report(new Result("footprint", "bytes/node", new double[]{Math.max(0, usedHeap() - heapBefore) / (double) nodes})
+                        .param("distribution", distribution).param("nodes", nodes)
+                        .secondary("storeBytesPerNode", sizeOf(database.directory.toPath()) / (double) nodes));
+            }
+
+            if(enabled("getContinuumNodes")) {
+                for(double spatialSelectivity : SPATIAL_SELECTIVITIES) {
+                    for(double temporalSelectivity : TEMPORAL_SELECTIVITIES) {
+                        getContinuumNodes(database, nodes, spatialSelectivity, temporalSelectivity);
+                    }
+                }
+            }
+
+            scan(database, nodes, "getAllContinuumNodes", () -> database.continuum.getAllContinuumNodes().size());
+            scan(database, nodes, "getAllSpacePoints", () -> database.continuum.getAllSpacePoints().size());
+            scan(database, nodes, "getAllTimePoints", () -> database.continuum.getAllTimePoints().size());
+        }
+    }
+
+    // the windows are centered on points drawn from the same distribution as the data
+    private void getContinuumNodes(Database database, int nodes, double spatialSelectivity, double temporalSelectivity) {
+        TestUtils.Generator generator = new TestUtils.Generator(SEED + 1);
+        double halfWidth = WORLD.getWidth() * Math.sqrt(spatialSelectivity) / 2;
+        double halfHeight = WORLD.getHeight() * Math.sqrt(spatialSelectivity) / 2;
+        long length = (long) ((TO.getMillis() - FROM.getMillis()) * temporalSelectivity);
+        DateTime latestStart = new DateTime(TO.getMillis() - length, DateTimeZone.UTC);
+
+        List<Geometry> geometries = new ArrayList<>();
+        List<DateTime> starts = new ArrayList<>();
+        try (Transaction tx = database.db.beginTx()) {
+            for(int i=0;i<QUERY_WINDOWS;i++) {
+                double[] center = database.clustered() ? generator.clusteredPoint(1.0) : generator.uniformPoint(WORLD);
+                Envelope envelope = new Envelope(center[1] - halfWidth, center[1] + halfWidth, center[0] - halfHeight, center[0] + halfHeight);
+                geometries.add(database.continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope));
+                starts.add(generator.lifespan(FROM, latestStart)[0]);
+            }
+            tx.success();
+        }
+
+        long[] found = new long[1];
+        int[] next = new int[1];
+        double[] samples = measure(2 * QUERY_WINDOWS, 10 * QUERY_WINDOWS, 1e3, () -> {
+            int window = next[0]++ % QUERY_WINDOWS;
+            DateTime start = starts.get(window);
+            int size = database.continuum.getContinuumNodes(geometries.get(window), start, start.plus(length)).size();
+            found[0] += size;
+            return size;
+        });
+        report(new Result("getContinuumNodes", "us/op", samples)
+                .param("distribution", database.distribution).param("nodes", nodes)
+                .param("spatialSelectivity", spatialSelectivity).param("temporalSelectivity", temporalSelectivity)
+                .secondary("resultSize", found[0] / (double) (12 * QUERY_WINDOWS)));
+    }
+
+    private void scan(Database database, int nodes, String name, LongSupplier operation) {
+        if(!enabled(name)) return;
+        report(new Result(name, "ms/op", measure(2, 5, 1e6, operation)).param("distribution", database.distribution).param("nodes", nodes));
+    }
+
+    // returns the measured rounds only, in unit nanoseconds each
+    private double[] measure(int warmup, int rounds, double unit, LongSupplier operation) {
+        for(int i=0;i<warmup;i++) sink += operation.getAsLong();
+        double[] samples = new double[rounds];
+        for(int i=0;i<rounds;i++) {
+            long start = System.nanoTime();
+            sink += operation.getAsLong();
+            samples[i] = (System.nanoTime() - start) / unit;
+        }
+        return samples;
+    }
+
+    private boolean enabled(String name) {
+        return filter.matcher(name).matches();
+    }
+
+    private void report(Result result) {
+        System.out.println(result.toJson());
+        results.add(result);
+    }
+
+    private void write(File output) throws IOException {
+        if(output.getParentFile() != null) output.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(output, "UTF-8")) {
+            writer.println(results.stream().map(Result::toJson).collect(Collectors.joining(",\n", "[\n", "\n]")));
+        }
+    }
+
+    private static long usedHeap() {
+        for(int i=0;i<3;i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(t -> t.toFile().isFile())
+                    .mapToLong(t -> t.toFile().length())
+                    .sum();
+        }
+    }
+
+    // a new database in a temporary directory, deleted on close
+    private static class Database implements AutoCloseable {
+
+        final String distribution;
+        final File directory;
+        final GraphDatabaseService db;
+        final Continuum continuum;
+        final TestUtils.Generator generator = new TestUtils.Generator(SEED);
+
+        Database(String distribution) throws IOException {
+            this.distribution = distribution;
+            directory = Files.createTempDirectory("continuum-benchmark").toFile();
+            db = new GraphDatabaseFactory().newEmbeddedDatabase(directory);
+            continuum = new Continuum(db);
+        }
+
+        boolean clustered() {
+            return "clustered".equals(distribution);
+        }
+
+        double[] point() {
+            return clustered() ? generator.clusteredPoint(1.0) : generator.uniformPoint(WORLD);
+        }
+
+        List<ContinuumRecord> records(int count) {
+            return generator.records(db, LABEL, count, clustered(), FROM, TO);
+        }
+
+        @Override
+        public void close() throws IOException {
+            db.shutdown();
+            FileUtils.deleteRecursively(directory);
+        }
+    }
+
+    private static class Result {
+
+        final String benchmark;
+        final String unit;
+        final double[] samples;
+        final Map<String, Object> params = new LinkedHashMap<>();
+        final Map<String, Double> secondary = new LinkedHashMap<>();
+
+        Result(String benchmark, String unit, double[] samples) {
+            this.benchmark = benchmark;
+            this.unit = unit;
+            this.samples = samples.clone();
+            Arrays.sort(this.samples);
+        }
+
+        Result param(String name, Object value) {
+            params.put(name, value);
+            return this;
+        }
+
+        Result secondary(String name, double value) {
+            secondary.put(name, value);
+            return this;
+        }
+
+        double mean() {
+            return Arrays.stream(samples).average().orElse(0);
+        }
+
+        double percentile(double p) {
+            return samples[Math.min(samples.length - 1, (int) Math.ceil(p * samples.length) - 1)];
+        }
+
+        String toJson() {
+            return "{\"benchmark\": \"" + benchmark + "\", \"unit\": \"" + unit + "\""
+                    + ", \"params\": " + toJson(params)
+                    + ", \"samples\": " + samples.length
+                    + ", \"mean\": " + mean()
+                    + ", \"min\": " + samples[0]
+                    + ", \"p50\": " + percentile(0.5)
+                    + ", \"p90\": " + percentile(0.9)
+                    + ", \"p99\": " + percentile(0.99)
+                    + ", \"max\": " + samples[samples.length - 1]
+                    + ", \"secondary\": " + toJson(secondary) + "}";
+        }
+
+        private static String toJson(Map<String, ?> values) {
+            return values.entrySet().stream()
+                    .map(t -> "\"" + t.getKey() + "\": " + (t.getValue() instanceof String ? "\"" + t.getValue() + "\"" : t.getValue()))
+                    .collect(Collectors.joining(", ", "{", "}"));
+        }
+    }
+
 }
@@ -0,0 +1,60 @@
+import com.vividsolutions.jts.geom.Envelope;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+public class ContinuumClusterPyramidTest {
+
+    private static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    @Test
+    public void shouldCountNodesPerCellAndTimeWindow() {
+        ContinuumClusterPyramid pyramid = new ContinuumClusterPyramid(8, true);
+        // London lived 1850-1870, Paris 1880-1900, plus a short event in Paris in 1850
+        pyramid.add(1, 51.5, -0.1, millis(1850), millis(1870));
+        pyramid.add(2, 48.8, 2.3, millis(1880), millis(1900));
+        pyramid.add(3, 48.9, 2.4, millis(1850), millis(1850));
+
+        List<ContinuumCluster> world = pyramid.clusters(WORLD, 0);
+        Assert.isTrue(world.size() == 1 && world.get(0).getCount() == 3);
+        Assert.isTrue(Math.abs(world.get(0).getLat() - (51.5 + 48.8 + 48.9) / 3) < 1e-9);
+
+        List<ContinuumCluster> cities = pyramid.clusters(WORLD, 8);
+        Assert.isTrue(cities.size() == 2);
+
+        List<ContinuumCluster> sixties = pyramid.clusters(WORLD, 8, millis(1860), millis(1865));
+        Assert.isTrue(sixties.size() == 1 && sixties.get(0).getLat() == 51.5);
+        Assert.isTrue(pyramid.clusters(WORLD, 0, millis(1850), millis(1850)).get(0).getCount() == 2);
+
+        pyramid.remove(1);
+        Assert.isTrue(pyramid.clusters(WORLD, 8, millis(1860), millis(1865)).isEmpty());
+        Assert.isTrue(pyramid.clusters(WORLD, 0).get(0).getCount() == 2);
+    }
+
+    @Test
+    public void mergedPyramidsShouldMatchASingleOne() {
+        ContinuumClusterPyramid single = new ContinuumClusterPyramid(6, true);
+        ContinuumClusterPyramid left = new ContinuumClusterPyramid(6, true);
+        ContinuumClusterPyramid right = new ContinuumClusterPyramid(6, true);
+        for(long id=0;id<1000;id++) {
+            double lat = (id * 37 % 180) - 90, lon = (id * 91 % 360) - 180;
+            single.add(id, lat, lon, millis(1800 + (int) (id % 200)), millis(1850 + (int) (id % 200)));
+            (id % 2 == 0 ? left : right).add(id, lat, lon, millis(1800 + (int) (id % 200)), millis(1850 + (int) (id % 200)));
+        }
+        ContinuumClusterPyramid merged = left.merge(right);
+
+        Envelope europe = new Envelope(-10, 40, 35, 70);
+        int level = single.levelFor(europe, 100);
+        Assert.isTrue(level > 0 && single.clusters(europe, level).size() <= 100);
+        Assert.isTrue(merged.size() == single.size());
+        Assert.isTrue(merged.clusters(europe, level, millis(1900), millis(1950)).toString().equals(single.clusters(europe, level, millis(1900), millis(1950)).toString()));
+    }
+
+    private static long millis(int year) {
+        return new DateTime(year, 6, 1, 0, 0, DateTimeZone.UTC).getMillis();
+    }
+
+}
@@ -0,0 +1,144 @@
+import com.vividsolutions.jts.geom.Envelope;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class ContinuumColumnStoreTest {
+
+    @Test
+    public void shouldFilterRowsByEnvelopeAndTime() {
+        ContinuumColumnStore store = new ContinuumColumnStore(2);
+        for(long id=0;id<100;id++) store.put(id, id % 10, id / 10, id, id + 5);
+        // replacing and removing rows must keep the columns dense
+        store.put(5, 50, 50, 5, 10);
+        store.remove(0);
+        store.remove(99);
+
+        long[] found = store.filter(new Envelope(0, 2, 0, 2), 0, 30);
+        Arrays.sort(found);
+        Assert.isTrue(Arrays.equals(found, new long[]{1, 2, 10, 11, 12, 20, 21, 22}));
+        Assert.isTrue(store.size() == 98);
+    }
+
+    @Test
+    public void capacityShouldBeLimitedToWhatIntOffsetsCanAddress() {
+        try {
+            new ContinuumColumnStore(ContinuumColumnStore.MAX_ROWS + 1);
+            Assert.isTrue(false);
+        } catch (Error e) {
+            Assert.isTrue(e.getMessage().contains(String.valueOf(ContinuumColumnStore.MAX_ROWS)));
+        }
+    }
+
+    @Test
+    public void snapshotShouldRoundTrip() throws Exception {
+        ContinuumColumnStore store = new ContinuumColumnStore();
+        for(long id=0;id<5000;id++) store.put(id, id * 0.01, -id * 0.01, id * 1000, id * 1000 + 10);
+        File snapshot = File.createTempFile("continuum", ".columns");
+        snapshot.deleteOnExit();
+
+        store.writeSnapshot(snapshot, 42);
+        ContinuumColumnStore loaded = ContinuumColumnStore.loadSnapshot(snapshot);
+
+        Assert.isTrue(ContinuumColumnStore.readSnapshotTag(snapshot) == 42);
+        Assert.isTrue(loaded.size() == 5000);
+        Assert.isTrue(loaded.count(new Envelope(-10, 0, 0, 10), 0, Long.MAX_VALUE) == store.count(new Envelope(-10, 0, 0, 10), 0, Long.MAX_VALUE));
+        loaded.put(5000, 1, 1, 1, 1);
+        Assert.isTrue(loaded.contains(4999) && loaded.contains(5000));
+    }
+
+    @Test
+    public void updaterShouldFollowCommitsRollbacksAndDeletes() throws Exception {
+        GraphDatabaseService db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        try {
+            Continuum continuum = new Continuum(db);
+            ContinuumColumnStore store = continuum.enableColumnStore(null);
+            DateTime start = new DateTime(1850, 1, 1, 0, 0, DateTimeZone.UTC);
+            DateTime end = new DateTime(1860, 1, 1, 0, 0, DateTimeZone.UTC);
+
+            Node kept = add(db, continuum, 56.5, 15.5, start, end);
+            Assert.isTrue(store.size() == 1 && store.contains(kept.getId()));
+
+            Node rolledBack;
+            try (Transaction tx = db.beginTx()) {
+                rolledBack = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("ColumnStoreTest")), 10.0, 10.0, start, end);
+                tx.failure();
+            }
+            Assert.isTrue(store.size() == 1 && !store.contains(rolledBack.getId()));
+
+            continuum.moveContinuumNode(kept.getId(), 57.5, 16.5);
+            store.forEach((id, lat, lon, startTime, endTime) -> Assert.isTrue(lat == 57.5 && lon == 16.5));
+
+            Node removed = add(db, continuum, 10.0, 10.0, start, end);
+            Assert.isTrue(store.contains(removed.getId()) && continuum.removeContinuumNode(removed.getId()));
+            Assert.isTrue(!store.contains(removed.getId()));
+
+            // deleted without going through Continuum
+            Node deleted = add(db, continuum, 20.0, 20.0, start, end);
+            Assert.isTrue(store.contains(deleted.getId()));
+            try (Transaction tx = db.beginTx()) {
+                for(Relationship relationship : deleted.getRelationships()) relationship.delete();
+                deleted.delete();
+                tx.success();
+            }
+            Assert.isTrue(store.size() == 1 && store.contains(kept.getId()));
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void enableShouldReloadTheSnapshotOnlyWhileItIsCurrent() throws Exception {
+        GraphDatabaseService db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        File snapshot = File.createTempFile("continuum", ".columns");
+        snapshot.delete();
+        snapshot.deleteOnExit();
+        try {
+            Continuum continuum = new Continuum(db);
+            DateTime start = new DateTime(1850, 1, 1, 0, 0, DateTimeZone.UTC);
+            DateTime end = new DateTime(1860, 1, 1, 0, 0, DateTimeZone.UTC);
+            for(int i=0;i<10;i++) add(db, continuum, 50 + i, 10 + i, start, end);
+
+            // no snapshot yet, built from the graph
+            Assert.isTrue(continuum.enableColumnStore(snapshot).size() == 10);
+            continuum.disableColumnStore(snapshot);
+            Assert.isTrue(snapshot.exists());
+
+            // a marker row only the snapshot has, to tell a reload from a rebuild
+            long tag = ContinuumColumnStore.readSnapshotTag(snapshot);
+            ContinuumColumnStore written = ContinuumColumnStore.loadSnapshot(snapshot);
+            written.put(999999, 0, 0, 0, 0);
+            written.writeSnapshot(snapshot, tag);
+
+            ContinuumColumnStore reloaded = continuum.enableColumnStore(snapshot);
+            Assert.isTrue(reloaded.size() == 11 && reloaded.contains(999999));
+            continuum.disableColumnStore(null);
+
+            // a commit after the snapshot makes it stale
+            Node later = add(db, continuum, 60, 20, start, end);
+            ContinuumColumnStore rebuilt = continuum.enableColumnStore(snapshot);
+            Assert.isTrue(rebuilt.size() == 11 && rebuilt.contains(later.getId()) && !rebuilt.contains(999999));
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    private static Node add(GraphDatabaseService db, Continuum continuum, double lat, double lon, DateTime start, DateTime end) {
+        try (Transaction tx = db.beginTx()) {
+            Node node = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("ColumnStoreTest")), lat, lon, start, end);
+            tx.success();
+            return node;
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ContinuumCsvReaderTest {
+
+    @Test
+    public void shouldSplitQuotedFieldsAndLineEnds() throws IOException {
+        File csv = write("name,lat,lon,start\r\n\"Bosch, Hieronymus\",51.69,5.30,1450-01-01\r\n\r\n\"say \"\"hi\"\"\",-33.5,+151,-0044-03-15T12:00\n");
+        try (ContinuumCsvReader reader = new ContinuumCsvReader(csv, ',')) {
+            Assert.isTrue(reader.next() && reader.getFieldCount() == 4 && reader.getString(3).equals("start"));
+            Assert.isTrue(reader.next());
+            Assert.isTrue(reader.getString(0).equals("Bosch, Hieronymus"));
+            Assert.isTrue(reader.getDouble(1) == 51.69 && reader.getDouble(2) == 5.30);
+            int[] date = reader.getDate(3, new int[3]);
+            Assert.isTrue(date[0] == 1450 && date[1] == 1 && date[2] == 1);
+            // the empty line is skipped
+            Assert.isTrue(reader.next());
+            Assert.isTrue(reader.getString(0).equals("say \"hi\""));
+            Assert.isTrue(reader.getDouble(1) == -33.5 && reader.getDouble(2) == 151);
+            reader.getDate(3, date);
+            Assert.isTrue(date[0] == -44 && date[1] == 3 && date[2] == 15);
+            Assert.isTrue(!reader.next());
+        }
+    }
+
+    @Test
+    public void recordsShouldSurviveWindowRemaps() throws IOException {
+        StringBuilder content = new StringBuilder("id\tvalue\tnote\n");
+        for(int i=0;i<1000;i++) content.append(i).append('\t').append(i / 8.0).append('\t').append(i % 3 == 0 ? "\"a\nb\"" : "").append('\n');
+        File csv = write(content.toString());
+        try (ContinuumCsvReader reader = new ContinuumCsvReader(csv, '\t', 64)) {
+            Assert.isTrue(reader.next());
+            for(int i=0;i<1000;i++) {
+                Assert.isTrue(reader.next());
+                Assert.isTrue(reader.getLong(0) == i);
+                Assert.isTrue(reader.getDouble(1) == i / 8.0);
+                Assert.isTrue(i % 3 == 0 ? reader.getString(2).equals("a\nb") : reader.isEmpty(2));
+            }
+            Assert.isTrue(!reader.next());
+        }
+    }
+
+    @Test
+    public void doublesShouldMatchParseDouble() throws IOException {
+        String[] values = {"0.1", "1.7976931348623157E308", "123456789.123456789", "-0.000001", "45.123456789012", "1e-7"};
+        File csv = write(String.join(",", values) + "\n");
+        try (ContinuumCsvReader reader = new ContinuumCsvReader(csv, ',')) {
+            Assert.isTrue(reader.next());
+            for(int i=0;i<values.length;i++) Assert.isTrue(reader.getDouble(i) == Double.parseDouble(values[i]));
+        }
+    }
+
+    private static File write(String content) throws IOException {
+        File csv = File.createTempFile("continuum", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return csv;
+    }
+
+}
@@ -0,0 +1,33 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.Random;
+
+public class ContinuumHistogramTest {
+
+    @Test
+    public void percentilesShouldBeWithinTheBucketPrecision() {
+        ContinuumHistogram histogram = new ContinuumHistogram();
+        for(long value=1;value<=100000;value++) histogram.record(value * 1000);
+
+        ContinuumHistogram.Snapshot snapshot = histogram.snapshot(1000);
+        Assert.isTrue(snapshot.getCount() == 100000);
+        Assert.isTrue(snapshot.getMin() == 1 && snapshot.getMax() == 100000);
+        Assert.isTrue(Math.abs(snapshot.getMean() - 50000.5) < 1e-6);
+        Assert.isTrue(Math.abs(snapshot.getP50() - 50000) <= 50000 / 64.0);
+        Assert.isTrue(Math.abs(snapshot.getP99() - 99000) <= 99000 / 64.0);
+    }
+
+    @Test
+    public void bucketsShouldCoverTheWholeRange() {
+        Random random = new Random(3);
+        for(int i=0;i<100000;i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = ContinuumHistogram.indexOf(value);
+            Assert.isTrue(value <= ContinuumHistogram.highestEquivalent(index));
+            Assert.isTrue(index == 0 || value > ContinuumHistogram.highestEquivalent(index - 1));
+        }
+        Assert.isTrue(ContinuumHistogram.highestEquivalent(ContinuumHistogram.indexOf(Long.MAX_VALUE)) == Long.MAX_VALUE);
+    }
+
+}
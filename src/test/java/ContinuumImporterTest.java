@@ -0,0 +1,123 @@
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeRelationshipTypes;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+public class ContinuumImporterTest {
+
+    private File directory;
+    private GraphDatabaseService db;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("continuum-import").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if(db != null) db.shutdown();
+        Files.walk(directory.toPath()).sorted((a, b) -> b.compareTo(a)).forEach(t -> t.toFile().delete());
+    }
+
+    @Test
+    public void importedStoreShouldBeQueryableWithContinuum() throws IOException {
+        File csv = new File(directory, "painters.csv");
+        Files.write(csv.toPath(), ("name,lat,lon,start,end\n" +
+                "Vermeer,52.01,4.36,1632-10-31,1675-12-15\n" +
+                "Rembrandt,52.37,4.89,1606-07-15,1669-10-04\n" +
+                "\"Bruegel, Pieter\",50.85,4.35,1525-01-01,1569-09-09\n" +
+                "Nobody,200,4.35,1600-01-01,1601-01-01\n" +
+                "Portrait,52.08,4.31,1665-01-01,\n").getBytes(StandardCharsets.UTF_8));
+
+        File store = new File(directory, "graph.db");
+        ContinuumImporter importer = new ContinuumImporter(store).withLabels("Painter").withProgress(null);
+        Assert.isTrue(importer.importCsv(csv) == 4);
+        Assert.isTrue(importer.getRejected() == 1);
+
+        db = new GraphDatabaseFactory().newEmbeddedDatabase(store);
+        Continuum continuum = new Continuum(db);
+        List<Node> alive = continuum.getContinuumNodesOverlapping(new DateTime(1660, 1, 1, 0, 0, DateTimeZone.UTC), new DateTime(1665, 1, 1, 0, 0, DateTimeZone.UTC));
+        Assert.isTrue(alive.size() == 3);
+
+        try (Transaction tx = db.beginTx()) {
+            Assert.isTrue(db.findNode(Label.label("Painter"), "name", "Bruegel, Pieter") != null);
+            // the TimeTree finds the imported days and links new ones in between them
+            TimeTree timeTree = new SingleTimeTree(db);
+            Node vermeer = db.findNode(Label.label("Continuum"), "name", "Vermeer");
+            Node birth = vermeer.getSingleRelationship(TimeRelationshipTypes.START_DATE, Direction.OUTGOING).getEndNode();
+            Assert.isTrue(birth.equals(timeTree.getInstant(TimeInstant.instant(new DateTime(1632, 10, 31, 12, 0, DateTimeZone.UTC).getMillis()))));
+            Node between = timeTree.getOrCreateInstant(TimeInstant.instant(new DateTime(1640, 1, 1, 0, 0, DateTimeZone.UTC).getMillis()));
+            Relationship next = between.getSingleRelationship(TimeTreeRelationshipTypes.NEXT, Direction.INCOMING);
+            Assert.isTrue(next != null && next.getStartNode().equals(birth));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void packedRTreeShouldReferenceEveryRecordOnce() throws IOException {
+        StringBuilder content = new StringBuilder("lat\tlon\tstart\n");
+        Random random = new Random(7);
+        int records = 25000;
+        for(int i=0;i<records;i++) content.append(random.nextDouble() * 180 - 90).append('\t').append(random.nextDouble() * 360 - 180).append('\t').append(i * 1000L).append('\n');
+        File tsv = new File(directory, "points.tsv");
+        Files.write(tsv.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        File store = new File(directory, "graph.db");
+        new ContinuumImporter(store).withDelimiter('\t').withTimeFormat(ContinuumImporter.TimeFormat.EPOCH_MILLIS).withProgress(null).importCsv(tsv);
+
+        db = new GraphDatabaseFactory().newEmbeddedDatabase(store);
+        try (Transaction tx = db.beginTx()) {
+            Node layer = db.findNode(Label.label("ReferenceNode"), "name", "spatial_root")
+                    .getSingleRelationship(SpaceRelationshipTypes.LAYER, Direction.OUTGOING).getEndNode();
+            Node root = layer.getSingleRelationship(SpaceRelationshipTypes.RTREE_ROOT, Direction.OUTGOING).getEndNode();
+            Assert.isTrue(count(root, 0) == records);
+            int referenced = 0;
+            for(Node node : (Iterable<Node>) () -> db.findNodes(Label.label("Continuum"))) {
+                Assert.isTrue(node.getSingleRelationship(SpaceRelationshipTypes.RTREEREFERENCE, Direction.INCOMING) != null);
+                referenced++;
+            }
+            Assert.isTrue(referenced == records);
+            tx.success();
+        }
+    }
+
+    // references below an index node, checking that every child lies inside its parent's bbox
+    private static int count(Node index, int depth) {
+        Assert.isTrue(depth < 4);
+        double[] bbox = (double[]) index.getProperty("bbox");
+        int references = 0;
+        for(Relationship reference : index.getRelationships(SpaceRelationshipTypes.RTREEREFERENCE, Direction.OUTGOING)) {
+            double[] point = (double[]) reference.getEndNode().getProperty("bbox");
+            Assert.isTrue(point[0] >= bbox[0] && point[1] >= bbox[1] && point[2] <= bbox[2] && point[3] <= bbox[3]);
+            references++;
+        }
+        Assert.isTrue(references <= ContinuumImporter.RTREE_NODE_CAPACITY);
+        for(Relationship child : index.getRelationships(SpaceRelationshipTypes.RTREE_CHILD, Direction.OUTGOING)) {
+            double[] inner = (double[]) child.getEndNode().getProperty("bbox");
+            Assert.isTrue(inner[0] >= bbox[0] && inner[1] >= bbox[1] && inner[2] <= bbox[2] && inner[3] <= bbox[3]);
+            references += count(child.getEndNode(), depth + 1);
+        }
+        return references;
+    }
+
+}
@@ -0,0 +1,36 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+public class ContinuumMetricsRegistryTest {
+
+    @Test
+    public void shouldExposeRecordedMetricsOverJmx() throws Exception {
+        ContinuumMetricsRegistry registry = new ContinuumMetricsRegistry().register("test");
+        try {
+            for(int i=1;i<=100;i++) registry.recordLatency("query", i * 1000L);
+            registry.recordValue("query.results", 42);
+            registry.mark("ingest.nodes", 10);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = registry.getObjectName();
+            CompositeData latency = (CompositeData) ((TabularData) server.getAttribute(name, "Latencies")).get(new Object[]{"query"}).get("value");
+            Assert.isTrue((Long) latency.get("count") == 100);
+            Assert.isTrue((Double) latency.get("max") == 100.0);
+            TabularData counts = (TabularData) server.getAttribute(name, "Counts");
+            Assert.isTrue((Long) counts.get(new Object[]{"ingest.nodes"}).get("value") == 10);
+
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            Assert.isTrue(registry.getLatency("query").getCount() == 0 && registry.getCount("ingest.nodes") == 0);
+        } finally {
+            registry.unregister();
+        }
+        Assert.isTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("continuum:type=Metrics,name=" + ObjectName.quote("test"))));
+    }
+
+}
@@ -0,0 +1,33 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.Random;
+
+public class ContinuumNearestNeighboursTest {
+
+    @Test
+    public void greatCircleDistanceShouldMatchKnownCities() {
+        // London - Paris is about 344 km
+        double distance = ContinuumNearestNeighbours.pointDistance(51.5074, -0.1278, 48.8566, 2.3522, ContinuumNearestNeighbours.Distance.GREAT_CIRCLE);
+        Assert.isTrue(Math.abs(distance - 343500) < 1500);
+    }
+
+    @Test
+    public void boxDistanceShouldNeverOverestimate() {
+        Random random = new Random(7);
+        for(ContinuumNearestNeighbours.Distance metric : ContinuumNearestNeighbours.Distance.values()) {
+            for(int i=0;i<10000;i++) {
+                double minLon = random.nextDouble() * 340 - 180, minLat = random.nextDouble() * 160 - 90;
+                double[] bbox = {minLon, minLat, minLon + random.nextDouble() * 20, minLat + random.nextDouble() * 20};
+                double lat = random.nextDouble() * 180 - 90, lon = random.nextDouble() * 360 - 180;
+                double bound = ContinuumNearestNeighbours.boxDistance(lat, lon, bbox, metric);
+                for(int j=0;j<10;j++) {
+                    double insideLon = bbox[0] + random.nextDouble() * (bbox[2] - bbox[0]);
+                    double insideLat = bbox[1] + random.nextDouble() * (bbox[3] - bbox[1]);
+                    Assert.isTrue(bound <= ContinuumNearestNeighbours.pointDistance(lat, lon, insideLat, insideLon, metric) + 1e-6);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+import com.graphaware.module.timetree.domain.TimeInstant;
+import com.graphaware.module.timetree.domain.TimeTreeLabels;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+public class ContinuumPartitionsTest {
+
+    private static final Envelope EUROPE = new Envelope(-10, 30, 35, 70);
+
+    private GraphDatabaseService db;
+    private ContinuumPartitions partitions;
+    private long turner;
+    private long monet;
+    private long picasso;
+    private long hokusai;
+
+    @Before
+    public void setUp() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        partitions = new ContinuumPartitions(db, 4);
+        partitions.define("europe-19th", EUROPE, date(1800, 1, 1), date(1899, 12, 31));
+        partitions.define("europe-20th", EUROPE, date(1900, 1, 1), date(1999, 12, 31));
+        partitions.define("elsewhere", null, null, null);
+
+        List<ContinuumRecord> records = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            turner = record(records, 51.51, -0.13, date(1800, 1, 1), date(1851, 12, 19));
+            monet = record(records, 48.85, 2.35, date(1840, 11, 14), date(1926, 12, 5));
+            picasso = record(records, 41.39, 2.17, date(1901, 1, 1), date(1973, 4, 8));
+            hokusai = record(records, 35.68, 139.69, date(1800, 1, 1), date(1849, 5, 10));
+            tx.success();
+        }
+        Assert.isTrue(partitions.addContinuumCapabilitiesToNodes(records, 2) == 4);
+    }
+
+    @After
+    public void tearDown() {
+        partitions.close();
+        db.shutdown();
+    }
+
+    @Test
+    public void writesShouldGoToTheirOwnPartition() {
+        Assert.isTrue(partitions.route(51.51, -0.13, date(1800, 1, 1), date(1851, 12, 19)).equals("europe-19th"));
+        // a life crossing the century doesn't fit either era
+        Assert.isTrue(partitions.route(48.85, 2.35, date(1840, 11, 14), date(1926, 12, 5)).equals("elsewhere"));
+
+        try (Transaction tx = db.beginTx()) {
+            Assert.isTrue(db.getNodeById(turner).hasLabel(Label.label("Continuum_europe-19th")));
+            Assert.isTrue(db.getNodeById(picasso).hasLabel(Label.label("Continuum_europe-20th")));
+            Assert.isTrue(db.getNodeById(hokusai).hasLabel(Label.label("Continuum_elsewhere")));
+            // partition nodes are invisible to the default Continuum
+            Assert.isTrue(!db.findNodes(Label.label("Continuum")).hasNext());
+            // one TimeTree per partition, none shared
+            Assert.isTrue(db.findNodes(ContinuumPartitionTimeTree.PARTITION_ROOT).stream().count() == 3);
+            Assert.isTrue(!db.findNodes(TimeTreeLabels.TimeTreeRoot).hasNext());
+            tx.success();
+        }
+        Assert.isTrue(ids(partitions.getPartition("europe-19th").getContinuumNodesOverlapping(date(1700, 1, 1), date(2000, 1, 1))).equals(set(turner)));
+        Continuum continuum = new Continuum(db);
+        Assert.isTrue(continuum.getAllContinuumNodes().isEmpty());
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(date(1700, 1, 1), date(2000, 1, 1)).isEmpty());
+    }
+
+    @Test
+    public void queriesShouldSkipPartitionsThatCantOverlap() {
+        Assert.isTrue(partitions.getCandidatePartitions(new Envelope(-1, 1, 51, 52), date(1850, 1, 1), date(1860, 1, 1)).equals(Arrays.asList("europe-19th", "elsewhere")));
+        Assert.isTrue(partitions.getCandidatePartitions(new Envelope(130, 140, 30, 40), date(1850, 1, 1), date(1860, 1, 1)).equals(Arrays.asList("elsewhere")));
+        Assert.isTrue(partitions.getCandidatePartitions(new Envelope(-1, 1, 51, 52), date(1930, 1, 1), date(1940, 1, 1)).equals(Arrays.asList("europe-20th", "elsewhere")));
+
+        Assert.isTrue(ids(partitions.getContinuumNodesOverlapping(date(1845, 1, 1), date(1850, 1, 1))).equals(set(turner, monet, hokusai)));
+        Assert.isTrue(ids(partitions.getContinuumNodesOverlapping(date(1920, 1, 1), date(1930, 1, 1))).equals(set(monet, picasso)));
+    }
+
+    @Test
+    public void removingTheLastNodeShouldDropThePartitionTimeTree() {
+        Continuum twentieth = partitions.getPartition("europe-20th");
+        Assert.isTrue(twentieth.removeContinuumNode(picasso));
+        Assert.isTrue(twentieth.getContinuumNodesOverlapping(date(1900, 1, 1), date(2000, 1, 1)).isEmpty());
+        try (Transaction tx = db.beginTx()) {
+            Assert.isTrue(db.findNode(ContinuumPartitionTimeTree.PARTITION_ROOT, "name", "europe-20th") == null);
+            tx.success();
+        }
+        // and a new write creates it again
+        try (Transaction tx = db.beginTx()) {
+            partitions.addContinuumCapabilitiesToNode(db.createNode(), 52.52, 13.40, date(1920, 1, 1), date(1930, 1, 1));
+            tx.success();
+        }
+        Assert.isTrue(twentieth.getContinuumNodesOverlapping(date(1900, 1, 1), date(2000, 1, 1)).size() == 1);
+    }
+
+    @Test
+    public void partitionRootsShouldStayUniqueAcrossTimeTrees() {
+        try (Transaction tx = db.beginTx()) {
+            Assert.isTrue(db.schema().getConstraints(ContinuumPartitionTimeTree.PARTITION_ROOT).iterator().hasNext());
+            tx.success();
+        }
+        // two trees of the same partition, e.g. two Continuum instances, creating its root at the same time
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for(int i=0;i<2;i++) {
+            ContinuumPartitionTimeTree tree = new ContinuumPartitionTimeTree(db, "europe-21st");
+            writers.add(CompletableFuture.runAsync(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    tree.getOrCreateInstant(TimeInstant.instant(date(2001, 1, 1).getMillis()));
+                    tx.success();
+                }
+            }));
+        }
+        writers.forEach(CompletableFuture::join);
+        try (Transaction tx = db.beginTx()) {
+            Assert.isTrue(db.findNodes(ContinuumPartitionTimeTree.PARTITION_ROOT, "name", "europe-21st").stream().count() == 1);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void closeShouldCloseEveryPartition() {
+        for(String name : partitions.getPartitionNames()) partitions.getPartition(name).enableQueryCache(10, 100);
+        partitions.close();
+        for(String name : partitions.getPartitionNames()) Assert.isTrue(partitions.getPartition(name).getQueryCache() == null);
+    }
+
+    @Test
+    public void spatialQueriesShouldMergeTheCandidatePartitions() {
+        GeometryFactory factory = new GeometryFactory();
+        List<Node> inEurope = partitions.getContinuumNodes(factory.toGeometry(EUROPE), date(1845, 1, 1), date(1930, 1, 1));
+        Assert.isTrue(ids(inEurope).equals(set(turner, monet, picasso)));
+    }
+
+    private long record(List<ContinuumRecord> records, double lat, double lon, DateTime start, DateTime end) {
+        Node node = db.createNode();
+        records.add(new ContinuumRecord(node, lat, lon, start, end));
+        return node.getId();
+    }
+
+    private static Set<Long> ids(List<Node> nodes) {
+        return nodes.stream().map(Node::getId).collect(Collectors.toSet());
+    }
+
+    private static Set<Long> set(Long... ids) {
+        return Arrays.stream(ids).collect(Collectors.toSet());
+    }
+
+    private static DateTime date(int year, int month, int day) {
+        return new DateTime(year, month, day, 0, 0, DateTimeZone.UTC);
+    }
+
+}
@@ -0,0 +1,95 @@
+import org.codehaus.jackson.JsonNode;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.server.CommunityNeoServer;
+import org.neo4j.server.helpers.CommunityServerBuilder;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.springframework.util.Assert;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+public class ContinuumProceduresTest {
+
+    private CommunityNeoServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = CommunityServerBuilder.server().build();
+        server.start();
+        ((GraphDatabaseAPI) server.getDatabase().getGraph()).getDependencyResolver().resolveDependency(Procedures.class).register(ContinuumProcedures.class);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void shouldInsertAndQueryInOneRoundTripEach() throws Exception {
+        long start = new DateTime(1850, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        long end = new DateTime(1860, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("start", start);
+        parameters.put("end", end);
+
+        JsonNode inserted = commit(statement(
+                "UNWIND range(0, 49) AS i CREATE (n:ProcedureTest) " +
+                "WITH collect({nodeId: id(n), lat: 56.0 + i * 0.01, lon: 15.0 + i * 0.01, start: {start}, end: {end}}) AS records " +
+                "CALL continuum.addAll(records, 20) YIELD added RETURN added", parameters));
+        Assert.isTrue(inserted.get("errors").size() == 0);
+        Assert.isTrue(inserted.get("results").get(0).get("data").get(0).get("row").get(0).asLong() == 50);
+
+        // several queries, one request
+        Map<String, Object> within = new HashMap<>(parameters);
+        within.put("wkt", "POLYGON((15 56, 15.2 56, 15.2 56.2, 15 56.2, 15 56))");
+        JsonNode queried = commit(
+                statement("CALL continuum.within({wkt}, {start}, {end}) YIELD nodeId MATCH (n:ProcedureTest) WHERE id(n) = nodeId RETURN n", within),
+                statement("CALL continuum.nearest(56.0, 15.0, 3, {start}, {end}) YIELD nodeId, distance RETURN nodeId, distance", parameters),
+                statement("CALL continuum.within({wkt}, 0, 1) YIELD nodeId RETURN nodeId", within),
+                statement("CREATE (n:ProcedureTest) WITH n CALL continuum.add(id(n), 56.0, 15.0, {start}, {end}) YIELD nodeId RETURN nodeId = id(n)", parameters));
+        Assert.isTrue(queried.get("errors").size() == 0);
+        JsonNode results = queried.get("results");
+        Assert.isTrue(results.get(0).get("data").size() == 21);
+        Assert.isTrue(results.get(1).get("data").size() == 3);
+        Assert.isTrue(results.get(1).get("data").get(0).get("row").get(1).asDouble() == 0);
+        Assert.isTrue(results.get(2).get("data").size() == 0);
+        Assert.isTrue(results.get(3).get("data").get(0).get("row").get(0).asBoolean());
+    }
+
+    // one request to the transactional endpoint, the statements run and commit together
+    private JsonNode commit(Map<?, ?>... statements) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) server.baseUri().resolve("db/data/transaction/commit").toURL().openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(JsonHelper.createJsonFrom(Collections.singletonMap("statements", Arrays.asList(statements))).getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = connection.getInputStream(); Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A")) {
+            return JsonHelper.jsonNode(scanner.hasNext() ? scanner.next() : "");
+        }
+    }
+
+    private static Map<String, Object> statement(String statement, Map<String, Object> parameters) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("statement", statement);
+        result.put("parameters", parameters);
+        return result;
+    }
+
+}
@@ -0,0 +1,80 @@
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ContinuumQueryCacheTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void shouldOnlyEvictEntriesTheChangeIntersects() {
+        ContinuumQueryCache cache = new ContinuumQueryCache(100, 1000);
+        ContinuumQueryCache.Key london = ContinuumQueryCache.key(area(-0.5, 0.3, 51.3, 51.7), 0, 100);
+        ContinuumQueryCache.Key paris = ContinuumQueryCache.key(area(2.2, 2.5, 48.8, 48.9), 0, 100);
+        ContinuumQueryCache.Key londonLater = ContinuumQueryCache.key(area(-0.5, 0.3, 51.3, 51.7), 200, 300);
+        cache.put(london, nodes(3), cache.generation());
+        cache.put(paris, nodes(3), cache.generation());
+        cache.put(londonLater, nodes(3), cache.generation());
+
+        cache.invalidate(51.5, -0.1, 50, 60);
+
+        Assert.isTrue(cache.get(london) == null);
+        Assert.isTrue(cache.get(paris) != null);
+        Assert.isTrue(cache.get(londonLater) != null);
+        Assert.isTrue(cache.getHitCount() == 2 && cache.getMissCount() == 1 && cache.getInvalidationCount() == 1);
+    }
+
+    @Test
+    public void aCommitShouldEvictTheEntriesOfAllItsRegionsAtOnce() {
+        ContinuumQueryCache cache = new ContinuumQueryCache(100, 1000);
+        ContinuumQueryCache.Key london = ContinuumQueryCache.key(area(-0.5, 0.3, 51.3, 51.7), 0, 100);
+        ContinuumQueryCache.Key paris = ContinuumQueryCache.key(area(2.2, 2.5, 48.8, 48.9), 0, 100);
+        ContinuumQueryCache.Key rome = ContinuumQueryCache.key(area(12.4, 12.6, 41.8, 42.0), 0, 100);
+        // too large for the grid
+        ContinuumQueryCache.Key world = ContinuumQueryCache.key(area(-180, 180, -90, 90), 0, 100);
+        for(ContinuumQueryCache.Key key : Arrays.asList(london, paris, rome, world)) cache.put(key, nodes(3), cache.generation());
+
+        cache.invalidate(Arrays.asList(new double[]{51.5, -0.1, 50, 60}, new double[]{48.85, 2.35, 50, 60}));
+
+        Assert.isTrue(cache.get(london) == null && cache.get(paris) == null && cache.get(world) == null);
+        Assert.isTrue(cache.get(rome) != null);
+        Assert.isTrue(cache.size() == 1 && cache.getWeight() == 4 && cache.getInvalidationCount() == 3);
+    }
+
+    @Test
+    public void shouldStayWithinItsWeight() {
+        ContinuumQueryCache cache = new ContinuumQueryCache(100, 25);
+        for(int i=0;i<10;i++) cache.put(ContinuumQueryCache.key(area(i, i + 1, 0, 1), 0, 1), nodes(9), cache.generation());
+
+        Assert.isTrue(cache.getWeight() <= 25);
+        Assert.isTrue(cache.size() == 2);
+        Assert.isTrue(cache.getEvictionCount() == 8);
+    }
+
+    @Test
+    public void shouldNotStoreResultsComputedDuringAnInvalidation() {
+        ContinuumQueryCache cache = new ContinuumQueryCache(100, 1000);
+        ContinuumQueryCache.Key key = ContinuumQueryCache.key(area(0, 1, 0, 1), 0, 1);
+        long generation = cache.generation();
+        cache.invalidate(0.5, 0.5, 0, 1);
+        cache.put(key, nodes(1), generation);
+
+        Assert.isTrue(cache.get(key) == null);
+    }
+
+    private Geometry area(double minX, double maxX, double minY, double maxY) {
+        return geometryFactory.toGeometry(new Envelope(minX, maxX, minY, maxY));
+    }
+
+    private static List<Node> nodes(int count) {
+        return Collections.nCopies(count, null);
+    }
+
+}
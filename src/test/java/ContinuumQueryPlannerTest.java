@@ -0,0 +1,154 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ContinuumQueryPlannerTest {
+
+    // the dense side: a small area full of nodes over a whole century
+    private static final Envelope CLUSTER = new Envelope(15.0, 16.0, 56.0, 57.0);
+    private static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    private GraphDatabaseService db;
+    private Continuum continuum;
+    private ContinuumMetricsRegistry metrics;
+    private ContinuumQueryPlanner planner;
+
+    @Before
+    public void setUp() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        continuum = new Continuum(db);
+        metrics = new ContinuumMetricsRegistry();
+        planner = new ContinuumQueryPlanner(db, () -> metrics);
+
+        Random random = new Random(11);
+        List<ContinuumRecord> records = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            for(int i=0;i<300;i++) {
+                DateTime start = date(1800, 1, 1).plusDays(random.nextInt(100 * 365));
+                records.add(new ContinuumRecord(db.createNode(Label.label("PlannerTest")),
+                        CLUSTER.getMinY() + random.nextDouble(), CLUSTER.getMinX() + random.nextDouble(), start, start.plusYears(1)));
+            }
+            // the sparse side: a few nodes all over the world, all in the first half of 1650
+            for(int i=0;i<20;i++) {
+                DateTime start = date(1650, 1, 1).plusDays(random.nextInt(180));
+                records.add(new ContinuumRecord(db.createNode(Label.label("PlannerTest")),
+                        random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, start, start.plusDays(1)));
+            }
+            tx.success();
+        }
+        continuum.addContinuumCapabilitiesToNodes(records, 100);
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void choosePlanShouldDriveFromTheSmallerSide() {
+        Assert.isTrue(planner.choosePlan(10, 1000) == ContinuumQueryPlanner.Plan.SPATIAL_FIRST);
+        Assert.isTrue(planner.choosePlan(1000, 10) == ContinuumQueryPlanner.Plan.TEMPORAL_FIRST);
+        Assert.isTrue(planner.choosePlan(10, 10) == ContinuumQueryPlanner.Plan.SPATIAL_FIRST);
+    }
+
+    @Test
+    public void spatialEstimateShouldFollowTheData() {
+        try (Transaction tx = db.beginTx()) {
+            Layer layer = continuum.createOrRetrieveContinuumLayer();
+            // every leaf lies within the world, so nothing is scaled
+            Assert.isTrue(planner.estimateSpatialCardinality(layer, WORLD) == 320);
+            // a hundredth of the cluster
+            long small = planner.estimateSpatialCardinality(layer, new Envelope(15.4, 15.5, 56.4, 56.5));
+            Assert.isTrue(small < 50 && small < planner.estimateSpatialCardinality(layer, CLUSTER));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void smallAreaOverAWideWindowShouldBeDrivenFromSpace() {
+        Envelope envelope = new Envelope(15.4, 15.5, 56.4, 56.5);
+        List<Node> found = execute(envelope, date(1800, 1, 1), date(1900, 1, 1));
+
+        Assert.isTrue(metrics.getCount("query.plan.spatialFirst") == 1 && metrics.getCount("query.plan.temporalFirst") == 0);
+        Assert.isTrue(new HashSet<>(found).equals(bruteForce(envelope, date(1800, 1, 1), date(1900, 1, 1))));
+    }
+
+    @Test
+    public void largeAreaOverANarrowWindowShouldBeDrivenFromTime() {
+        List<Node> found = execute(WORLD, date(1650, 1, 1), date(1650, 12, 31));
+
+        Assert.isTrue(metrics.getCount("query.plan.temporalFirst") == 1 && metrics.getCount("query.plan.spatialFirst") == 0);
+        Assert.isTrue(metrics.getValue("query.temporal.candidates").snapshot(1).getMax() == 20);
+        Assert.isTrue(found.size() == 20);
+    }
+
+    @Test
+    public void bothPlansShouldReturnTheSameNodes() {
+        Envelope[] envelopes = {CLUSTER, new Envelope(15.4, 15.5, 56.4, 56.5), new Envelope(0, 90, 0, 45), WORLD};
+        DateTime[][] windows = {{date(1650, 1, 1), date(1650, 12, 31)}, {date(1850, 1, 1), date(1860, 1, 1)}, {date(1600, 1, 1), date(1950, 1, 1)}};
+        for(Envelope envelope : envelopes) {
+            for(DateTime[] window : windows) {
+                Set<Node> expected = bruteForce(envelope, window[0], window[1]);
+                for(ContinuumQueryPlanner.Plan plan : ContinuumQueryPlanner.Plan.values()) {
+                    try (Transaction tx = db.beginTx()) {
+                        Layer layer = continuum.createOrRetrieveContinuumLayer();
+                        Geometry geometry = layer.getGeometryFactory().toGeometry(envelope);
+                        Set<Node> found = planner.stream(layer, geometry, continuum.intervalIndex(), window[0].getMillis(), window[1].getMillis(), plan)
+                                .collect(Collectors.toSet());
+                        Assert.isTrue(found.equals(expected), plan + " differs for " + envelope + " from " + window[0] + " to " + window[1]);
+                        tx.success();
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Node> execute(Envelope envelope, DateTime startTime, DateTime endTime) {
+        try (Transaction tx = db.beginTx()) {
+            Layer layer = continuum.createOrRetrieveContinuumLayer();
+            List<Node> found = planner.execute(layer, layer.getGeometryFactory().toGeometry(envelope), continuum.intervalIndex(), startTime.getMillis(), endTime.getMillis());
+            tx.success();
+            return found;
+        }
+    }
+
+    // every Continuum node, checked one by one
+    private Set<Node> bruteForce(Envelope envelope, DateTime startTime, DateTime endTime) {
+        try (Transaction tx = db.beginTx()) {
+            GeometryFactory factory = continuum.createOrRetrieveContinuumLayer().getGeometryFactory();
+            Geometry geometry = factory.toGeometry(envelope);
+            Set<Node> expected = continuum.streamAllContinuumNodes().filter(t -> {
+                long[] span = TimeTreeSpans.spanOf(t);
+                return factory.createPoint(new Coordinate((Double) t.getProperty("lon"), (Double) t.getProperty("lat"))).within(geometry)
+                        && span[0] <= endTime.getMillis() && span[1] >= startTime.getMillis();
+            }).collect(Collectors.toSet());
+            tx.success();
+            return expected;
+        }
+    }
+
+    private static DateTime date(int year, int month, int day) {
+        return new DateTime(year, month, day, 0, 0, DateTimeZone.UTC);
+    }
+
+}
@@ -0,0 +1,120 @@
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ContinuumSubscriptionsTest {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    @Test
+    public void matchesShouldEqualTestingEverySubscription() {
+        ContinuumSubscriptions subscriptions = new ContinuumSubscriptions();
+        List<ContinuumSubscription> all = new ArrayList<>();
+        Random random = new Random(11);
+        for(int i=0;i<2000;i++) {
+            // mostly city sized fences, some covering whole continents
+            double size = i % 50 == 0 ? 60 + random.nextDouble() * 120 : random.nextDouble() * 3;
+            double lat = random.nextDouble() * 170 - 85;
+            double lon = random.nextDouble() * 350 - 175;
+            long start = random.nextInt(1000);
+            Geometry geometry = i % 3 == 0
+                    ? GEOMETRY_FACTORY.createPoint(new Coordinate(lon, lat)).buffer(size / 2)
+                    : GEOMETRY_FACTORY.toGeometry(new Envelope(lon - size / 2, lon + size / 2, lat - size / 2, lat + size / 2));
+            all.add(subscriptions.subscribe(geometry, start, start + random.nextInt(200), (s, n) -> {}));
+        }
+        for(int i=0;i<500;i++) subscriptions.unsubscribe(all.remove(random.nextInt(all.size())));
+        Assert.isTrue(subscriptions.size() == 1500);
+
+        for(int i=0;i<5000;i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            long start = random.nextInt(1200);
+            long end = start + random.nextInt(20);
+            Set<ContinuumSubscription> expected = new HashSet<>();
+            for(ContinuumSubscription subscription : all) {
+                if(subscription.getStartTime() <= end && subscription.getEndTime() >= start
+                        && GEOMETRY_FACTORY.createPoint(new Coordinate(lon, lat)).within(subscription.getGeometry())) expected.add(subscription);
+            }
+            List<ContinuumSubscription> matches = subscriptions.getMatches(lat, lon, start, end);
+            Assert.isTrue(matches.size() == expected.size() && expected.containsAll(matches));
+        }
+    }
+
+    @Test
+    public void committedNodesShouldBePushedToTheirSubscriptions() throws InterruptedException {
+        GraphDatabaseService db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        try {
+            Continuum continuum = new Continuum(db);
+            BlockingQueue<List<Node>> london = new LinkedBlockingQueue<>();
+            Geometry aroundLondon = GEOMETRY_FACTORY.toGeometry(new Envelope(-0.5, 0.3, 51.3, 51.7));
+            continuum.subscribe(aroundLondon, date(1800), date(1850), (s, nodes) -> london.add(nodes));
+
+            long turner = create(db, 51.51, -0.13, date(1775), date(1851));
+            create(db, 48.85, 2.35, date(1800), date(1850));
+            create(db, 51.50, -0.12, date(1900), date(1950));
+            List<Node> delivered = london.poll(5, TimeUnit.SECONDS);
+            Assert.isTrue(delivered != null && delivered.size() == 1 && delivered.get(0).getId() == turner);
+
+            // a rolled back node is never delivered, a node moved into the fence is
+            try (Transaction tx = db.beginTx()) {
+                node(db, 51.52, -0.1, date(1820), date(1830));
+                tx.failure();
+            }
+            long moved = create(db, 48.85, 2.35, date(1810), date(1820));
+            try (Transaction tx = db.beginTx()) {
+                Node node = db.getNodeById(moved);
+                node.setProperty("lat", 51.45);
+                node.setProperty("lon", -0.2);
+                tx.success();
+            }
+            delivered = london.poll(5, TimeUnit.SECONDS);
+            Assert.isTrue(delivered != null && delivered.size() == 1 && delivered.get(0).getId() == moved);
+            Assert.isTrue(london.poll(200, TimeUnit.MILLISECONDS) == null);
+            continuum.disableSubscriptions();
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    private static long create(GraphDatabaseService db, double lat, double lon, DateTime start, DateTime end) {
+        try (Transaction tx = db.beginTx()) {
+            long id = node(db, lat, lon, start, end).getId();
+            tx.success();
+            return id;
+        }
+    }
+
+    // what Continuum writes on a node, without the layer and the TimeTree links
+    private static Node node(GraphDatabaseService db, double lat, double lon, DateTime start, DateTime end) {
+        Node node = db.createNode(Label.label("Continuum"));
+        node.setProperty("lat", lat);
+        node.setProperty("lon", lon);
+        node.setProperty(TimeTreeSpans.START_TIME, start.getMillis());
+        node.setProperty(TimeTreeSpans.END_TIME, end.getMillis());
+        return node;
+    }
+
+    private static DateTime date(int year) {
+        return new DateTime(year, 1, 1, 0, 0, DateTimeZone.UTC);
+    }
+
+}
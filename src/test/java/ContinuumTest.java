@@ -1,21 +1,37 @@
+import com.graphaware.module.timetree.SingleTimeTree;
 import com.graphaware.module.timetree.TimeTree;
 import com.graphaware.module.timetree.TimedEvents;
+import com.graphaware.module.timetree.domain.Resolution;
+import com.graphaware.module.timetree.domain.TimeInstant;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.neo4j.gis.spatial.EditableLayer;
 import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.gis.spatial.pipes.GeoPipeline;
 import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.test.TestGraphDatabaseFactory;
 import org.springframework.util.Assert;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Created by user on 25/07/2016.
@@ -42,6 +58,13 @@ public class ContinuumTest {
         db.shutdown();
     }
 
+    // for tests that count what they find, the permanent store keeps the nodes of earlier runs
+    private void useImpermanentDatabase() {
+        db.shutdown();
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        continuum = new Continuum(db);
+    }
+
     // 1. add to geospatial
     // 2. create timenode for start and end
     // 3. create relationship to both
@@ -73,6 +96,409 @@ public class ContinuumTest {
         }
     }
 
+    @Test
+    public void addingContinuumNodesInBatchesShouldMakeThemSearchable() {
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+            DateTime startDate = new DateTime(1750, 1, 1, 0, 0, UTC);
+            DateTime endDate = new DateTime(1760, 1, 1, 0, 0, UTC);
+            List<ContinuumRecord> records = new ArrayList<>();
+            for(int i=0;i<250;i++) {
+                Node continuumNode = db.createNode(Label.label("BatchTest"));
+                records.add(new ContinuumRecord(continuumNode, TestUtils.getRandomLatInEnvelope(envelope), TestUtils.getRandomLonInEnvelope(envelope), startDate, endDate));
+            }
+
+            long added = continuum.addContinuumCapabilitiesToNodes(records, 100);
+
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            List<Node> retrievedNodes = continuum.getContinuumNodes( toSearchIn, startDate, endDate );
+            Assert.isTrue(added == 250);
+            Assert.isTrue(retrievedNodes.containsAll(records.stream().map(ContinuumRecord::getNode).collect(Collectors.toList())));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void batchesShouldCommitOnTheirOwnAndBadRecordsShouldFailBeforeAnyCommit() {
+        useImpermanentDatabase();
+        DateTime startDate = new DateTime(1750, 1, 1, 0, 0, UTC);
+        DateTime endDate = new DateTime(1760, 1, 1, 0, 0, UTC);
+        List<ContinuumRecord> records = new ArrayList<>();
+        try(Transaction tx = db.beginTx()) {
+            for(int i=0;i<250;i++) records.add(new ContinuumRecord(db.createNode(Label.label("BatchTest")), TestUtils.getRandomLat(), TestUtils.getRandomLon(), startDate, endDate));
+            tx.success();
+        }
+        AtomicInteger commits = new AtomicInteger();
+        db.registerTransactionEventHandler(new TransactionEventHandler.Adapter<Object>() {
+            @Override
+            public void afterCommit(TransactionData data, Object state) {
+                commits.incrementAndGet();
+            }
+        });
+
+        List<ContinuumRecord> bad = new ArrayList<>(records.subList(0, 200));
+        try(Transaction tx = db.beginTx()) {
+            bad.add(new ContinuumRecord(db.createNode(Label.label("BatchTest")), 0, 0, endDate, startDate));
+            tx.success();
+        }
+        commits.set(0);
+        try {
+            continuum.addContinuumCapabilitiesToNodes(bad, 100);
+            Assert.isTrue(false);
+        } catch (Error e) {
+            Assert.isTrue(commits.get() == 0);
+        }
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).isEmpty());
+
+        Assert.isTrue(continuum.addContinuumCapabilitiesToNodes(records, 100) == 250);
+        Assert.isTrue(commits.get() == 3);
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).size() == 250);
+    }
+
+    @Test
+    public void layerCreatedByARolledBackTransactionShouldBeCreatedAgain() {
+        useImpermanentDatabase();
+        try(Transaction tx = db.beginTx()) {
+            continuum.createOrRetrieveContinuumLayer();
+            tx.failure();
+        }
+        try(Transaction tx = db.beginTx()) {
+            Node layerNode = continuum.createOrRetrieveContinuumLayer().getLayerNode();
+            Assert.isTrue("Continuum".equals(layerNode.getProperty("layer")));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void inMemoryIndexesShouldOnlyHoldCommittedWrites() {
+        useImpermanentDatabase();
+        DateTime startDate = new DateTime(1520, 1, 1, 0, 0, UTC);
+        DateTime endDate = new DateTime(1530, 1, 1, 0, 0, UTC);
+        // built before the writes, so they have to be applied to it
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).isEmpty());
+
+        try(Transaction tx = db.beginTx()) {
+            Node uncommitted = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("CommitTest")), 10.0, 10.0, startDate, endDate);
+            // the writer reads its own writes, other threads only see them once committed
+            Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).equals(Collections.singletonList(uncommitted)));
+            Assert.isTrue(CompletableFuture.supplyAsync(() -> continuum.getContinuumNodesOverlapping(startDate, endDate)).join().isEmpty());
+            tx.failure();
+        }
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).isEmpty());
+
+        Node committed;
+        try(Transaction tx = db.beginTx()) {
+            committed = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("CommitTest")), 10.0, 10.0, startDate, endDate);
+            tx.success();
+        }
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).equals(Collections.singletonList(committed)));
+
+        // a write that doesn't go through Continuum
+        try(Transaction tx = db.beginTx()) {
+            committed.removeLabel(Label.label("Continuum"));
+            tx.success();
+        }
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(startDate, endDate).isEmpty());
+    }
+
+    @Test
+    public void metricsShouldTimeIngestAndQueryPhases() {
+        useImpermanentDatabase();
+        ContinuumMetricsRegistry metrics = continuum.enableMetrics("ContinuumTest");
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+            insertRandomContinuumNodesInEnvelope(100, envelope, DateTime.now(), DateTime.now().plusDays(1));
+
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            continuum.getContinuumNodes(toSearchIn, DateTime.now(), DateTime.now().plusHours(1));
+
+            Assert.isTrue(metrics.getCount("ingest.nodes") == 100);
+            Assert.isTrue(metrics.getLatency("ingest.timetree").getCount() == 100 && metrics.getLatency("ingest.rtree").getCount() == 100);
+            Assert.isTrue(metrics.getLatency("query").getCount() == 1 && metrics.getLatency("query.plan").getCount() == 1);
+            Assert.isTrue(metrics.getValue("query.results").snapshot(1).getMax() == 100);
+            tx.success();
+        } finally {
+            continuum.disableMetrics();
+        }
+        Assert.isTrue(metrics.getObjectName() == null && !continuum.getMetrics().isEnabled());
+    }
+
+    @Test
+    public void shouldRetrieveNodesLivingLongerThanTheTimeframe() {
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(-0.5, 0.3, 51.3, 51.7);
+            Node painter = db.createNode(Label.label("EnvelopeTest"));
+            continuum.addContinuumCapabilitiesToNode(painter, 51.5, -0.1, new DateTime(1780, 1, 1, 0, 0, UTC), new DateTime(1860, 1, 1, 0, 0, UTC));
+
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            DateTime startDate = new DateTime(1800, 1, 1, 0, 0, UTC);
+            DateTime endDate = new DateTime(1850, 1, 1, 0, 0, UTC);
+
+            Assert.isTrue(continuum.getContinuumNodes(toSearchIn, startDate, endDate).contains(painter));
+            Assert.isTrue(continuum.getContinuumNodesCovering(startDate, endDate).contains(painter));
+            Assert.isTrue(!continuum.getContinuumNodesContainedIn(startDate, endDate).contains(painter));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void spaceTimeBackendShouldReturnTheSameNodesAsTheDualIndex() {
+        Continuum spaceTime = new Continuum(db, ContinuumIndexEngine.Backend.SPACE_TIME);
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+            insertRandomContinuumNodesInEnvelope(50, envelope, DateTime.now(), DateTime.now().plusDays(1));
+            insertRandomContinuumNodesOutsideEnvelope(50, envelope, DateTime.now(), DateTime.now().plusDays(1));
+
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            DateTime startDate = DateTime.now().plusHours(1);
+            DateTime endDate = DateTime.now().plusHours(4);
+            Set<Node> dualIndexNodes = new HashSet<>(continuum.getContinuumNodes(toSearchIn, startDate, endDate));
+            Set<Node> spaceTimeNodes = new HashSet<>(spaceTime.getContinuumNodes(toSearchIn, startDate, endDate));
+
+            Assert.isTrue(dualIndexNodes.equals(spaceTimeNodes));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldPageThroughResultsWithoutDuplicates() {
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+            DateTime startDate = new DateTime(1650, 1, 1, 0, 0, UTC);
+            DateTime endDate = new DateTime(1660, 1, 1, 0, 0, UTC);
+            List<Node> inserted = new ArrayList<>();
+            for(int i=0;i<25;i++) {
+                Node continuumNode = db.createNode(Label.label("PageTest"));
+                continuum.addContinuumCapabilitiesToNode(continuumNode, TestUtils.getRandomLatInEnvelope(envelope), TestUtils.getRandomLonInEnvelope(envelope), startDate.plusMonths(i), startDate.plusMonths(i + 1));
+                inserted.add(continuumNode);
+            }
+
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            List<Node> paged = new ArrayList<>();
+            ContinuumPage page = continuum.getContinuumNodesPage(toSearchIn, startDate, endDate, null, 10);
+            paged.addAll(page.getNodes());
+            while(page.hasNext()) {
+                page = continuum.getContinuumNodesPage(toSearchIn, startDate, endDate, ContinuumCursor.fromToken(page.getNext().toToken()), 10);
+                paged.addAll(page.getNodes());
+            }
+
+            Assert.isTrue(paged.containsAll(inserted));
+            Assert.isTrue(new HashSet<>(paged).size() == paged.size());
+            Assert.isTrue(continuum.streamContinuumNodes(toSearchIn, startDate, endDate, 0, 5).count() == 5);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void pagesShouldBeChronologicalAndTheLastOneShouldHaveNoCursor() {
+        useImpermanentDatabase();
+        Envelope small = new Envelope(15.0, 15.1, 56.0, 56.1);
+        Envelope world = new Envelope(-180, 180, -90, 90);
+        DateTime startDate = new DateTime(1650, 1, 1, 0, 0, UTC);
+        DateTime endDate = new DateTime(1670, 1, 1, 0, 0, UTC);
+        Set<Node> inSmall = new HashSet<>();
+        try(Transaction tx = db.beginTx()) {
+            // few nodes in the small envelope and many elsewhere in the same window, so the small envelope is paged through the engine
+            for(int i=0;i<20;i++) {
+                inSmall.add(continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("PageTest")), TestUtils.getRandomLatInEnvelope(small), TestUtils.getRandomLonInEnvelope(small), startDate.plusMonths(i), startDate.plusMonths(i + 1)));
+            }
+            for(int i=0;i<200;i++) {
+                continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("PageTest")), 40 + i * 0.01, 10 + i * 0.01, startDate.plusMonths(i), startDate.plusMonths(i + 1));
+            }
+            tx.success();
+        }
+
+        try(Transaction tx = db.beginTx()) {
+            GeometryFactory factory = continuum.createOrRetrieveContinuumLayer().getGeometryFactory();
+            Assert.isTrue(new HashSet<>(page(factory.toGeometry(small), startDate, endDate, 10)).equals(inSmall));
+            Assert.isTrue(page(factory.toGeometry(world), startDate, endDate, 10).size() == 220);
+            Assert.isTrue(page(factory.toGeometry(world), startDate, endDate, 7).size() == 220);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void parallelQueriesShouldReturnTheSameNodesAsTheSequentialPath() {
+        useImpermanentDatabase();
+        Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+        DateTime startDate = new DateTime(1700, 1, 1, 0, 0, UTC);
+        DateTime endDate = new DateTime(1700, 6, 1, 0, 0, UTC);
+        try(Transaction tx = db.beginTx()) {
+            insertRandomContinuumNodesInEnvelope(50, envelope, startDate, endDate);
+            tx.success();
+        }
+
+        Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+        List<Node> sequential = continuum.getContinuumNodes(toSearchIn, startDate, endDate);
+        Set<Node> sequentialAll = new HashSet<>(continuum.getAllContinuumNodes());
+        Assert.isTrue(sequential.size() == 50);
+        continuum.enableParallelQueries(4);
+        try {
+            List<Node> parallel = continuum.getContinuumNodes(toSearchIn, startDate, endDate);
+            // same plan, same order
+            Assert.isTrue(parallel.equals(sequential));
+            Assert.isTrue(new HashSet<>(continuum.getAllContinuumNodes()).equals(sequentialAll));
+        } finally {
+            continuum.disableParallelQueries();
+        }
+    }
+
+    @Test
+    public void closeShouldStopKeepingTheIndexesInSync() {
+        useImpermanentDatabase();
+        IntervalIndex intervals = continuum.intervalIndex();
+        AtomicInteger matches = new AtomicInteger();
+        continuum.enableQueryCache(10, 1000);
+        continuum.enableSubscriptions(Runnable::run);
+        continuum.subscribe(new GeometryFactory().toGeometry(new Envelope(-180, 180, -90, 90)), new DateTime(1800, 1, 1, 0, 0, UTC), new DateTime(1900, 1, 1, 0, 0, UTC), (subscription, nodes) -> matches.addAndGet(nodes.size()));
+        continuum.close();
+
+        try(Transaction tx = db.beginTx()) {
+            continuum.addContinuumCapabilitiesToNode(db.createNode(), 51.5, -0.1, new DateTime(1850, 1, 1, 0, 0, UTC), new DateTime(1860, 1, 1, 0, 0, UTC));
+            tx.success();
+        }
+        Assert.isTrue(intervals.size() == 0 && matches.get() == 0);
+        Assert.isTrue(continuum.getQueryCache() == null && continuum.getSubscriptions() == null);
+    }
+
+    @Test
+    public void aggregationsShouldOutliveTheContinuumThatEnabledThem() {
+        useImpermanentDatabase();
+        DateTime start = new DateTime(1870, 5, 1, 0, 0, UTC);
+        continuum.enableAggregation("works", "profession", null);
+        continuum.close();
+
+        Continuum restarted = new Continuum(db);
+        Node painter;
+        try(Transaction tx = db.beginTx()) {
+            painter = db.createNode();
+            painter.setProperty("profession", "painter");
+            restarted.addContinuumCapabilitiesToNode(painter, 48.8, 2.3, start, start.plusYears(30));
+            tx.success();
+        }
+        try(Transaction tx = db.beginTx()) {
+            painter.setProperty("profession", "sculptor");
+            tx.success();
+        }
+        ContinuumAggregate works = restarted.summarizeDataByField("works", start, start.plusYears(1));
+        Assert.isTrue(works.getCount() == 1 && works.getCount("sculptor") == 1 && works.getCount("painter") == 0);
+
+        restarted.removeContinuumNode(painter.getId());
+        Assert.isTrue(restarted.summarizeDataByField("works", start, start.plusYears(1)).getCount() == 0);
+        restarted.disableAggregation("works");
+        restarted.close();
+        try {
+            new Continuum(db).summarizeDataByField("works", start, start.plusYears(1));
+            Assert.isTrue(false);
+        } catch (Error e) {
+            // the definition went with disableAggregation
+        }
+    }
+
+    @Test
+    public void removedAndMovedNodesShouldLeaveTheirOldPlace() {
+        useImpermanentDatabase();
+        try(Transaction tx = db.beginTx()) {
+            Envelope envelope = new Envelope(15.0, 16.0, 56.0, 57.0);
+            Geometry toSearchIn = continuum.createOrRetrieveContinuumLayer().getGeometryFactory().toGeometry(envelope);
+            DateTime startDate = new DateTime(1612, 3, 1, 0, 0, UTC);
+            DateTime endDate = new DateTime(1612, 4, 1, 0, 0, UTC);
+            Node removed = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, startDate, endDate);
+            Node moved = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, startDate, endDate);
+            Node rescheduled = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, startDate, endDate);
+
+            Assert.isTrue(continuum.removeContinuumNode(removed.getId()));
+            Assert.isTrue(!continuum.removeContinuumNode(removed.getId()));
+            continuum.moveContinuumNode(moved.getId(), 10.0, 10.0);
+            continuum.rescheduleContinuumNode(rescheduled.getId(), startDate.plusYears(1), endDate.plusYears(1));
+
+            List<Node> found = continuum.getContinuumNodes(toSearchIn, startDate, endDate);
+            Assert.isTrue(!found.contains(removed) && !found.contains(moved) && !found.contains(rescheduled));
+            Assert.isTrue(continuum.getContinuumNodes(toSearchIn, startDate.plusYears(1), endDate.plusYears(1)).contains(rescheduled));
+            Assert.isTrue(!removed.hasLabel(Label.label("Continuum")) && !removed.hasRelationship());
+
+            // the R-tree alone, and the whole window, find the moved node at its new place only
+            EditableLayer layer = continuum.createOrRetrieveContinuumLayer();
+            Geometry aroundNewPlace = layer.getGeometryFactory().toGeometry(new Envelope(9.5, 10.5, 9.5, 10.5));
+            Assert.isTrue(GeoPipeline.startWithinSearch(layer, aroundNewPlace).toNodeList().equals(Collections.singletonList(moved)));
+            Assert.isTrue(!GeoPipeline.startWithinSearch(layer, toSearchIn).toNodeList().contains(moved));
+            Assert.isTrue(continuum.getContinuumNodes(aroundNewPlace, startDate, endDate).equals(Collections.singletonList(moved)));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void removalShouldPruneTheInstantsNoOneElseUses() {
+        useImpermanentDatabase();
+        Node lonely, sharing, alone;
+        try(Transaction tx = db.beginTx()) {
+            lonely = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, new DateTime(1614, 2, 3, 0, 0, UTC), new DateTime(1614, 2, 5, 0, 0, UTC));
+            // shares 1614-02-05 with lonely
+            sharing = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, new DateTime(1614, 2, 5, 0, 0, UTC), new DateTime(1614, 3, 1, 0, 0, UTC));
+            // the only node in 1615
+            alone = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, new DateTime(1615, 6, 1, 0, 0, UTC), new DateTime(1615, 6, 2, 0, 0, UTC));
+            tx.success();
+        }
+
+        // one batch per node
+        Assert.isTrue(continuum.removeContinuumNodes(Arrays.asList(lonely.getId(), alone.getId()), 1) == 2);
+        Assert.isTrue(continuum.removeContinuumNodes(Arrays.asList(lonely.getId(), alone.getId()), 1) == 0);
+
+        TimeTree tree = new SingleTimeTree(db);
+        try(Transaction tx = db.beginTx()) {
+            Assert.isTrue(tree.getInstant(instant(1614, 2, 3, Resolution.DAY)) == null);
+            Assert.isTrue(tree.getInstant(instant(1614, 2, 5, Resolution.DAY)) != null);
+            Assert.isTrue(tree.getInstant(instant(1614, 2, 1, Resolution.MONTH)) != null);
+            Assert.isTrue(tree.getInstant(instant(1615, 6, 1, Resolution.DAY)) == null);
+            Assert.isTrue(tree.getInstant(instant(1615, 6, 1, Resolution.MONTH)) == null);
+            Assert.isTrue(tree.getInstant(instant(1615, 1, 1, Resolution.YEAR)) == null);
+            Assert.isTrue(!lonely.hasRelationship() && !alone.hasRelationship() && sharing.hasRelationship());
+            tx.success();
+        }
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(new DateTime(1614, 1, 1, 0, 0, UTC), new DateTime(1615, 12, 31, 0, 0, UTC)).equals(Collections.singletonList(sharing)));
+    }
+
+    @Test
+    public void removingNodesThatDontExistShouldOnlyRemoveTheOthers() {
+        useImpermanentDatabase();
+        Node kept;
+        long missing;
+        try(Transaction tx = db.beginTx()) {
+            kept = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("RemoveTest")), 56.5, 15.5, new DateTime(1616, 4, 23, 0, 0, UTC), new DateTime(1616, 4, 23, 0, 0, UTC));
+            Node deleted = db.createNode(Label.label("RemoveTest"));
+            missing = deleted.getId();
+            deleted.delete();
+            tx.success();
+        }
+
+        Assert.isTrue(!continuum.removeContinuumNode(missing));
+        Assert.isTrue(continuum.removeContinuumNodes(Arrays.asList(missing, kept.getId())) == 1);
+        Assert.isTrue(continuum.getContinuumNodesOverlapping(new DateTime(1616, 1, 1, 0, 0, UTC), new DateTime(1616, 12, 31, 0, 0, UTC)).isEmpty());
+    }
+
+    private static TimeInstant instant(int year, int month, int day, Resolution resolution) {
+        return TimeInstant.instant(new DateTime(year, month, day, 0, 0, UTC).getMillis()).with(UTC).with(resolution);
+    }
+
+    @Test
+    public void nearestShouldSkipNodesOutsideTheWindow() {
+        useImpermanentDatabase();
+        try(Transaction tx = db.beginTx()) {
+            DateTime startDate = new DateTime(1580, 1, 1, 0, 0, UTC);
+            DateTime endDate = new DateTime(1580, 12, 31, 0, 0, UTC);
+            Node closeButLater = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("NearestTest")), 45.0001, 45.0001, startDate.plusYears(5), endDate.plusYears(5));
+            Node close = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("NearestTest")), 45.001, 45.001, startDate, endDate);
+            Node far = continuum.addContinuumCapabilitiesToNode(db.createNode(Label.label("NearestTest")), 45.01, 45.01, startDate, endDate);
+
+            List<ContinuumNeighbour> nearest = continuum.nearest(45.0, 45.0, 2, startDate, endDate);
+            Assert.isTrue(nearest.size() == 2);
+            Assert.isTrue(nearest.get(0).getNode().equals(close) && nearest.get(1).getNode().equals(far));
+            Assert.isTrue(nearest.get(0).getDistance() < nearest.get(1).getDistance());
+            Assert.isTrue(nearest.stream().noneMatch(t -> t.getNode().equals(closeButLater)));
+            tx.success();
+        }
+    }
+
     @Test
     public void shouldRetreiveAllDataFromEnvelope() {
         try(Transaction tx = db.beginTx()) {
@@ -198,6 +624,25 @@ public class ContinuumTest {
     }
 
 
+    // all pages, checking that none is empty, that only the last one has no cursor and that they keep the (start, id) order
+    private List<Node> page(Geometry toSearchIn, DateTime startDate, DateTime endDate, int pageSize) {
+        List<Node> paged = new ArrayList<>();
+        ContinuumCursor after = null;
+        do {
+            ContinuumPage page = continuum.getContinuumNodesPage(toSearchIn, startDate, endDate, after, pageSize);
+            Assert.isTrue(!page.getNodes().isEmpty() && page.getNodes().size() <= pageSize);
+            Assert.isTrue(!page.hasNext() || page.getNodes().size() == pageSize);
+            paged.addAll(page.getNodes());
+            after = page.getNext();
+        } while(after != null);
+        for(int i=1;i<paged.size();i++) {
+            long previous = TimeTreeSpans.spanOf(paged.get(i - 1))[0];
+            long current = TimeTreeSpans.spanOf(paged.get(i))[0];
+            Assert.isTrue(previous < current || previous == current && paged.get(i - 1).getId() < paged.get(i).getId());
+        }
+        return paged;
+    }
+
     private void insertRandomContinuumNodes(int noOfNodes, DateTime startDate, DateTime endDate) {
         for(int i=0;i<noOfNodes;i++) {
             Node continuumNode = db.createNode(Label.label("SimpleTest"));
@@ -212,7 +657,7 @@ public class ContinuumTest {
             double lon = TestUtils.getRandomLonInEnvelope(envelope);
             Assert.isTrue(envelope.contains(lon,lat));
             //System.out.println(lat+"  :  "+ lon + " " + envelope.contains(lat,lon));
-            continuum.addContinuumCapabilitiesToNode(continuumNode, lat, lon, DateTime.now(), DateTime.now().plusDays(1) );
+            continuum.addContinuumCapabilitiesToNode(continuumNode, lat, lon, startDate, endDate );
         }
     }
 
@@ -223,7 +668,7 @@ public class ContinuumTest {
             double lon = TestUtils.getRandomLonOutsideEnvelope(envelope);
             Assert.isTrue(!envelope.contains(lon,lat));
             //System.out.println(lat+"  :  "+ lon + " " + envelope.contains(lat,lon));
-            continuum.addContinuumCapabilitiesToNode(continuumNode, lat, lon, DateTime.now(), DateTime.now().plusDays(1) );
+            continuum.addContinuumCapabilitiesToNode(continuumNode, lat, lon, startDate, endDate );
         }
     }
 
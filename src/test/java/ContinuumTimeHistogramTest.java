@@ -0,0 +1,50 @@
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ContinuumTimeHistogramTest {
+
+    @Test
+    public void shouldFindTheBurst() {
+        Random random = new Random(42);
+        ContinuumTimeHistogram histogram = new ContinuumTimeHistogram(1024);
+        long from = millis(1750), to = millis(1950);
+        for(int i=0;i<2000;i++) {
+            long start = from + (long) (random.nextDouble() * (to - from));
+            histogram.add(start, start + millis(1970) - millis(1900));
+        }
+        // 1000 composers starting between 1850 and 1855
+        for(int i=0;i<1000;i++) {
+            long start = millis(1850) + (long) (random.nextDouble() * (millis(1855) - millis(1850)));
+            histogram.add(start, start + millis(1960) - millis(1900));
+        }
+
+        List<ContinuumTimeCluster> clusters = histogram.clusters(3);
+        ContinuumTimeCluster burst = clusters.get(0);
+        Assert.isTrue(burst.getStart().getYear() >= 1849 && burst.getStart().getYear() <= 1850);
+        Assert.isTrue(burst.getEnd().getYear() >= 1854 && burst.getEnd().getYear() <= 1856);
+        Assert.isTrue(burst.getCount() >= 1000 && burst.getScore() > 2);
+    }
+
+    @Test
+    public void widenedBinsShouldKeepEveryLife() {
+        ContinuumTimeHistogram histogram = new ContinuumTimeHistogram(64);
+        histogram.add(millis(2000), millis(2000));
+        histogram.add(millis(1500), millis(1600));
+        histogram.add(millis(1550), millis(2100));
+
+        long[] alive = histogram.alive();
+        Assert.isTrue(histogram.getCount() == 3);
+        Assert.isTrue(Arrays.stream(alive).max().getAsLong() == 2);
+    }
+
+    private static long millis(int year) {
+        return new DateTime(year, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+    }
+
+}
@@ -0,0 +1,91 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class IntervalIndexTest {
+
+    @Test
+    public void shouldFindIntervalsThatOnlyPartiallyOverlapTheWindow() {
+        IntervalIndex index = new IntervalIndex();
+        // a painter who lived 1780 - 1860, searched for 1800 - 1850
+        index.add(1, 1780, 1860);
+        index.add(2, 1700, 1750);
+        index.add(3, 1820, 1830);
+
+        Assert.isTrue(new HashSet<>(index.getOverlapping(1800, 1850)).equals(set(1L, 3L)));
+        Assert.isTrue(new HashSet<>(index.getCovering(1800, 1850)).equals(set(1L)));
+        Assert.isTrue(new HashSet<>(index.getContainedIn(1800, 1850)).equals(set(3L)));
+        Assert.isTrue(index.countOverlapping(1800, 1850) == 2);
+    }
+
+    @Test
+    public void shouldAgreeWithAFullScan() {
+        Random random = new Random(42);
+        IntervalIndex index = new IntervalIndex();
+        Map<Long, long[]> intervals = new HashMap<>();
+        for(long id=0;id<2000;id++) {
+            long start = random.nextInt(10000);
+            long end = start + random.nextInt(500);
+            index.add(id, start, end);
+            intervals.put(id, new long[]{start, end});
+        }
+        // removals and re-insertions must keep the augmented data consistent
+        for(long id=0;id<2000;id+=3) {
+            index.remove(id);
+            intervals.remove(id);
+        }
+        for(long id=1;id<2000;id+=7) {
+            long start = random.nextInt(10000);
+            index.add(id, start, start + 50);
+            intervals.put(id, new long[]{start, start + 50});
+        }
+
+        for(int i=0;i<200;i++) {
+            long start = random.nextInt(10000);
+            long end = start + random.nextInt(1000);
+            Set<Long> overlapping = new HashSet<>();
+            Set<Long> containedIn = new HashSet<>();
+            Set<Long> covering = new HashSet<>();
+            intervals.forEach((id, interval) -> {
+                if(interval[0] <= end && interval[1] >= start) overlapping.add(id);
+                if(interval[0] >= start && interval[1] <= end) containedIn.add(id);
+                if(interval[0] <= start && interval[1] >= end) covering.add(id);
+            });
+            Assert.isTrue(new HashSet<>(index.getOverlapping(start, end)).equals(overlapping));
+            Assert.isTrue(new HashSet<>(index.getContainedIn(start, end)).equals(containedIn));
+            Assert.isTrue(new HashSet<>(index.getCovering(start, end)).equals(covering));
+            Assert.isTrue(index.countOverlapping(start, end) == overlapping.size());
+        }
+        Assert.isTrue(index.size() == intervals.size());
+    }
+
+    @Test
+    public void iteratorShouldResumeAfterTheCursor() {
+        IntervalIndex index = new IntervalIndex();
+        for(long id=0;id<1000;id++) index.add(id, id % 100, id % 100 + 10);
+
+        List<Long> all = index.getOverlapping(20, 60);
+        List<Long> resumed = new ArrayList<>();
+        Iterator<Long> first = index.iterateOverlapping(20, 60);
+        for(int i=0;i<300;i++) resumed.add(first.next());
+        long last = resumed.get(resumed.size() - 1);
+        index.iterateOverlapping(20, 60, index.get(last)[0], last).forEachRemaining(resumed::add);
+
+        Assert.isTrue(resumed.equals(all));
+    }
+
+    private static Set<Long> set(Long... ids) {
+        Set<Long> result = new HashSet<>();
+        for(Long id : ids) result.add(id);
+        return result;
+    }
+
+}
@@ -0,0 +1,81 @@
+import org.junit.Test;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class SpaceTimeRTreeTest {
+
+    private static final long DAY = 86400000L;
+
+    @Test
+    public void incrementalTreeShouldAgreeWithAFullScan() {
+        Random random = new Random(7);
+        SpaceTimeRTree tree = new SpaceTimeRTree();
+        Map<Long, double[]> points = new HashMap<>();
+        for(long id=0;id<3000;id++) {
+            double[] point = randomPoint(random, id);
+            tree.add(id, point[1], point[2], (long) point[3], (long) point[4]);
+            points.put(id, point);
+        }
+        for(long id=0;id<3000;id+=2) {
+            tree.remove(id);
+            points.remove(id);
+        }
+        assertAgreesWithFullScan(random, tree, points);
+    }
+
+    @Test
+    public void bulkLoadedTreeShouldAgreeWithAFullScan() {
+        Random random = new Random(11);
+        SpaceTimeRTree tree = new SpaceTimeRTree();
+        Map<Long, double[]> points = new HashMap<>();
+        List<double[]> load = new ArrayList<>();
+        for(long id=0;id<5000;id++) {
+            double[] point = randomPoint(random, id);
+            points.put(id, point);
+            load.add(point);
+        }
+        tree.bulkLoad(load);
+        // the packed tree has to keep accepting writes
+        for(long id=5000;id<5500;id++) {
+            double[] point = randomPoint(random, id);
+            tree.add(id, point[1], point[2], (long) point[3], (long) point[4]);
+            points.put(id, point);
+        }
+        for(long id=0;id<5000;id+=5) {
+            tree.remove(id);
+            points.remove(id);
+        }
+        assertAgreesWithFullScan(random, tree, points);
+    }
+
+    private void assertAgreesWithFullScan(Random random, SpaceTimeRTree tree, Map<Long, double[]> points) {
+        Assert.isTrue(tree.size() == points.size());
+        for(int i=0;i<200;i++) {
+            double minLon = random.nextDouble() * 360 - 180;
+            double minLat = random.nextDouble() * 180 - 90;
+            double maxLon = minLon + random.nextDouble() * 60;
+            double maxLat = minLat + random.nextDouble() * 30;
+            long start = random.nextInt(3650) * DAY;
+            long end = start + random.nextInt(365) * DAY;
+            Set<Long> expected = new HashSet<>();
+            points.forEach((id, point) -> {
+                if(point[1] >= minLon && point[1] <= maxLon && point[2] >= minLat && point[2] <= maxLat && point[3] <= end && point[4] >= start) expected.add(id);
+            });
+            Assert.isTrue(new HashSet<>(tree.search(minLon, minLat, start, maxLon, maxLat, end)).equals(expected));
+        }
+    }
+
+    // {id, lon, lat, start, end}
+    private static double[] randomPoint(Random random, long id) {
+        long start = random.nextInt(3650) * DAY;
+        return new double[]{id, random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90, start, start + random.nextInt(100) * DAY};
+    }
+
+}
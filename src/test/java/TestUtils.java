@@ -1,4 +1,13 @@
 import com.vividsolutions.jts.geom.Envelope;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Created by user on 26/07/2016.
@@ -32,4 +41,61 @@ public class TestUtils {
         return Math.random() % 2 == 0 ? (Math.random()*envelope.getMinX()) : (Math.random()*(envelope.getMinX()+envelope.getMaxX()));
     }
 
+    // seeded synthetic data, the same seed always gives the same data set so benchmark runs can be compared
+    public static class Generator {
+
+        // lat, lon of a few big cities, clustered points are spread around them
+        private static final double[][] CITIES = {
+                {51.507, -0.128}, {48.857, 2.352}, {40.713, -74.006}, {35.690, 139.692}, {-33.869, 151.209},
+                {55.756, 37.617}, {-23.551, -46.633}, {19.076, 72.878}, {30.044, 31.236}, {59.329, 18.069}
+        };
+        private static final long DAY = 24L * 60 * 60 * 1000;
+
+        private final Random random;
+
+        public Generator(long seed) {
+            random = new Random(seed);
+        }
+
+        // {lat, lon}
+        public double[] uniformPoint(Envelope envelope) {
+            return new double[]{
+                    envelope.getMinY() + random.nextDouble() * (envelope.getMaxY() - envelope.getMinY()),
+                    envelope.getMinX() + random.nextDouble() * (envelope.getMaxX() - envelope.getMinX())};
+        }
+
+        // {lat, lon} normally distributed around a random city, spread is the standard deviation in degrees
+        public double[] clusteredPoint(double spread) {
+            double[] city = CITIES[random.nextInt(CITIES.length)];
+            double lat = Math.max(-90, Math.min(90, city[0] + random.nextGaussian() * spread));
+            double lon = Math.max(-180, Math.min(180, city[1] + random.nextGaussian() * spread));
+            return new double[]{lat, lon};
+        }
+
+        // {start, end} starting anywhere in [from, to)
+        // most records are short events (exponential, a month on average), the rest are lifetimes of 70 +- 15 years
+        public DateTime[] lifespan(DateTime from, DateTime to) {
+            long start = from.getMillis() + (long) (random.nextDouble() * (to.getMillis() - from.getMillis()));
+            long length = random.nextDouble() < 0.7
+                    ? (long) (-Math.log(1 - random.nextDouble()) * 30 * DAY)
+                    : (long) Math.max(DAY, (70 + random.nextGaussian() * 15) * 365 * DAY);
+            return new DateTime[]{new DateTime(start, DateTimeZone.UTC), new DateTime(start + length, DateTimeZone.UTC)};
+        }
+
+        // creates count plain nodes and the records that would attach them to the Continuum
+        public List<ContinuumRecord> records(GraphDatabaseService db, Label label, int count, boolean clustered, DateTime from, DateTime to) {
+            Envelope world = new Envelope(-180, 180, -90, 90);
+            List<ContinuumRecord> records = new ArrayList<>(count);
+            try (Transaction tx = db.beginTx()) {
+                for(int i=0;i<count;i++) {
+                    double[] point = clustered ? clusteredPoint(1.0) : uniformPoint(world);
+                    DateTime[] span = lifespan(from, to);
+                    records.add(new ContinuumRecord(db.createNode(label), point[0], point[1], span[0], span[1]));
+                }
+                tx.success();
+            }
+            return records;
+        }
+    }
+
 }
@@ -0,0 +1,55 @@
+import com.graphaware.module.timetree.SingleTimeTree;
+import com.graphaware.module.timetree.TimeTree;
+import com.graphaware.module.timetree.domain.TimeInstant;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+public class TimeTreeSpansTest {
+
+    private GraphDatabaseService db;
+    private TimeTree timeTree;
+
+    @Before
+    public void setUp() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        timeTree = new SingleTimeTree(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void timesShouldComeFromThePropertiesAndFallBackToTheTimeTree() {
+        DateTime start = new DateTime(1756, 1, 27, 20, 0, DateTimeZone.UTC);
+        DateTime end = new DateTime(1791, 12, 5, 1, 0, DateTimeZone.UTC);
+        try (Transaction tx = db.beginTx()) {
+            Node node = db.createNode();
+            node.createRelationshipTo(timeTree.getOrCreateInstant(TimeInstant.instant(start.getMillis())), TimeRelationshipTypes.START_DATE);
+            node.createRelationshipTo(timeTree.getOrCreateInstant(TimeInstant.instant(end.getMillis())), TimeRelationshipTypes.END_DATE);
+
+            // not backfilled yet, day resolution
+            long[] fromTree = TimeTreeSpans.timesOf(node);
+            Assert.isTrue(fromTree[0] == start.withTimeAtStartOfDay().getMillis() && fromTree[1] == end.withTimeAtStartOfDay().getMillis());
+
+            node.setProperty(TimeTreeSpans.START_TIME, start.getMillis());
+            node.setProperty(TimeTreeSpans.END_TIME, end.getMillis());
+            Assert.isTrue(Arrays.equals(TimeTreeSpans.timesOf(node), new long[]{start.getMillis(), end.getMillis()}));
+            Assert.isTrue(Arrays.equals(TimeTreeSpans.spanOf(node), new long[]{TimeTreeSpans.startOfDay(start), TimeTreeSpans.endOfDay(end)}));
+            Assert.isTrue(TimeTreeSpans.timesOf(db.createNode()) == null);
+            tx.success();
+        }
+    }
+
+}